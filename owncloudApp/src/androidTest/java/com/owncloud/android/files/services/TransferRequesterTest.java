@@ -0,0 +1,151 @@
+/**
+ * ownCloud Android client application
+ * <p>
+ * Copyright (C) 2019 ownCloud GmbH.
+ * <p>
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 2,
+ * as published by the Free Software Foundation.
+ * <p>
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * <p>
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.owncloud.android.files.services;
+
+import android.accounts.Account;
+import android.content.Context;
+import android.content.Intent;
+import android.os.Parcel;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.filters.SmallTest;
+import androidx.test.platform.app.InstrumentationRegistry;
+import com.owncloud.android.datamodel.OCFile;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.List;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.lessThan;
+
+/**
+ * Instrumented unit test, to be run in an Android emulator or device.
+ *
+ * Checks that a batch of 20000 files requested by id to the transfer services fits in Binder transactions,
+ * while the same files parcelled as {@link OCFile}s don't.
+ */
+@RunWith(AndroidJUnit4.class)
+@SmallTest
+public class TransferRequesterTest {
+
+    private static final int BATCH_SIZE = 20000;
+
+    /**
+     * Size of the Binder transaction buffer, shared by all the transactions in progress in the process.
+     */
+    private static final int BINDER_BUFFER_SIZE = 1024 * 1024;
+
+    private Context mContext;
+    private Account mAccount;
+    private long[] mFileIds;
+
+    @Before
+    public void setUp() {
+        mContext = InstrumentationRegistry.getInstrumentation().getTargetContext();
+        mAccount = new Account("user@cloud.example.com", "owncloud");
+        mFileIds = new long[BATCH_SIZE];
+        for (int i = 0; i < BATCH_SIZE; i++) {
+            mFileIds[i] = 100000 + i;
+        }
+    }
+
+    @Test
+    public void uploadsOfBatchFitInBinderTransactions() {
+        List<Intent> intents = new TransferRequester().buildUploadsUpdateIntents(
+                mContext,
+                mAccount,
+                mFileIds,
+                FileUploader.LOCAL_BEHAVIOUR_MOVE,
+                true,
+                true,
+                false
+        );
+
+        assertThat(intents.size(), is(2));
+        assertAllIdsInOrder(intents, FileUploader.KEY_FILE_IDS);
+        for (Intent intent : intents) {
+            assertThat(intent.getBooleanExtra(FileUploader.KEY_IF_UNCHANGED_IN_SERVER, false), is(true));
+            assertThat(parcelledSize(intent), lessThan(BINDER_BUFFER_SIZE / 10));
+        }
+    }
+
+    @Test
+    public void downloadsOfBatchFitInBinderTransactions() {
+        List<Intent> intents = new TransferRequester().buildDownloadIntents(mContext, mAccount, mFileIds, false);
+
+        assertThat(intents.size(), is(2));
+        assertAllIdsInOrder(intents, FileDownloader.KEY_FILE_IDS);
+        for (Intent intent : intents) {
+            assertThat(parcelledSize(intent), lessThan(BINDER_BUFFER_SIZE / 10));
+        }
+    }
+
+    @Test
+    public void parcelledFilesOfBatchDontFitInBinderTransactions() {
+        OCFile[] files = new OCFile[BATCH_SIZE];
+        for (int i = 0; i < BATCH_SIZE; i++) {
+            files[i] = buildTypicalFile(i);
+        }
+        Intent intent = new Intent(mContext, FileUploader.class);
+        intent.putExtra(FileUploader.KEY_ACCOUNT, mAccount);
+        intent.putExtra("FILE", files);     // as requested before, parcelling whole files
+
+        assertThat(parcelledSize(intent), greaterThan(BINDER_BUFFER_SIZE));
+    }
+
+    private void assertAllIdsInOrder(List<Intent> intents, String key) {
+        int next = 0;
+        for (Intent intent : intents) {
+            for (long id : intent.getLongArrayExtra(key)) {
+                assertThat(id, is(mFileIds[next++]));
+            }
+        }
+        assertThat(next, is(BATCH_SIZE));
+    }
+
+    private static int parcelledSize(Intent intent) {
+        Parcel parcel = Parcel.obtain();
+        try {
+            intent.writeToParcel(parcel, 0);
+            return parcel.dataSize();
+        } finally {
+            parcel.recycle();
+        }
+    }
+
+    private OCFile buildTypicalFile(int i) {
+        String remotePath = "/Photos/2019/Holidays/IMG_20190612_" + (100000 + i) + ".jpg";
+        OCFile file = new OCFile(remotePath);
+        file.setFileId(mFileIds[i]);
+        file.setParentId(99999);
+        file.setStoragePath("/storage/emulated/0/owncloud/" + mAccount.name + remotePath);
+        file.setMimetype("image/jpeg");
+        file.setFileLength(3456789);
+        file.setCreationTimestamp(1560340000000L);
+        file.setModificationTimestamp(1560340000000L);
+        file.setEtag("5d00c9a3e1f2b");
+        file.setPermissions("RDNVW");
+        file.setRemoteId("00000" + (100000 + i) + "ocnca4usn7x1");
+        return file;
+    }
+}
@@ -21,21 +21,31 @@ package com.owncloud.android.authentication;
 
 import android.accounts.Account;
 import android.accounts.AccountManager;
+import android.accounts.AuthenticatorException;
+import android.accounts.OperationCanceledException;
 import android.content.Context;
 import android.content.SharedPreferences;
 import android.net.Uri;
 import android.preference.PreferenceManager;
+import android.util.Base64;
 
 import androidx.annotation.Nullable;
 import com.owncloud.android.MainApp;
 import com.owncloud.android.datamodel.FileDataStorageManager;
 import com.owncloud.android.lib.common.accounts.AccountTypeUtils;
 import com.owncloud.android.lib.common.accounts.AccountUtils.Constants;
+import com.owncloud.android.lib.common.authentication.OwnCloudBasicCredentials;
+import com.owncloud.android.lib.common.authentication.OwnCloudBearerCredentials;
+import com.owncloud.android.lib.common.authentication.OwnCloudCredentials;
+import com.owncloud.android.lib.common.authentication.OwnCloudSamlSsoCredentials;
 import com.owncloud.android.lib.common.utils.Log_OC;
 import com.owncloud.android.lib.resources.status.OCCapability;
 import com.owncloud.android.lib.resources.status.OwnCloudVersion;
 
+import java.io.IOException;
+import java.util.HashMap;
 import java.util.Locale;
+import java.util.Map;
 
 public class AccountUtils {
 
@@ -162,6 +172,39 @@ public class AccountUtils {
         return result;
     }
 
+    /**
+     * Builds the headers needed to authenticate HTTP requests sent to the server of an account without an
+     * {@link com.owncloud.android.lib.common.OwnCloudClient}, such as those of media streams.
+     *
+     * @param context   Used to access the AccountManager.
+     * @param account   ownCloud account.
+     * @return Headers to add to the requests, by name
+     */
+    public static Map<String, String> getAuthorizationHeaders(Context context, Account account)
+            throws AuthenticatorException, IOException, OperationCanceledException {
+
+        OwnCloudCredentials credentials = com.owncloud.android.lib.common.accounts.AccountUtils.
+                getCredentialsForAccount(context, account);
+
+        String login = credentials.getUsername();
+        String password = credentials.getAuthToken();
+
+        Map<String, String> params = new HashMap<String, String>(1);
+
+        if (credentials instanceof OwnCloudBasicCredentials) { // Basic auth
+            String cred = login + ":" + password;
+            String auth = "Basic " + Base64.encodeToString(cred.getBytes(), Base64.URL_SAFE);
+            params.put("Authorization", auth);
+        } else if (credentials instanceof OwnCloudSamlSsoCredentials) { // SAML SSO auth
+            params.put("Cookie", password);
+        } else if (credentials instanceof OwnCloudBearerCredentials) { // OAuth
+            String bearerToken = credentials.getAuthToken();
+            String auth = "Bearer " + bearerToken;
+            params.put("Authorization", auth);
+        }
+        return params;
+    }
+
     /**
      * Returns the proper URL path to access the WebDAV interface of an ownCloud server,
      * according to its version and the authorization method used.
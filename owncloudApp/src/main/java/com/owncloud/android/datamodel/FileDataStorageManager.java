@@ -40,6 +40,7 @@ import android.os.Build;
 import android.os.FileUriExposedException;
 import android.os.RemoteException;
 import android.provider.MediaStore;
+import android.text.TextUtils;
 
 import androidx.core.content.FileProvider;
 import androidx.core.util.Pair;
@@ -52,14 +53,11 @@ import com.owncloud.android.lib.resources.shares.OCShare;
 import com.owncloud.android.lib.resources.shares.ShareType;
 import com.owncloud.android.lib.resources.status.CapabilityBooleanType;
 import com.owncloud.android.lib.resources.status.OCCapability;
+import com.owncloud.android.utils.FileCopyUtils;
 import com.owncloud.android.utils.FileStorageUtils;
 
 import java.io.File;
-import java.io.FileInputStream;
-import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.InputStream;
-import java.io.OutputStream;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
@@ -72,8 +70,15 @@ import java.util.Vector;
 public class FileDataStorageManager {
 
     public static final int ROOT_PARENT_ID = 0;
+
+    private static final String SEARCH_ESCAPE = "\\";
     private static String TAG = FileDataStorageManager.class.getSimpleName();
 
+    /**
+     * Max number of ids in a single query; SQLite limits the number of arguments to 999.
+     */
+    private static final int MAX_IDS_PER_QUERY = 500;
+
     private ContentResolver mContentResolver;
     private ContentProviderClient mContentProviderClient;
     private Account mAccount;
@@ -136,6 +141,55 @@ public class FileDataStorageManager {
         return file;
     }
 
+    /**
+     * Gets several files known their ids, with a query per block of {@link #MAX_IDS_PER_QUERY} ids.
+     *
+     * @param ids       Ids of the files to get.
+     * @return Files found, in no specific order; ids not found in the account are ignored.
+     */
+    public List<OCFile> getFilesByIds(long[] ids) {
+        List<OCFile> files = new ArrayList<>(ids.length);
+        for (int from = 0; from < ids.length; from += MAX_IDS_PER_QUERY) {
+            int to = Math.min(from + MAX_IDS_PER_QUERY, ids.length);
+
+            StringBuilder where = new StringBuilder(ProviderTableMeta._ID).append(" IN (");
+            String[] whereArgs = new String[to - from + 1];
+            for (int i = from; i < to; i++) {
+                where.append(i > from ? ",?" : "?");
+                whereArgs[i - from] = String.valueOf(ids[i]);
+            }
+            where.append(") AND ").append(ProviderTableMeta.FILE_ACCOUNT_OWNER).append("=?");
+            whereArgs[to - from] = mAccount.name;
+
+            Cursor c = null;
+            try {
+                if (getContentResolver() != null) {
+                    c = getContentResolver().query(
+                            ProviderTableMeta.CONTENT_URI, null, where.toString(), whereArgs, null
+                    );
+                } else {
+                    c = getContentProviderClient().query(
+                            ProviderTableMeta.CONTENT_URI, null, where.toString(), whereArgs, null
+                    );
+                }
+                if (c != null && c.moveToFirst()) {
+                    do {
+                        files.add(createFileInstance(c));
+                    } while (c.moveToNext());
+                }
+
+            } catch (RemoteException e) {
+                Log_OC.e(TAG, "Could not get files by id: " + e.getMessage());
+
+            } finally {
+                if (c != null) {
+                    c.close();
+                }
+            }
+        }
+        return files;
+    }
+
     /**
      * This will return a OCFile by its given FileId here refered as the remoteId.
      * Its the fileId ownCloud Core uses to identify a file even if its name has changed.
@@ -187,6 +241,91 @@ public class FileDataStorageManager {
         }
     }
 
+    /**
+     * Searches files and folders of the account whose name contains a text, ignoring case and accents,
+     * in any folder.
+     *
+     * Results are sorted by name and returned by pages.
+     *
+     * @param query     Text to search for in the names.
+     * @param offset    Number of results to skip, for paging.
+     * @param limit     Max number of results to return.
+     * @return          Files and folders found.
+     */
+    public List<OCFile> searchFilesByName(String query, int offset, int limit) {
+        List<OCFile> files = new ArrayList<>();
+        String normalizedQuery = FileStorageUtils.normalizeForSearch(query);
+        if (TextUtils.isEmpty(normalizedQuery) || limit <= 0) {
+            return files;
+        }
+        String pattern = "%" + normalizedQuery
+                .replace(SEARCH_ESCAPE, SEARCH_ESCAPE + SEARCH_ESCAPE)
+                .replace("%", SEARCH_ESCAPE + "%")
+                .replace("_", SEARCH_ESCAPE + "_") + "%";
+        String where = ProviderTableMeta.FILE_ACCOUNT_OWNER + "=? AND " +
+                ProviderTableMeta.FILE_NAME_NORMALIZED + " LIKE ? ESCAPE '" + SEARCH_ESCAPE + "' AND " +
+                ProviderTableMeta.FILE_PATH + "!=?";
+        String[] whereArgs = new String[]{mAccount.name, pattern, OCFile.ROOT_PATH};
+        Uri uri = ProviderTableMeta.CONTENT_URI.buildUpon().appendQueryParameter(
+                ProviderTableMeta.QUERY_PARAMETER_LIMIT,
+                Math.max(offset, 0) + "," + limit
+        ).build();
+
+        Cursor c = null;
+        try {
+            if (getContentResolver() != null) {
+                c = getContentResolver().query(uri, null, where, whereArgs, null);
+            } else {
+                c = getContentProviderClient().query(uri, null, where, whereArgs, null);
+            }
+            if (c != null && c.moveToFirst()) {
+                do {
+                    files.add(createFileInstance(c));
+                } while (c.moveToNext());
+            }
+
+        } catch (RemoteException e) {
+            Log_OC.e(TAG, "Could not search files: " + e.getMessage());
+
+        } finally {
+            if (c != null) {
+                c.close();
+            }
+        }
+        return files;
+    }
+
+    /**
+     * @return      Amount of images in the account, in any folder.
+     */
+    public int countImages() {
+        String where = ProviderTableMeta.FILE_ACCOUNT_OWNER + "=? AND " +
+                ProviderTableMeta.FILE_CONTENT_TYPE + " LIKE 'image/%'";
+        String[] whereArgs = new String[]{mAccount.name};
+        String[] projection = new String[]{ProviderTableMeta._COUNT};
+
+        Cursor c = null;
+        try {
+            if (getContentResolver() != null) {
+                c = getContentResolver().query(ProviderTableMeta.CONTENT_URI, projection, where, whereArgs, null);
+            } else {
+                c = getContentProviderClient().query(
+                        ProviderTableMeta.CONTENT_URI, projection, where, whereArgs, null
+                );
+            }
+            return (c != null && c.moveToFirst()) ? c.getInt(0) : 0;
+
+        } catch (RemoteException e) {
+            Log_OC.e(TAG, "Could not count images: " + e.getMessage());
+            return 0;
+
+        } finally {
+            if (c != null) {
+                c.close();
+            }
+        }
+    }
+
     public Vector<OCFile> getFolderImages(OCFile folder) {
         Vector<OCFile> ret = new Vector<OCFile>();
         if (folder != null) {
@@ -608,6 +747,10 @@ public class FileDataStorageManager {
                         deleted = getContentResolver().delete(file_uri, where, whereArgs);
                     }
                     success &= (deleted > 0);
+                    if (deleted > 0 && file.getRemoteId() != null) {
+                        // out of the provider, not to hold the database while writing the disk cache
+                        ThumbnailsCacheManager.removeThumbnails(file.getRemoteId());
+                    }
                 }
                 String localPath = file.getStoragePath();
                 if (removeLocalCopy && file.isDown() && localPath != null && success) {
@@ -648,6 +791,7 @@ public class FileDataStorageManager {
         String where = ProviderTableMeta.FILE_ACCOUNT_OWNER + "=?" + " AND " +
                 ProviderTableMeta.FILE_PATH + "=?";
         String[] whereArgs = new String[]{mAccount.name, folder.getRemotePath()};
+        List<String> remoteIds = getRemoteIdsOfDescendants(folder);
         int deleted = 0;
         if (getContentProviderClient() != null) {
             try {
@@ -658,9 +802,56 @@ public class FileDataStorageManager {
         } else {
             deleted = getContentResolver().delete(folder_uri, where, whereArgs);
         }
+        if (deleted > 0) {
+            for (String remoteId : remoteIds) {
+                ThumbnailsCacheManager.removeThumbnails(remoteId);
+            }
+        }
         return deleted > 0;
     }
 
+    /**
+     * @return      Remote ids of all the files inside a folder, at any depth, read in a single query.
+     */
+    private List<String> getRemoteIdsOfDescendants(OCFile folder) {
+        Pair<String, String[]> selection = selectionForAllDescendantsOf(folder);
+        String[] projection = new String[]{ProviderTableMeta.FILE_REMOTE_ID};
+        Cursor c = null;
+        if (getContentProviderClient() != null) {
+            try {
+                c = getContentProviderClient().query(
+                        ProviderTableMeta.CONTENT_URI,
+                        projection,
+                        selection.first,
+                        selection.second,
+                        null
+                );
+            } catch (RemoteException e) {
+                Log_OC.e(TAG, e.getMessage());
+            }
+        } else {
+            c = getContentResolver().query(
+                    ProviderTableMeta.CONTENT_URI,
+                    projection,
+                    selection.first,
+                    selection.second,
+                    null
+            );
+        }
+
+        List<String> remoteIds = new ArrayList<>();
+        if (c != null) {
+            while (c.moveToNext()) {
+                String remoteId = c.getString(0);
+                if (remoteId != null) {
+                    remoteIds.add(remoteId);
+                }
+            }
+            c.close();
+        }
+        return remoteIds;
+    }
+
     private boolean removeLocalFolder(OCFile folder) {
         boolean success = true;
         String localFolderPath = FileStorageUtils.getDefaultSavePathFor(mAccount.name, folder);
@@ -854,7 +1045,15 @@ public class FileDataStorageManager {
                 if (!targetFolder.exists()) {
                     targetFolder.mkdirs();
                 }
-                renamed = localFile.renameTo(targetFile);
+                if (localFile.isDirectory()) {
+                    renamed = localFile.renameTo(targetFile);
+                } else {
+                    try {
+                        renamed = FileCopyUtils.move(localFile, targetFile, null, null);
+                    } catch (IOException e) {
+                        Log_OC.e(TAG, "Could not move " + originalLocalPath + " to " + targetLocalPath, e);
+                    }
+                }
             }
 
             if (renamed) {
@@ -893,39 +1092,12 @@ public class FileDataStorageManager {
     }
 
     private boolean copyFile(File src, File target) {
-        boolean ret = true;
-
-        InputStream in = null;
-        OutputStream out = null;
-
         try {
-            in = new FileInputStream(src);
-            out = new FileOutputStream(target);
-            byte[] buf = new byte[1024];
-            int len;
-            while ((len = in.read(buf)) > 0) {
-                out.write(buf, 0, len);
-            }
-        } catch (IOException ex) {
-            ret = false;
-        } finally {
-            if (in != null) {
-                try {
-                    in.close();
-                } catch (IOException e) {
-                    e.printStackTrace(System.err);
-                }
-            }
-            if (out != null) {
-                try {
-                    out.close();
-                } catch (IOException e) {
-                    e.printStackTrace(System.err);
-                }
-            }
+            return FileCopyUtils.copy(src, target, null, null);
+        } catch (IOException e) {
+            Log_OC.e(TAG, "Could not copy " + src.getAbsolutePath() + " to " + target.getAbsolutePath(), e);
+            return false;
         }
-
-        return ret;
     }
 
     private Vector<OCFile> getFolderContent(long parentId, boolean onlyAvailableOffline) {
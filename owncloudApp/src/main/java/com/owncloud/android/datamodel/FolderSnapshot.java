@@ -0,0 +1,229 @@
+/**
+ * ownCloud Android client application
+ * <p>
+ * Copyright (C) 2019 ownCloud GmbH.
+ * <p>
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 2,
+ * as published by the Free Software Foundation.
+ * <p>
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * <p>
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.owncloud.android.datamodel;
+
+import com.owncloud.android.utils.FileStorageUtils;
+import com.owncloud.android.utils.NaturalSortKey;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Vector;
+
+/**
+ * Immutable list of the files in a folder, sorted, as shown in the list of files.
+ *
+ * Loading a snapshot queries the database, so it must be done out of the main thread; once loaded, it can
+ * be shared between threads. The keys to sort the files by name are built once, the first time they are
+ * sorted by name, and kept with the snapshot for the next sorts. The same for the names normalized to
+ * search, built the first time the snapshot is searched.
+ */
+public class FolderSnapshot {
+
+    public static final FolderSnapshot EMPTY = new FolderSnapshot(
+            -1,
+            new Vector<OCFile>(),
+            FileStorageUtils.SORT_NAME,
+            true,
+            null
+    );
+
+    private final long mFolderId;
+    private final List<OCFile> mFiles;
+    private final int mSortOrder;
+    private final boolean mSortAscending;
+    private final Map<OCFile, NaturalSortKey> mNameSortKeys;  // null until sorted by name
+    private volatile String[] mNormalizedNames = null;         // of every file, built in the first search
+
+    /**
+     * Files of a snapshot matching a search query.
+     */
+    public static class SearchResult {
+
+        private final FolderSnapshot mSnapshot;
+        private final String mQuery;
+        private final int[] mPositions;     // of the matching files in the snapshot, in order
+        private final List<OCFile> mFiles;
+
+        private SearchResult(FolderSnapshot snapshot, String query, int[] positions, List<OCFile> files) {
+            mSnapshot = snapshot;
+            mQuery = query;
+            mPositions = positions;
+            mFiles = files;
+        }
+
+        /**
+         * @return      Matching files, in the order of the snapshot; can't be modified.
+         */
+        public List<OCFile> getFiles() {
+            return mFiles;
+        }
+    }
+
+    private FolderSnapshot(long folderId, Vector<OCFile> sortedFiles, int sortOrder, boolean sortAscending,
+                           Map<OCFile, NaturalSortKey> nameSortKeys) {
+        mFolderId = folderId;
+        mFiles = Collections.unmodifiableList(sortedFiles);
+        mSortOrder = sortOrder;
+        mSortAscending = sortAscending;
+        mNameSortKeys = nameSortKeys;
+    }
+
+    /**
+     * Loads the files in a folder. Not to be called from the main thread.
+     *
+     * @param storageManager        Source of the files.
+     * @param folder                Folder to load.
+     * @param onlyAvailableOffline  'true' to load only the files available offline; all of them in the
+     *                              account if the folder is the root folder or not available offline.
+     * @param justFolders           'true' to load only folders.
+     * @param sortOrder             One of {@link FileStorageUtils#SORT_NAME}, {@link FileStorageUtils#SORT_DATE},
+     *                              {@link FileStorageUtils#SORT_SIZE}.
+     * @param sortAscending         'true' to sort in ascending order.
+     * @return                      Snapshot of the files in the folder.
+     */
+    public static FolderSnapshot load(
+            FileDataStorageManager storageManager,
+            OCFile folder,
+            boolean onlyAvailableOffline,
+            boolean justFolders,
+            int sortOrder,
+            boolean sortAscending
+    ) {
+        Vector<OCFile> files;
+        if (onlyAvailableOffline && (folder.equals(storageManager.getFileByPath(OCFile.ROOT_PATH)) ||
+                !folder.isAvailableOffline())) {
+            files = storageManager.getAvailableOfflineFilesFromCurrentAccount();
+        } else {
+            files = storageManager.getFolderContent(folder, onlyAvailableOffline);
+        }
+
+        if (justFolders) {
+            files = getFolders(files);
+        }
+
+        Map<OCFile, NaturalSortKey> nameSortKeys = (sortOrder == FileStorageUtils.SORT_NAME) ?
+                FileStorageUtils.buildNameSortKeys(files) : null;
+        files = FileStorageUtils.sortFolder(files, sortOrder, sortAscending, nameSortKeys);
+        return new FolderSnapshot(folder.getFileId(), files, sortOrder, sortAscending, nameSortKeys);
+    }
+
+    /**
+     * @return      Snapshot with the same files in the given order, or this one if already sorted so.
+     */
+    public FolderSnapshot sort(int sortOrder, boolean sortAscending) {
+        if (sortOrder == mSortOrder && sortAscending == mSortAscending) {
+            return this;
+        }
+        Map<OCFile, NaturalSortKey> nameSortKeys = mNameSortKeys;
+        if (nameSortKeys == null && sortOrder == FileStorageUtils.SORT_NAME) {
+            nameSortKeys = FileStorageUtils.buildNameSortKeys(mFiles);
+        }
+        Vector<OCFile> files = FileStorageUtils.sortFolder(
+                new Vector<>(mFiles), sortOrder, sortAscending, nameSortKeys
+        );
+        return new FolderSnapshot(mFolderId, files, sortOrder, sortAscending, nameSortKeys);
+    }
+
+    /**
+     * Gets the files whose name contains a query.
+     *
+     * If the query contains the query of a previous search in this snapshot, only the files that matched it
+     * are checked, instead of all of them.
+     *
+     * @param normalizedQuery   Query normalized with {@link FileStorageUtils#normalizeForSearch(String)},
+     *                          or null to match all the files.
+     * @param previousResult    Result of a previous search, or null.
+     * @return                  Files whose name contains the query.
+     */
+    public SearchResult search(String normalizedQuery, SearchResult previousResult) {
+        if (normalizedQuery == null || normalizedQuery.isEmpty()) {
+            return new SearchResult(this, null, null, mFiles);
+        }
+
+        String[] names = getNormalizedNames();
+        int[] positions;
+        int count = 0;
+        if (previousResult != null && previousResult.mSnapshot == this && previousResult.mQuery != null &&
+                normalizedQuery.contains(previousResult.mQuery)) {
+            // narrow the previous result; any name containing the query contains the previous one
+            positions = new int[previousResult.mPositions.length];
+            for (int position : previousResult.mPositions) {
+                if (names[position].contains(normalizedQuery)) {
+                    positions[count++] = position;
+                }
+            }
+        } else {
+            positions = new int[names.length];
+            for (int position = 0; position < names.length; position++) {
+                if (names[position].contains(normalizedQuery)) {
+                    positions[count++] = position;
+                }
+            }
+        }
+
+        positions = Arrays.copyOf(positions, count);
+        List<OCFile> files = new ArrayList<>(count);
+        for (int position : positions) {
+            files.add(mFiles.get(position));
+        }
+        return new SearchResult(this, normalizedQuery, positions, Collections.unmodifiableList(files));
+    }
+
+    private String[] getNormalizedNames() {
+        String[] names = mNormalizedNames;
+        if (names == null) {
+            names = new String[mFiles.size()];
+            for (int i = 0; i < names.length; i++) {
+                names[i] = FileStorageUtils.normalizeForSearch(mFiles.get(i).getFileName());
+            }
+            mNormalizedNames = names;
+        }
+        return names;
+    }
+
+    public long getFolderId() {
+        return mFolderId;
+    }
+
+    /**
+     * @return      Files in the folder, sorted; can't be modified.
+     */
+    public List<OCFile> getFiles() {
+        return mFiles;
+    }
+
+    /**
+     * Filter for getting only the folders
+     *
+     * @param files Collection of files to filter
+     * @return Folders in the input
+     */
+    private static Vector<OCFile> getFolders(Vector<OCFile> files) {
+        Vector<OCFile> ret = new Vector<>();
+        for (OCFile current : files) {
+            if (current.isFolder()) {
+                ret.add(current);
+            }
+        }
+        return ret;
+    }
+}
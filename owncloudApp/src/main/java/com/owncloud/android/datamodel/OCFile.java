@@ -57,6 +57,9 @@ public class OCFile implements Parcelable, Comparable<OCFile> {
 
     public static final String PATH_SEPARATOR = "/";
     public static final String ROOT_PATH = PATH_SEPARATOR;
+
+    private static final String MIMETYPE_PDF = "application/pdf";
+
     private final static int FILE_ID_LENGTH = 8;
 
     public enum AvailableOfflineStatus {
@@ -92,6 +95,14 @@ public class OCFile implements Parcelable, Comparable<OCFile> {
 
     private static final String TAG = OCFile.class.getSimpleName();
 
+    // the comparator keeps a collator, which is not thread safe; one per thread
+    private static final ThreadLocal<AlphanumComparator> sNameComparator = new ThreadLocal<AlphanumComparator>() {
+        @Override
+        protected AlphanumComparator initialValue() {
+            return new AlphanumComparator();
+        }
+    };
+
     private long mId;
     private long mParentId;
     private long mLength;
@@ -571,7 +582,7 @@ public class OCFile implements Parcelable, Comparable<OCFile> {
         } else if (another.isFolder()) {
             return 1;
         }
-        return new AlphanumComparator().compare(this, another);
+        return sNameComparator.get().compare(this, another);
     }
 
     @Override
@@ -647,6 +658,13 @@ public class OCFile implements Parcelable, Comparable<OCFile> {
         return isOfType("image/");
     }
 
+    /**
+     * @return 'True' if the file is a PDF document
+     */
+    public boolean isPdf() {
+        return MIMETYPE_PDF.equals(mMimeType) || MIMETYPE_PDF.equals(getMimeTypeFromName());
+    }
+
     /**
      * @return 'True' if the file is simple text (e.g. not application-dependent, like .doc or .docx)
      */
@@ -22,6 +22,9 @@
 package com.owncloud.android.datamodel;
 
 import android.accounts.Account;
+import android.app.ActivityManager;
+import android.content.Context;
+import android.content.SharedPreferences;
 import android.content.res.Resources;
 import android.graphics.Bitmap;
 import android.graphics.Bitmap.CompressFormat;
@@ -29,9 +32,14 @@ import android.graphics.BitmapFactory;
 import android.graphics.Canvas;
 import android.graphics.drawable.BitmapDrawable;
 import android.graphics.drawable.Drawable;
-import android.media.ThumbnailUtils;
 import android.net.Uri;
 import android.os.AsyncTask;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.ParcelFileDescriptor;
+import android.os.Process;
+import android.os.SystemClock;
+import android.util.LruCache;
 import android.view.MenuItem;
 import android.widget.ImageView;
 
@@ -39,6 +47,7 @@ import androidx.core.content.ContextCompat;
 import com.owncloud.android.MainApp;
 import com.owncloud.android.R;
 import com.owncloud.android.authentication.AccountUtils;
+import com.owncloud.android.db.PreferenceManager;
 import com.owncloud.android.lib.common.OwnCloudAccount;
 import com.owncloud.android.lib.common.OwnCloudClient;
 import com.owncloud.android.lib.common.OwnCloudClientManagerFactory;
@@ -48,15 +57,39 @@ import com.owncloud.android.lib.common.utils.Log_OC;
 import com.owncloud.android.lib.resources.status.OwnCloudVersion;
 import com.owncloud.android.ui.DefaultAvatarTextDrawable;
 import com.owncloud.android.ui.adapter.DiskLruImageCache;
+import com.owncloud.android.utils.BitmapPool;
 import com.owncloud.android.utils.BitmapUtils;
 
+import java.io.ByteArrayOutputStream;
 import java.io.File;
+import java.io.IOException;
 import java.io.InputStream;
 import java.lang.ref.WeakReference;
 import java.net.URL;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * Manager for concurrent access to thumbnails cache.
+ *
+ * Thumbnails are kept in two tiers: decoded bitmaps in memory, for views bound in the main thread, and
+ * encoded images on disk, read by the tasks generating thumbnails.
+ *
+ * The disk tier does not block: until {@link InitDiskCacheTask} opens it, lookups miss and additions are
+ * only kept in memory.
+ *
+ * {@link ThumbnailGenerationTask}s and {@link GetAvatarTask}s run in {@link #THUMBNAILS_EXECUTOR}, not in the
+ * executors shared with other {@link AsyncTask}s. The most recent requests run first, and requests for the
+ * same thumbnail are not processed in parallel; the later ones get the result of the first from the cache.
  */
 public class ThumbnailsCacheManager {
 
@@ -64,15 +97,71 @@ public class ThumbnailsCacheManager {
 
     private static final String CACHE_FOLDER = "thumbnailCache";
 
-    private static final Object mThumbnailsDiskCacheLock = new Object();
-    private static DiskLruImageCache mThumbnailCache = null;
-    private static boolean mThumbnailCacheStarting = true;
+    private static final Object mThumbnailsDiskCacheLock = new Object();   // only for initialization
+    private static volatile DiskLruImageCache mThumbnailCache = null;
+    private static SharedPreferences.OnSharedPreferenceChangeListener mMaxSizeListener = null;
+
+    private static final long MIN_DISK_CACHE_SIZE = 1024 * 1024 * 10; // 10MB
+    private static final long BYTES_PER_MEGABYTE = 1024 * 1024;
+
+    /**
+     * Expected size of a thumbnail in disk, to size the disk cache from the amount of images.
+     */
+    private static final long AVERAGE_THUMBNAIL_SIZE = 20 * 1024;
 
-    private static final int DISK_CACHE_SIZE = 1024 * 1024 * 10; // 10MB
+    /**
+     * Part of the free space in disk the disk cache may take.
+     */
+    private static final int FREE_SPACE_FRACTION = 10;
     private static final CompressFormat mCompressFormat = CompressFormat.JPEG;
     private static final int mCompressQuality = 70;
+    private static final int READ_BUFFER_SIZE = 8 * 1024;
+
+    /**
+     * Sizes of thumbnails served to other apps, in pixels; few, to share cached thumbnails between requests.
+     */
+    private static final int[] SERVED_THUMBNAIL_SIZES = {128, 256, 512, 1024};
     private static OwnCloudClient mClient = null;
 
+    /**
+     * Part of the memory available to the app used for decoded thumbnails.
+     */
+    private static final int MEMORY_CACHE_FRACTION = 8;
+
+    private static final LruCache<String, Bitmap> mThumbnailsMemoryCache =
+            new LruCache<String, Bitmap>(getMemoryCacheSize()) {
+                @Override
+                protected int sizeOf(String key, Bitmap bitmap) {
+                    return bitmap.getByteCount();
+                }
+            };
+
+    private static final int THUMBNAILS_POOL_SIZE = Math.max(2, Runtime.getRuntime().availableProcessors());
+    private static final long THUMBNAILS_KEEP_ALIVE_S = 30;
+
+    /**
+     * Executor for tasks generating thumbnails and avatars; bounded, and LIFO so that rows just bound to
+     * views are served before rows that probably scrolled out of the screen.
+     */
+    public static final Executor THUMBNAILS_EXECUTOR = buildThumbnailsExecutor();
+
+    /**
+     * Keys of thumbnails being generated now, with the requests for the same keys attached to them.
+     */
+    private static final Map<String, List<Runnable>> mInFlightKeys = new HashMap<>();
+
+    private static final Handler mMainHandler = new Handler(Looper.getMainLooper());
+
+    private static final AtomicLong mThumbnailsShown = new AtomicLong();
+    private static final AtomicLong mTimeToThumbnailMs = new AtomicLong();
+    private static final AtomicLong mMaxTimeToThumbnailMs = new AtomicLong();
+    private static final AtomicLong mGeneratedThumbnails = new AtomicLong();
+
+    private static final AtomicLong mMemoryHits = new AtomicLong();
+    private static final AtomicLong mMemoryMisses = new AtomicLong();
+    private static final AtomicLong mDiskHits = new AtomicLong();
+    private static final AtomicLong mDiskMisses = new AtomicLong();
+
     public static Bitmap mDefaultImg =
             BitmapFactory.decodeResource(
                     MainApp.getAppContext().getResources(),
@@ -83,67 +172,680 @@ public class ThumbnailsCacheManager {
 
         @Override
         protected Void doInBackground(File... params) {
-            synchronized (mThumbnailsDiskCacheLock) {
-                mThumbnailCacheStarting = true;
+            initDiskCache();
+            return null;
+        }
+    }
 
-                if (mThumbnailCache == null) {
-                    try {
-                        // Check if media is mounted or storage is built-in, if so, 
-                        // try and use external cache dir; otherwise use internal cache dir
-                        final String cachePath =
-                                MainApp.getAppContext().getExternalCacheDir().getPath() +
-                                        File.separator + CACHE_FOLDER;
-                        Log_OC.d(TAG, "create dir: " + cachePath);
-                        final File diskCacheDir = new File(cachePath);
-                        mThumbnailCache = new DiskLruImageCache(
-                                diskCacheDir,
-                                DISK_CACHE_SIZE,
-                                mCompressFormat,
-                                mCompressQuality
-                        );
-                    } catch (Exception e) {
-                        Log_OC.d(TAG, "Thumbnail cache could not be opened ", e);
-                        mThumbnailCache = null;
+    /**
+     * Opens the disk cache if not open yet, and sizes it for the current account; sized again every time the
+     * user changes its max size. Performs disk and database operations; must not be called from the main
+     * thread.
+     *
+     * @return  Disk cache, or null if it could not be opened.
+     */
+    public static DiskLruImageCache initDiskCache() {
+        synchronized (mThumbnailsDiskCacheLock) {
+            if (mThumbnailCache == null) {
+                try {
+                    // Check if media is mounted or storage is built-in, if so,
+                    // try and use external cache dir; otherwise use internal cache dir
+                    final String cachePath =
+                            MainApp.getAppContext().getExternalCacheDir().getPath() +
+                                    File.separator + CACHE_FOLDER;
+                    Log_OC.d(TAG, "create dir: " + cachePath);
+                    final File diskCacheDir = new File(cachePath);
+                    DiskLruImageCache diskCache = new DiskLruImageCache(
+                            diskCacheDir,
+                            MIN_DISK_CACHE_SIZE,
+                            mCompressFormat,
+                            mCompressQuality
+                    );
+                    // sized before published; any access in the meantime would trim it to the minimum size
+                    diskCache.setMaxSize(computeDiskCacheSize(diskCache.getSize()));
+                    mThumbnailCache = diskCache;
+                } catch (Exception e) {
+                    Log_OC.d(TAG, "Thumbnail cache could not be opened ", e);
+                    mThumbnailCache = null;
+                }
+            } else {
+                mThumbnailCache.setMaxSize(computeDiskCacheSize(mThumbnailCache.getSize()));
+            }
+            if (mThumbnailCache != null && mMaxSizeListener == null) {
+                // sizing again takes disk and database accesses
+                mMaxSizeListener = PreferenceManager.registerThumbnailsCacheMaxSizeListener(
+                        MainApp.getAppContext(),
+                        () -> new InitDiskCacheTask().execute()
+                );
+            }
+            return mThumbnailCache;
+        }
+    }
+
+    /**
+     * Computes the size of the disk cache: enough for the thumbnails of all the images in the current
+     * account, limited by a part of the free space and by the max size selected by the user, but never
+     * smaller than {@link #MIN_DISK_CACHE_SIZE} unless the user selected less.
+     *
+     * @param usedSize  Bytes used by the disk cache now, available for the cache whatever its new size.
+     * @return          Max size for the disk cache, in bytes.
+     */
+    private static long computeDiskCacheSize(long usedSize) {
+        Context context = MainApp.getAppContext();
+        long userMaxSize = PreferenceManager.getThumbnailsCacheMaxSize(context) * BYTES_PER_MEGABYTE;
+
+        long imagesSize = 0;
+        Account account = AccountUtils.getCurrentOwnCloudAccount(context);
+        if (account != null) {
+            FileDataStorageManager storageManager =
+                    new FileDataStorageManager(context, account, context.getContentResolver());
+            imagesSize = storageManager.countImages() * AVERAGE_THUMBNAIL_SIZE;
+        }
+
+        long freeSpace = context.getExternalCacheDir().getUsableSpace() + usedSize;
+
+        long size = Math.min(userMaxSize,
+                Math.max(MIN_DISK_CACHE_SIZE, Math.min(imagesSize, freeSpace / FREE_SPACE_FRACTION)));
+        Log_OC.d(TAG, "Disk cache for thumbnails sized to " + size + " bytes");
+        return size;
+    }
+
+    /**
+     * @return  Bytes used in disk by thumbnails, or 0 if the disk cache is not open.
+     */
+    public static long getDiskCacheSize() {
+        DiskLruImageCache diskCache = mThumbnailCache;
+        return (diskCache != null) ? diskCache.getSize() : 0;
+    }
+
+    /**
+     * @return  Max bytes to use in disk for thumbnails, or 0 if the disk cache is not open.
+     */
+    public static long getDiskCacheMaxSize() {
+        DiskLruImageCache diskCache = mThumbnailCache;
+        return (diskCache != null) ? diskCache.getMaxSize() : 0;
+    }
+
+    /**
+     * @return  Ratio of the bytes written to the disk cache since it was opened that were evicted for lack
+     *          of space, or 0 if nothing was written.
+     */
+    public static float getDiskCacheEvictionRate() {
+        DiskLruImageCache diskCache = mThumbnailCache;
+        if (diskCache == null || diskCache.getWrittenBytes() == 0) {
+            return 0;
+        }
+        return Math.min(1f, (float) diskCache.getEvictedBytes() / diskCache.getWrittenBytes());
+    }
+
+    /**
+     * Deletes the least recently used thumbnails from disk, keeping at most a part of the space used.
+     * Performs disk operations; must not be called from the main thread.
+     *
+     * @param keptFraction  Part of the used space to keep, between 0 (deletes all) and 1.
+     */
+    public static void trimDiskCache(float keptFraction) {
+        DiskLruImageCache diskCache = initDiskCache();
+        if (diskCache != null) {
+            diskCache.trimToSize((long) (diskCache.getSize() * keptFraction));
+        }
+        if (keptFraction <= 0) {
+            mThumbnailsMemoryCache.evictAll();
+        }
+    }
+
+    private static ThreadPoolExecutor buildThumbnailsExecutor() {
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(
+                THUMBNAILS_POOL_SIZE,
+                THUMBNAILS_POOL_SIZE,
+                THUMBNAILS_KEEP_ALIVE_S,
+                TimeUnit.SECONDS,
+                new LifoBlockingDeque(),
+                new ThreadFactory() {
+                    private final AtomicInteger mCount = new AtomicInteger();
+
+                    @Override
+                    public Thread newThread(final Runnable runnable) {
+                        return new Thread(new Runnable() {
+                            @Override
+                            public void run() {
+                                Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                                runnable.run();
+                            }
+                        }, "Thumbnails #" + mCount.incrementAndGet());
                     }
                 }
-                mThumbnailCacheStarting = false; // Finished initialization
-                mThumbnailsDiskCacheLock.notifyAll(); // Wake any waiting threads
+        );
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+    /**
+     * Drops cancelled tasks waiting in {@link #THUMBNAILS_EXECUTOR}, so that fast scrolls don't leave
+     * the queue full of requests for recycled views.
+     */
+    private static void purgeCancelledTasks() {
+        ((ThreadPoolExecutor) THUMBNAILS_EXECUTOR).purge();
+    }
+
+    /**
+     * Claims the thumbnail for a key for the calling thread, if no other thread is generating it. Must be
+     * followed by {@link #releaseKey(String)} when claimed.
+     *
+     * Otherwise, the request is attached to the one in flight instead of waiting for it, so that no thread
+     * of {@link #THUMBNAILS_EXECUTOR} is blocked while other one fetches the thumbnail from the server.
+     *
+     * @param key       Key of the thumbnail.
+     * @param onDone    Run when the thread generating the thumbnail releases the key, in that thread, if the
+     *                  key is not claimed; must be short. Null if there is nothing to do then.
+     * @return          'true' if the key was claimed by the calling thread.
+     */
+    private static boolean claimKey(String key, Runnable onDone) {
+        synchronized (mInFlightKeys) {
+            List<Runnable> attached = mInFlightKeys.get(key);
+            if (attached != null) {
+                if (onDone != null) {
+                    attached.add(onDone);
+                }
+                return false;
             }
-            return null;
+            mInFlightKeys.put(key, new ArrayList<>(1));
+            return true;
         }
     }
 
-    public static void addBitmapToCache(String key, Bitmap bitmap) {
-        synchronized (mThumbnailsDiskCacheLock) {
-            if (mThumbnailCache != null) {
-                mThumbnailCache.put(key, bitmap);
+    private static void releaseKey(String key) {
+        List<Runnable> attached;
+        synchronized (mInFlightKeys) {
+            attached = mInFlightKeys.remove(key);
+        }
+        if (attached != null) {
+            for (Runnable onDone : attached) {
+                onDone.run();
+            }
+        }
+    }
+
+    /**
+     * Records the time from the request of a thumbnail to its display.
+     *
+     * @param requestTime   Time of the request, from {@link SystemClock#elapsedRealtime()}.
+     */
+    private static void onThumbnailShown(long requestTime) {
+        long elapsed = SystemClock.elapsedRealtime() - requestTime;
+        long shown = mThumbnailsShown.incrementAndGet();
+        mTimeToThumbnailMs.addAndGet(elapsed);
+        long max;
+        do {
+            max = mMaxTimeToThumbnailMs.get();
+        } while (elapsed > max && !mMaxTimeToThumbnailMs.compareAndSet(max, elapsed));
+
+        if (MainApp.isDeveloper() && shown % 100 == 0) {
+            Log_OC.d(TAG, "Time to thumbnail: average " + getAverageTimeToThumbnail() + " ms, max " +
+                    mMaxTimeToThumbnailMs.get() + " ms in " + shown + " thumbnails; " +
+                    getBitmapAllocationsPerThumbnail() + " bitmaps allocated per generated thumbnail; hit rate " +
+                    Math.round(getMemoryCacheHitRate() * 100) + "% in memory, " +
+                    Math.round(getDiskCacheHitRate() * 100) + "% in disk");
+        }
+    }
+
+    /**
+     * @return  Average time from the request of a thumbnail to its display, in milliseconds, or 0 if no
+     *          thumbnail was generated yet.
+     */
+    public static long getAverageTimeToThumbnail() {
+        long shown = mThumbnailsShown.get();
+        return (shown > 0) ? mTimeToThumbnailMs.get() / shown : 0;
+    }
+
+    /**
+     * @return  Size of the memory cache in bytes, as a fraction of the memory class of the device.
+     */
+    private static int getMemoryCacheSize() {
+        ActivityManager activityManager = (ActivityManager) MainApp.getAppContext().getSystemService(
+                Context.ACTIVITY_SERVICE
+        );
+        return activityManager.getMemoryClass() * 1024 * 1024 / MEMORY_CACHE_FRACTION;
+    }
+
+    /**
+     * Gets a thumbnail from the memory cache; fast enough to be called from the main thread before
+     * starting any {@link ThumbnailGenerationTask}.
+     *
+     * @param key   Key of the thumbnail.
+     * @return      Thumbnail, or null if not in memory.
+     */
+    public static Bitmap getBitmapFromMemoryCache(String key) {
+        Bitmap bitmap = mThumbnailsMemoryCache.get(key);
+        if (bitmap != null) {
+            mMemoryHits.incrementAndGet();
+        } else {
+            mMemoryMisses.incrementAndGet();
+        }
+        return bitmap;
+    }
+
+    /**
+     * @return  Bitmaps allocated through {@link BitmapPool} per thumbnail generated, instead of reused from
+     *          it, or 0 if no thumbnail was generated yet.
+     */
+    public static float getBitmapAllocationsPerThumbnail() {
+        long generated = mGeneratedThumbnails.get();
+        return (generated > 0) ? (float) BitmapPool.getInstance().getAllocations() / generated : 0;
+    }
+
+    /**
+     * Tells if a file is shown with a thumbnail of its content in lists: images, generated locally or
+     * by the server, and downloaded videos and PDF documents, generated locally.
+     *
+     * @param file      File to check.
+     * @return          'true' if the file has a thumbnail.
+     */
+    public static boolean hasThumbnail(OCFile file) {
+        return file.isImage() || (file.isDown() && (file.isVideo() || file.isPdf()));
+    }
+
+    /**
+     * Converts size of file icon from dp to pixel
+     * @return int
+     */
+    private static int getThumbnailDimension() {
+        // Converts dp to pixel
+        Resources r = MainApp.getAppContext().getResources();
+        return Math.round(r.getDimension(R.dimen.file_icon_size_grid));
+    }
+
+    /**
+     * Warms the memory and disk caches with the thumbnail shown for a file in lists, without binding it to
+     * any view. Thumbnails not in the caches are generated from the local file if it's downloaded, or
+     * requested to the server if allowed.
+     *
+     * Performs network and disk operations; must not be called from the main thread.
+     *
+     * @param file              File to get the thumbnail of.
+     * @param account           ownCloud account holding the file.
+     * @param storageManager    Access to the database, to update the file if needed.
+     * @param client            Client to request the thumbnail to the server.
+     * @param allowServer       When 'false', thumbnails not in cache are only generated from local files.
+     * @return                  'true' if the thumbnail was requested to the server.
+     */
+    public static boolean prefetchThumbnail(OCFile file, Account account, FileDataStorageManager storageManager,
+                                            OwnCloudClient client, boolean allowServer) {
+        if (!hasThumbnail(file) || file.getRemoteId() == null) {
+            return false;
+        }
+        final String imageKey = String.valueOf(file.getRemoteId());
+        if (!claimKey(imageKey, null)) {
+            // already being generated
+            return false;
+        }
+        try {
+            if (!file.needsUpdateThumbnail() &&
+                    (mThumbnailsMemoryCache.get(imageKey) != null || getBitmapFromDiskCache(imageKey) != null)) {
+                return false;
             }
+            if (!file.isDown() && !allowServer) {
+                return false;
+            }
+            generateThumbnail(file, account, storageManager, client, imageKey, getThumbnailDimension(), true);
+            return !file.isDown();
+
+        } catch (Throwable t) {
+            // the app should never break due to a problem with thumbnails
+            Log_OC.e(TAG, "Prefetch of thumbnail for " + file.getRemotePath() + " failed", t);
+            return false;
+
+        } finally {
+            releaseKey(imageKey);
+        }
+    }
+
+    /**
+     * @return  Ratio of lookups in the memory cache that found the thumbnail, or 0 if none was done.
+     */
+    public static float getMemoryCacheHitRate() {
+        return hitRate(mMemoryHits.get(), mMemoryMisses.get());
+    }
+
+    /**
+     * @return  Ratio of lookups in the disk cache that found the thumbnail, or 0 if none was done.
+     */
+    public static float getDiskCacheHitRate() {
+        return hitRate(mDiskHits.get(), mDiskMisses.get());
+    }
+
+    private static float hitRate(long hits, long misses) {
+        return (hits + misses > 0) ? (float) hits / (hits + misses) : 0;
+    }
+
+    public static void addBitmapToCache(String key, Bitmap bitmap) {
+        addBitmapToCache(key, bitmap, true);
+    }
+
+    /**
+     * @param inMemory      'false' to add the bitmap only to the disk cache, for bitmaps not shown in the app.
+     */
+    private static void addBitmapToCache(String key, Bitmap bitmap, boolean inMemory) {
+        if (bitmap == null) {
+            return;
+        }
+        if (inMemory) {
+            mThumbnailsMemoryCache.put(key, bitmap);
+        }
+        DiskLruImageCache diskCache = mThumbnailCache;
+        if (diskCache != null) {
+            diskCache.put(key, bitmap);
         }
     }
 
     public static void removeBitmapFromCache(String key) {
-        synchronized (mThumbnailsDiskCacheLock) {
-            if (mThumbnailCache != null) {
-                mThumbnailCache.removeKey(key);
+        mThumbnailsMemoryCache.remove(key);
+        DiskLruImageCache diskCache = mThumbnailCache;
+        if (diskCache != null) {
+            diskCache.removeKey(key);
+        }
+    }
+
+    /**
+     * Removes the thumbnails of a file from the caches, both the one shown in lists and the ones served to
+     * other apps.
+     *
+     * @param remoteId      Remote id of the file.
+     */
+    public static void removeThumbnails(String remoteId) {
+        removeBitmapFromCache(remoteId);
+        removeServedThumbnails(remoteId);
+    }
+
+    /**
+     * Removes the thumbnails of a file served to other apps, in all the sizes, from the disk cache.
+     */
+    private static void removeServedThumbnails(String remoteId) {
+        DiskLruImageCache diskCache = mThumbnailCache;
+        if (diskCache != null) {
+            for (int size : SERVED_THUMBNAIL_SIZES) {
+                diskCache.removeKey(remoteId + "_" + size);
+            }
+        }
+    }
+
+    /**
+     * Opens a thumbnail of a file for other apps, generating and caching it if needed.
+     *
+     * The thumbnail is generated from the local file if it's downloaded, or from the thumbnail served by the
+     * server otherwise, with the smallest size in {@link #SERVED_THUMBNAIL_SIZES} not smaller than the
+     * requested one. The returned descriptor reads the encoded image straight from the disk cache. Served
+     * thumbnails are only kept in the disk cache, and all their sizes are dropped while the file is flagged
+     * with {@link OCFile#needsUpdateThumbnail()}.
+     *
+     * Performs network and disk operations; must not be called from the main thread.
+     *
+     * @param file              File to get the thumbnail of.
+     * @param account           ownCloud account holding the file.
+     * @param storageManager    Access to the database, to update the file if needed.
+     * @param sizeHint          Requested size of the longest side of the thumbnail, in pixels.
+     * @return                  Descriptor of the thumbnail, or null if it could not be generated.
+     */
+    public static ParcelFileDescriptor openThumbnail(OCFile file, Account account,
+                                                     FileDataStorageManager storageManager, int sizeHint) {
+        int px = SERVED_THUMBNAIL_SIZES[SERVED_THUMBNAIL_SIZES.length - 1];
+        for (int size : SERVED_THUMBNAIL_SIZES) {
+            if (size >= sizeHint) {
+                px = size;
+                break;
+            }
+        }
+        final String imageKey = file.getRemoteId() + "_" + px;
+
+        ParcelFileDescriptor descriptor = null;
+        if (file.needsUpdateThumbnail()) {
+            removeServedThumbnails(file.getRemoteId());
+        } else {
+            descriptor = openBitmapFromDiskCache(imageKey);
+        }
+        if (descriptor == null) {
+            try {
+                OwnCloudClient client = OwnCloudClientManagerFactory.getDefaultSingleton().getClientFor(
+                        new OwnCloudAccount(account, MainApp.getAppContext()),
+                        MainApp.getAppContext()
+                );
+                if (generateThumbnail(file, account, storageManager, client, imageKey, px, false) != null) {
+                    descriptor = openBitmapFromDiskCache(imageKey);
+                }
+            } catch (Throwable t) {
+                // the app should never break due to a problem with thumbnails
+                Log_OC.e(TAG, "Generation of thumbnail for " + file.getRemotePath() + " failed", t);
             }
         }
+        return descriptor;
     }
 
+    private static ParcelFileDescriptor openBitmapFromDiskCache(String key) {
+        DiskLruImageCache diskCache = mThumbnailCache;
+        return (diskCache != null) ? diskCache.openFileDescriptor(key) : null;
+    }
+
+    /**
+     * Gets a thumbnail from the disk cache, and keeps it in memory if found. Never waits for the cache
+     * to be opened.
+     *
+     * @param key   Key of the thumbnail.
+     * @return      Thumbnail, or null if not in disk or if the cache is not open yet.
+     */
     public static Bitmap getBitmapFromDiskCache(String key) {
-        synchronized (mThumbnailsDiskCacheLock) {
-            // Wait while disk cache is started from background thread
-            while (mThumbnailCacheStarting) {
-                try {
-                    mThumbnailsDiskCacheLock.wait();
-                } catch (InterruptedException e) {
-                    Log_OC.e(TAG, "Wait in mThumbnailsDiskCacheLock was interrupted", e);
+        DiskLruImageCache diskCache = mThumbnailCache;
+        Bitmap bitmap = (diskCache != null) ? diskCache.getBitmap(key) : null;
+        if (bitmap != null) {
+            mDiskHits.incrementAndGet();
+            mThumbnailsMemoryCache.put(key, bitmap);
+        } else {
+            mDiskMisses.incrementAndGet();
+        }
+        return bitmap;
+    }
+
+    /**
+     * Generates the thumbnail of a file and adds it to the disk cache.
+     *
+     * Downloaded images, videos and PDF documents are rendered locally; images not downloaded are requested
+     * to the server.
+     *
+     * @param file              File to generate the thumbnail of.
+     * @param account           ownCloud account holding the file.
+     * @param storageManager    Access to the database, to update the file.
+     * @param client            Client to get the thumbnail from the server, if the file is not downloaded.
+     * @param imageKey          Key of the thumbnail in the cache.
+     * @param px                Size of the thumbnail, in pixels.
+     * @param listThumbnail     'true' if the generated thumbnail is the one shown in lists, tracked by
+     *                          {@link OCFile#needsUpdateThumbnail()} and kept also in memory; 'false' for the
+     *                          sizes served to other apps, kept only in disk.
+     * @return                  Thumbnail, or null if it could not be generated.
+     */
+    private static Bitmap generateThumbnail(OCFile file, Account account, FileDataStorageManager storageManager,
+                                            OwnCloudClient client, String imageKey, int px,
+                                            boolean listThumbnail) {
+        Bitmap thumbnail = null;
+        mGeneratedThumbnails.incrementAndGet();
+        if (file.isDown() && (file.isVideo() || file.isPdf())) {
+            Bitmap frame = file.isVideo() ?
+                    BitmapUtils.decodeVideoFrame(file.getStoragePath(), px) :
+                    BitmapUtils.renderPdfFirstPage(file.getStoragePath(), px);
+            thumbnail = BitmapUtils.extractThumbnail(frame, px, px);
+
+            if (thumbnail != null) {
+                addBitmapToCache(imageKey, thumbnail, listThumbnail);
+
+                if (listThumbnail) {
+                    onListThumbnailUpdated(file, storageManager);
+                }
+            }
+
+        } else if (file.isDown()) {
+            Bitmap temp = BitmapUtils.decodeSampledBitmapFromFile(
+                    file.getStoragePath(), px, px);
+            Bitmap bitmap = BitmapUtils.extractThumbnail(temp, px, px);
+
+            if (bitmap != null) {
+                // Handle PNG
+                if (file.getMimetype().equalsIgnoreCase("image/png")) {
+                    bitmap = handlePNG(bitmap, px);
+                }
+
+                thumbnail = addThumbnailToCache(imageKey, bitmap, file.getStoragePath(), px, listThumbnail);
+
+                if (listThumbnail) {
+                    onListThumbnailUpdated(file, storageManager);
                 }
             }
-            if (mThumbnailCache != null) {
-                return mThumbnailCache.getBitmap(key);
+
+        } else if (file.isImage()) {
+            // Download thumbnail from server
+            OwnCloudVersion serverOCVersion = AccountUtils.getServerVersion(account);
+            if (client != null && serverOCVersion != null) {
+                if (serverOCVersion.supportsRemoteThumbnails()) {
+                    GetMethod get = null;
+                    try {
+                        String uri = client.getBaseUri() + "" +
+                                "/index.php/apps/files/api/v1/thumbnail/" +
+                                px + "/" + px + Uri.encode(file.getRemotePath(), "/");
+                        Log_OC.d("Thumbnail", "URI: " + uri);
+                        get = new GetMethod(new URL(uri));
+                        int status = client.executeHttpMethod(get);
+                        if (status == HttpConstants.HTTP_OK) {
+                            byte[] data = readFully(get.getResponseBodyAsStream());
+                            thumbnail = BitmapUtils.decodeSampledBitmapFromByteArray(data, px, px);
+                            boolean isPNG = file.getMimetype().equalsIgnoreCase("image/png");
+
+                            if (thumbnail != null && !isPNG &&
+                                    thumbnail.getWidth() == px && thumbnail.getHeight() == px) {
+                                // served with the requested size, nothing to process
+                                addEncodedThumbnailToCache(imageKey, thumbnail, data, listThumbnail);
+
+                            } else {
+                                thumbnail = BitmapUtils.extractThumbnail(thumbnail, px, px);
+
+                                // Handle PNG
+                                if (isPNG) {
+                                    thumbnail = handlePNG(thumbnail, px);
+                                }
+
+                                // Add thumbnail to cache
+                                if (thumbnail != null) {
+                                    addBitmapToCache(imageKey, thumbnail, listThumbnail);
+                                }
+                            }
+                        } else {
+                            // nothing to read in the body; closing it is enough to release the connection
+                            closeQuietly(get.getResponseBodyAsStream());
+                        }
+                    } catch (Exception e) {
+                        e.printStackTrace();
+                    }
+                } else {
+                    Log_OC.d(TAG, "Server too old");
+                }
             }
         }
-        return null;
+
+        return thumbnail;
+    }
+
+    /**
+     * Clears the flag of a file whose thumbnail in lists was just generated again; the thumbnails served to
+     * other apps, generated from the same old contents, are dropped.
+     */
+    private static void onListThumbnailUpdated(OCFile file, FileDataStorageManager storageManager) {
+        removeServedThumbnails(file.getRemoteId());
+        file.setNeedsUpdateThumbnail(false);
+        storageManager.saveFile(file);
+    }
+
+    /**
+     * Adds a thumbnail to the memory cache, and its encoded bytes to the disk cache without compressing
+     * the bitmap again.
+     *
+     * @param imageKey      Key of the thumbnail.
+     * @param thumbnail     Decoded thumbnail.
+     * @param data          Encoded thumbnail, as received.
+     * @param inMemory      'false' to add the thumbnail only to the disk cache.
+     */
+    private static void addEncodedThumbnailToCache(String imageKey, Bitmap thumbnail, byte[] data,
+                                                   boolean inMemory) {
+        if (inMemory) {
+            mThumbnailsMemoryCache.put(imageKey, thumbnail);
+        }
+        DiskLruImageCache diskCache = mThumbnailCache;
+        if (diskCache != null) {
+            diskCache.putEncoded(imageKey, data);
+        }
+    }
+
+    private static byte[] readFully(InputStream inputStream) throws IOException {
+        try {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[READ_BUFFER_SIZE];
+            int read;
+            while ((read = inputStream.read(buffer)) != -1) {
+                out.write(buffer, 0, read);
+            }
+            return out.toByteArray();
+
+        } finally {
+            closeQuietly(inputStream);
+        }
+    }
+
+    private static void closeQuietly(InputStream inputStream) {
+        if (inputStream != null) {
+            try {
+                inputStream.close();
+            } catch (IOException e) {
+                Log_OC.d(TAG, "Could not close response body", e);
+            }
+        }
+    }
+
+    /**
+     * Add thumbnail to cache
+     * @param imageKey: thumb key
+     * @param bitmap:   image for extracting thumbnail
+     * @param path:     image path
+     * @param px:       thumbnail dp
+     * @param inMemory: 'false' to add the thumbnail only to the disk cache
+     * @return Bitmap
+     */
+    private static Bitmap addThumbnailToCache(String imageKey, Bitmap bitmap, String path, int px,
+                                              boolean inMemory) {
+
+        Bitmap thumbnail = BitmapUtils.extractThumbnail(bitmap, px, px);
+
+        // Rotate image, obeying exif tag
+        thumbnail = BitmapUtils.rotateImage(thumbnail, path);
+
+        // Add thumbnail to cache
+        addBitmapToCache(imageKey, thumbnail, inMemory);
+
+        return thumbnail;
+    }
+
+    /**
+     * Draws a thumbnail with transparency over the background color; the received bitmap is returned to
+     * {@link BitmapPool}.
+     */
+    private static Bitmap handlePNG(Bitmap bitmap, int px) {
+        if (bitmap == null) {
+            return null;
+        }
+        Bitmap resultBitmap = BitmapPool.getInstance().get(px,
+                px,
+                Bitmap.Config.ARGB_8888);
+        Canvas c = new Canvas(resultBitmap);
+
+        c.drawColor(ContextCompat.getColor(MainApp.getAppContext(), R.color.background_color));
+        c.drawBitmap(bitmap, 0, 0, null);
+        BitmapPool.getInstance().put(bitmap);
+
+        return resultBitmap;
     }
 
     public static class ThumbnailGenerationTask extends AsyncTask<Object, Void, Bitmap> {
@@ -151,6 +853,7 @@ public class ThumbnailsCacheManager {
         private static Account mAccount;
         private Object mFile;
         private FileDataStorageManager mStorageManager;
+        private final long mRequestTime = SystemClock.elapsedRealtime();
 
         public ThumbnailGenerationTask(ImageView imageView, FileDataStorageManager storageManager,
                                        Account account) {
@@ -195,6 +898,7 @@ public class ThumbnailsCacheManager {
                 // the app should never break due to a problem with thumbnails
                 Log_OC.e(TAG, "Generation of thumbnail for " + mFile + " failed", t);
                 if (t instanceof OutOfMemoryError) {
+                    BitmapPool.getInstance().clear();
                     System.gc();
                 }
             }
@@ -215,126 +919,41 @@ public class ThumbnailsCacheManager {
                     }
                     if (String.valueOf(imageView.getTag()).equals(tagId)) {
                         imageView.setImageBitmap(bitmap);
+                        onThumbnailShown(mRequestTime);
                     }
                 }
             }
         }
 
-        /**
-         * Add thumbnail to cache
-         * @param imageKey: thumb key
-         * @param bitmap:   image for extracting thumbnail
-         * @param path:     image path
-         * @param px:       thumbnail dp
-         * @return Bitmap
-         */
-        private Bitmap addThumbnailToCache(String imageKey, Bitmap bitmap, String path, int px) {
-
-            Bitmap thumbnail = ThumbnailUtils.extractThumbnail(bitmap, px, px);
-
-            // Rotate image, obeying exif tag
-            thumbnail = BitmapUtils.rotateImage(thumbnail, path);
-
-            // Add thumbnail to cache
-            addBitmapToCache(imageKey, thumbnail);
-
-            return thumbnail;
-        }
-
-        /**
-         * Converts size of file icon from dp to pixel
-         * @return int
-         */
-        private int getThumbnailDimension() {
-            // Converts dp to pixel
-            Resources r = MainApp.getAppContext().getResources();
-            return Math.round(r.getDimension(R.dimen.file_icon_size_grid));
-        }
-
         private Bitmap doOCFileInBackground() {
             OCFile file = (OCFile) mFile;
 
             final String imageKey = String.valueOf(file.getRemoteId());
 
-            // Check disk cache in background thread
-            Bitmap thumbnail = getBitmapFromDiskCache(imageKey);
-
-            // Not found in disk cache
-            if (thumbnail == null || file.needsUpdateThumbnail()) {
-
-                int px = getThumbnailDimension();
-
-                if (file.isDown()) {
-                    Bitmap temp = BitmapUtils.decodeSampledBitmapFromFile(
-                            file.getStoragePath(), px, px);
-                    Bitmap bitmap = ThumbnailUtils.extractThumbnail(temp, px, px);
-
-                    if (bitmap != null) {
-                        // Handle PNG
-                        if (file.getMimetype().equalsIgnoreCase("image/png")) {
-                            bitmap = handlePNG(bitmap, px);
-                        }
-
-                        thumbnail = addThumbnailToCache(imageKey, bitmap, file.getStoragePath(), px);
-
-                        file.setNeedsUpdateThumbnail(false);
-                        mStorageManager.saveFile(file);
-                    }
-
-                } else {
-                    // Download thumbnail from server
-                    OwnCloudVersion serverOCVersion = AccountUtils.getServerVersion(mAccount);
-                    if (mClient != null && serverOCVersion != null) {
-                        if (serverOCVersion.supportsRemoteThumbnails()) {
-                            GetMethod get = null;
-                            try {
-                                String uri = mClient.getBaseUri() + "" +
-                                        "/index.php/apps/files/api/v1/thumbnail/" +
-                                        px + "/" + px + Uri.encode(file.getRemotePath(), "/");
-                                Log_OC.d("Thumbnail", "URI: " + uri);
-                                get = new GetMethod(new URL(uri));
-                                int status = mClient.executeHttpMethod(get);
-                                if (status == HttpConstants.HTTP_OK) {
-                                    InputStream inputStream = get.getResponseBodyAsStream();
-                                    Bitmap bitmap = BitmapFactory.decodeStream(inputStream);
-                                    thumbnail = ThumbnailUtils.extractThumbnail(bitmap, px, px);
-
-                                    // Handle PNG
-                                    if (file.getMimetype().equalsIgnoreCase("image/png")) {
-                                        thumbnail = handlePNG(thumbnail, px);
-                                    }
-
-                                    // Add thumbnail to cache
-                                    if (thumbnail != null) {
-                                        addBitmapToCache(imageKey, thumbnail);
-                                    }
-                                } else {
-                                    mClient.exhaustResponse(get.getResponseBodyAsStream());
-                                }
-                            } catch (Exception e) {
-                                e.printStackTrace();
-                            }
-                        } else {
-                            Log_OC.d(TAG, "Server too old");
-                        }
-                    }
-                }
+            if (!claimKey(imageKey, () -> showCachedThumbnail(imageKey))) {
+                return null;
             }
+            try {
+                // Generated by a concurrent request?
+                Bitmap thumbnail = mThumbnailsMemoryCache.get(imageKey);
 
-            return thumbnail;
-
-        }
+                // Check disk cache in background thread
+                if (thumbnail == null) {
+                    thumbnail = getBitmapFromDiskCache(imageKey);
+                }
 
-        private Bitmap handlePNG(Bitmap bitmap, int px) {
-            Bitmap resultBitmap = Bitmap.createBitmap(px,
-                    px,
-                    Bitmap.Config.ARGB_8888);
-            Canvas c = new Canvas(resultBitmap);
+                // Not found in disk cache
+                if ((thumbnail == null || file.needsUpdateThumbnail()) && !isCancelled()) {
+                    thumbnail = generateThumbnail(
+                            file, mAccount, mStorageManager, mClient, imageKey, getThumbnailDimension(), true
+                    );
+                }
 
-            c.drawColor(ContextCompat.getColor(MainApp.getAppContext(), R.color.background_color));
-            c.drawBitmap(bitmap, 0, 0, null);
+                return thumbnail;
 
-            return resultBitmap;
+            } finally {
+                releaseKey(imageKey);
+            }
         }
 
         private Bitmap doFileInBackground() {
@@ -342,22 +961,53 @@ public class ThumbnailsCacheManager {
 
             final String imageKey = String.valueOf(file.hashCode());
 
-            // Check disk cache in background thread
-            Bitmap thumbnail = getBitmapFromDiskCache(imageKey);
+            if (!claimKey(imageKey, () -> showCachedThumbnail(imageKey))) {
+                return null;
+            }
+            try {
+                // Generated by a concurrent request?
+                Bitmap thumbnail = mThumbnailsMemoryCache.get(imageKey);
 
-            // Not found in disk cache
-            if (thumbnail == null) {
+                // Check disk cache in background thread
+                if (thumbnail == null) {
+                    thumbnail = getBitmapFromDiskCache(imageKey);
+                }
 
-                int px = getThumbnailDimension();
+                // Not found in disk cache
+                if (thumbnail == null && !isCancelled()) {
+
+                    int px = getThumbnailDimension();
+                    mGeneratedThumbnails.incrementAndGet();
 
-                Bitmap bitmap = BitmapUtils.decodeSampledBitmapFromFile(
-                        file.getAbsolutePath(), px, px);
+                    Bitmap bitmap = BitmapUtils.decodeSampledBitmapFromFile(
+                            file.getAbsolutePath(), px, px);
 
-                if (bitmap != null) {
-                    thumbnail = addThumbnailToCache(imageKey, bitmap, file.getPath(), px);
+                    if (bitmap != null) {
+                        thumbnail = addThumbnailToCache(imageKey, bitmap, file.getPath(), px, true);
+                    }
                 }
+                return thumbnail;
+
+            } finally {
+                releaseKey(imageKey);
+            }
+        }
+
+        /**
+         * Shows the thumbnail generated by other request for the same key, if this task is still wanted.
+         */
+        private void showCachedThumbnail(String imageKey) {
+            if (isCancelled()) {
+                return;
+            }
+            Bitmap thumbnail = mThumbnailsMemoryCache.get(imageKey);
+            if (thumbnail == null) {
+                thumbnail = getBitmapFromDiskCache(imageKey);
+            }
+            if (thumbnail != null) {
+                final Bitmap cachedThumbnail = thumbnail;
+                mMainHandler.post(() -> onPostExecute(cachedThumbnail));
             }
-            return thumbnail;
         }
 
     }
@@ -379,6 +1029,7 @@ public class ThumbnailsCacheManager {
         private Account mAccount;
         private float mDisplayRadius;
         private boolean mFetchFromServer;
+        private boolean mAttachedToOtherRequest = false;
 
         private String mUsername;
         private OwnCloudClient mClient;
@@ -442,6 +1093,7 @@ public class ThumbnailsCacheManager {
                 // the app should never break due to a problem with avatars
                 Log_OC.e(TAG, "Generation of avatar for " + mUsername + " failed", t);
                 if (t instanceof OutOfMemoryError) {
+                    BitmapPool.getInstance().clear();
                     System.gc();
                 }
             }
@@ -451,6 +1103,12 @@ public class ThumbnailsCacheManager {
 
         @Override
         protected void onPostExecute(Drawable avatar) {
+            if (!mAttachedToOtherRequest) {
+                showAvatar(avatar);
+            }
+        }
+
+        private void showAvatar(Drawable avatar) {
             if (mImageViewReference != null) {
                 ImageView imageView = mImageViewReference.get();
                 if (imageView != null) {
@@ -490,12 +1148,39 @@ public class ThumbnailsCacheManager {
 
         private Drawable doAvatarInBackground() {
 
+            final String imageKey = "a_" + mUsername;
+
+            if (!claimKey(imageKey, () -> showCachedAvatar(imageKey))) {
+                mAttachedToOtherRequest = true;
+                return null;
+            }
+            try {
+                return doAvatarInBackground(imageKey);
+            } finally {
+                releaseKey(imageKey);
+            }
+        }
+
+        /**
+         * Shows the avatar fetched by other request for the same account, without accessing the server.
+         */
+        private void showCachedAvatar(String imageKey) {
+            mFetchFromServer = false;
+            final Drawable avatar = doAvatarInBackground(imageKey);
+            mMainHandler.post(() -> showAvatar(avatar));
+        }
+
+        private Drawable doAvatarInBackground(String imageKey) {
+
             Drawable avatarDrawable = null;
 
-            final String imageKey = "a_" + mUsername;
+            // Fetched by a concurrent request?
+            Bitmap avatarBitmap = mThumbnailsMemoryCache.get(imageKey);
 
             // Check disk cache in background thread
-            Bitmap avatarBitmap = getBitmapFromDiskCache(imageKey);
+            if (avatarBitmap == null) {
+                avatarBitmap = getBitmapFromDiskCache(imageKey);
+            }
 
             if (avatarBitmap != null) {
                 avatarDrawable = BitmapUtils.bitmapToCircularBitmapDrawable(
@@ -522,7 +1207,7 @@ public class ThumbnailsCacheManager {
                                 if (status == HttpConstants.HTTP_OK) {
                                     InputStream inputStream = get.getResponseBodyAsStream();
                                     Bitmap bitmap = BitmapFactory.decodeStream(inputStream);
-                                    avatarBitmap = ThumbnailUtils.extractThumbnail(bitmap, px, px);
+                                    avatarBitmap = BitmapUtils.extractThumbnail(bitmap, px, px);
 
                                     // Add avatar to cache
                                     if (avatarBitmap != null) {
@@ -565,7 +1250,7 @@ public class ThumbnailsCacheManager {
         final String imageKey = "a_" + accountName;
 
         Bitmap bitmap = BitmapFactory.decodeByteArray(avatarData, 0, avatarData.length);
-        bitmap = ThumbnailUtils.extractThumbnail(bitmap, dimension, dimension);
+        bitmap = BitmapUtils.extractThumbnail(bitmap, dimension, dimension);
         // Add avatar to cache
         if (bitmap != null) {
             addBitmapToCache(imageKey, bitmap);
@@ -587,6 +1272,7 @@ public class ThumbnailsCacheManager {
             if (bitmapData == null || bitmapData != file) {
                 // Cancel previous task
                 bitmapWorkerTask.cancel(true);
+                purgeCancelledTasks();
                 Log_OC.v(TAG, "Cancelled generation of thumbnail for a reused imageView");
             } else {
                 // The same work is already in progress
@@ -613,6 +1299,7 @@ public class ThumbnailsCacheManager {
             if (usernameData == null || usernameData != file) {
                 // Cancel previous task
                 avatarWorkerTask.cancel(true);
+                purgeCancelledTasks();
                 Log_OC.v(TAG, "Cancelled generation of avatar for a reused imageView");
             } else {
                 // The same work is already in progress
@@ -673,6 +1360,33 @@ public class ThumbnailsCacheManager {
         }
     }
 
+    /**
+     * Queue taking the last added task first.
+     */
+    private static class LifoBlockingDeque extends LinkedBlockingDeque<Runnable> {
+
+        @Override
+        public boolean offer(Runnable runnable) {
+            return offerFirst(runnable);
+        }
+
+        @Override
+        public boolean offer(Runnable runnable, long timeout, TimeUnit unit) throws InterruptedException {
+            return offerFirst(runnable, timeout, unit);
+        }
+
+        @Override
+        public boolean add(Runnable runnable) {
+            offerFirst(runnable);
+            return true;
+        }
+
+        @Override
+        public void put(Runnable runnable) throws InterruptedException {
+            putFirst(runnable);
+        }
+    }
+
     public static class AsyncAvatarDrawable extends BitmapDrawable {
         private final WeakReference<GetAvatarTask> avatarWorkerTaskReference;
 
@@ -0,0 +1,217 @@
+/**
+ * ownCloud Android client application
+ * <p>
+ * Copyright (C) 2019 ownCloud GmbH.
+ * <p>
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 2,
+ * as published by the Free Software Foundation.
+ * <p>
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * <p>
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.owncloud.android.datamodel;
+
+import android.accounts.Account;
+import android.content.Context;
+import android.os.Process;
+
+import com.owncloud.android.MainApp;
+import com.owncloud.android.lib.common.OwnCloudAccount;
+import com.owncloud.android.lib.common.OwnCloudClient;
+import com.owncloud.android.lib.common.OwnCloudClientManagerFactory;
+import com.owncloud.android.lib.common.utils.Log_OC;
+import com.owncloud.android.utils.ConnectivityUtils;
+
+import java.util.ArrayDeque;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Generates in advance the thumbnails of files about to be shown, so that they are in cache when their
+ * views are bound.
+ *
+ * Lists report the position they bind and the prefetcher warms the following files in the scroll
+ * direction; pagers report the selected page and the prefetcher warms the neighbouring ones. Every new
+ * report replaces the files pending from the previous one.
+ *
+ * All the prefetchers share a single background thread, so that the thumbnails missing in cache are
+ * requested to the server one after another over the same client, reusing its connection. The amount of
+ * files warmed per report, and of them requested to the server, depends on the network type.
+ */
+public class ThumbnailsPrefetcher {
+
+    private static final String TAG = ThumbnailsPrefetcher.class.getSimpleName();
+
+    private static final int WIFI_LOOKAHEAD = 30;
+    private static final int MOBILE_LOOKAHEAD = 10;
+
+    private static final int WIFI_SERVER_FETCHES = 30;
+    private static final int MOBILE_SERVER_FETCHES = 5;
+
+    /**
+     * Min distance in positions between two reports of a list to start a new prefetch.
+     */
+    private static final int REPORT_STEP = 4;
+
+    private static final ExecutorService sExecutor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+        @Override
+        public Thread newThread(final Runnable runnable) {
+            return new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    Process.setThreadPriority(Process.THREAD_PRIORITY_LOWEST);
+                    runnable.run();
+                }
+            }, TAG);
+        }
+    });
+
+    private final Context mContext;
+    private final Account mAccount;
+    private final FileDataStorageManager mStorageManager;
+
+    private final ArrayDeque<OCFile> mPendingFiles = new ArrayDeque<>();
+    private boolean mDraining = false;
+    private int mServerFetchesLeft = 0;         // for the files of the last report
+    private volatile boolean mOnWifi = false;
+    private volatile boolean mConnected = false;
+
+    private int mLastPosition = -1;
+    private int mLastReportedPosition = -1;
+    private int mDirection = 1;
+
+    public ThumbnailsPrefetcher(Context context, Account account, FileDataStorageManager storageManager) {
+        mContext = context.getApplicationContext();
+        mAccount = account;
+        mStorageManager = storageManager;
+        updateNetworkType();
+    }
+
+    /**
+     * Reports the binding of a position in a list; cheap enough to be called for every bound row.
+     *
+     * @param files         Files in the list.
+     * @param position      Position just bound.
+     */
+    public void onPositionBound(List<OCFile> files, int position) {
+        if (mLastPosition >= 0 && position != mLastPosition) {
+            mDirection = (position > mLastPosition) ? 1 : -1;
+        }
+        mLastPosition = position;
+        if (mLastReportedPosition >= 0 && Math.abs(position - mLastReportedPosition) < REPORT_STEP) {
+            return;
+        }
+        mLastReportedPosition = position;
+
+        int lookahead = getLookahead();
+        ArrayDeque<OCFile> nextFiles = new ArrayDeque<>(lookahead);
+        for (int i = 1, next = position + mDirection;
+             i <= lookahead && next >= 0 && next < files.size();
+             i++, next += mDirection) {
+            nextFiles.add(files.get(next));
+        }
+        enqueue(nextFiles);
+    }
+
+    /**
+     * Reports the selection of a page in a pager; warms the pages around it, closest first.
+     *
+     * @param files         Files in the pager.
+     * @param position      Selected position.
+     */
+    public void onPageSelected(List<OCFile> files, int position) {
+        int lookahead = getLookahead();
+        ArrayDeque<OCFile> nextFiles = new ArrayDeque<>(lookahead);
+        for (int distance = 0; nextFiles.size() < lookahead && distance < files.size(); distance++) {
+            if (position + distance < files.size()) {
+                nextFiles.add(files.get(position + distance));
+            }
+            if (distance > 0 && position - distance >= 0) {
+                nextFiles.add(files.get(position - distance));
+            }
+        }
+        enqueue(nextFiles);
+    }
+
+    /**
+     * Drops the files pending to prefetch, for instance when the list is closed or changes folder.
+     */
+    public synchronized void cancel() {
+        mPendingFiles.clear();
+        mLastPosition = -1;
+        mLastReportedPosition = -1;
+    }
+
+    private int getLookahead() {
+        return mOnWifi ? WIFI_LOOKAHEAD : MOBILE_LOOKAHEAD;
+    }
+
+    private void updateNetworkType() {
+        mConnected = ConnectivityUtils.isAppConnected(mContext);
+        mOnWifi = mConnected && ConnectivityUtils.isAppConnectedViaWiFi(mContext);
+    }
+
+    private synchronized void enqueue(ArrayDeque<OCFile> files) {
+        mPendingFiles.clear();
+        mPendingFiles.addAll(files);
+        mServerFetchesLeft = !mConnected ? 0 : (mOnWifi ? WIFI_SERVER_FETCHES : MOBILE_SERVER_FETCHES);
+        if (!mDraining && !mPendingFiles.isEmpty()) {
+            mDraining = true;
+            sExecutor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    drain();
+                }
+            });
+        }
+    }
+
+    private synchronized boolean takeServerFetch() {
+        if (mServerFetchesLeft > 0) {
+            mServerFetchesLeft--;
+            return true;
+        }
+        return false;
+    }
+
+    private synchronized OCFile nextFile() {
+        OCFile file = mPendingFiles.poll();
+        if (file == null) {
+            mDraining = false;
+        }
+        return file;
+    }
+
+    /**
+     * Prefetches pending files until there are no more. Runs in the shared background thread.
+     */
+    private void drain() {
+        // for the next reports
+        updateNetworkType();
+
+        OwnCloudClient client = null;
+        try {
+            client = OwnCloudClientManagerFactory.getDefaultSingleton().getClientFor(
+                    new OwnCloudAccount(mAccount, mContext),
+                    MainApp.getAppContext()
+            );
+        } catch (Exception e) {
+            Log_OC.w(TAG, "No client to prefetch thumbnails, only local files will be used", e);
+        }
+
+        OCFile file;
+        while ((file = nextFile()) != null) {
+            boolean allowServer = (client != null && !file.isDown() && takeServerFetch());
+            ThumbnailsCacheManager.prefetchThumbnail(file, mAccount, mStorageManager, client, allowServer);
+        }
+    }
+}
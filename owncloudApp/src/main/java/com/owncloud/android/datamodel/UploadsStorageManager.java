@@ -21,20 +21,31 @@
  */
 package com.owncloud.android.datamodel;
 
+import android.content.ContentProviderOperation;
+import android.content.ContentProviderResult;
 import android.content.ContentResolver;
 import android.content.ContentValues;
+import android.content.OperationApplicationException;
 import android.database.Cursor;
 import android.net.Uri;
+import android.os.RemoteException;
 
+import com.owncloud.android.MainApp;
 import com.owncloud.android.db.ProviderMeta.ProviderTableMeta;
 import com.owncloud.android.db.UploadResult;
+import com.owncloud.android.files.UploadSource;
 import com.owncloud.android.files.services.FileUploader;
 import com.owncloud.android.lib.common.operations.RemoteOperationResult;
 import com.owncloud.android.lib.common.utils.Log_OC;
 import com.owncloud.android.operations.UploadFileOperation;
+import com.owncloud.android.utils.UriUtils;
 
+import java.util.ArrayList;
 import java.util.Calendar;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Observable;
+import java.util.Set;
 
 /**
  * Database helper for storing list of files to be uploaded, including status
@@ -103,6 +114,66 @@ public class UploadsStorageManager extends Observable {
     public long storeUpload(OCUpload ocUpload) {
         Log_OC.v(TAG, "Inserting " + ocUpload.getLocalPath() + " with status=" + ocUpload.getUploadStatus());
 
+        Uri result = getDB().insert(ProviderTableMeta.CONTENT_URI_UPLOADS, getContentValuesForInsert(ocUpload));
+
+        Log_OC.d(TAG, "storeUpload returns with: " + result + " for file: " + ocUpload.getLocalPath());
+        if (result == null) {
+            Log_OC.e(TAG, "Failed to insert item " + ocUpload.getLocalPath() + " into upload db.");
+            return -1;
+        } else {
+            long new_id = Long.parseLong(result.getPathSegments().get(1));
+            ocUpload.setUploadId(new_id);
+            notifyObserversNow();
+            return new_id;
+        }
+    }
+
+    /**
+     * Stores several upload objects in DB in a single transaction, and informs observers once.
+     *
+     * @param ocUploads     Upload objects to store; their ids are set to the new ones.
+     * @return number of uploads stored; 0 if the transaction failed, and none was stored.
+     */
+    public int storeUploads(List<OCUpload> ocUploads) {
+        if (ocUploads.isEmpty()) {
+            return 0;
+        }
+        Log_OC.v(TAG, "Inserting " + ocUploads.size() + " uploads in a single transaction");
+
+        ArrayList<ContentProviderOperation> operations = new ArrayList<>(ocUploads.size());
+        for (OCUpload ocUpload : ocUploads) {
+            operations.add(
+                    ContentProviderOperation.newInsert(ProviderTableMeta.CONTENT_URI_UPLOADS).
+                            withValues(getContentValuesForInsert(ocUpload)).
+                            build()
+            );
+        }
+
+        ContentProviderResult[] results = null;
+        try {
+            results = getDB().applyBatch(MainApp.getAuthority(), operations);
+
+        } catch (OperationApplicationException e) {
+            Log_OC.e(TAG, "Exception in batch of upload insertions " + e.getMessage());
+
+        } catch (RemoteException e) {
+            Log_OC.e(TAG, "Exception in batch of upload insertions " + e.getMessage());
+        }
+
+        int stored = 0;
+        if (results != null) {
+            for (int i = 0; i < results.length; i++) {
+                if (results[i].uri != null) {
+                    ocUploads.get(i).setUploadId(Long.parseLong(results[i].uri.getPathSegments().get(1)));
+                    stored++;
+                }
+            }
+            notifyObserversNow();
+        }
+        return stored;
+    }
+
+    private ContentValues getContentValuesForInsert(OCUpload ocUpload) {
         ContentValues cv = new ContentValues();
         cv.put(ProviderTableMeta.UPLOADS_LOCAL_PATH, ocUpload.getLocalPath());
         cv.put(ProviderTableMeta.UPLOADS_REMOTE_PATH, ocUpload.getRemotePath());
@@ -115,19 +186,7 @@ public class UploadsStorageManager extends Observable {
         cv.put(ProviderTableMeta.UPLOADS_LAST_RESULT, ocUpload.getLastResult().getValue());
         cv.put(ProviderTableMeta.UPLOADS_CREATED_BY, ocUpload.getCreatedBy());
         cv.put(ProviderTableMeta.UPLOADS_TRANSFER_ID, ocUpload.getTransferId());
-
-        Uri result = getDB().insert(ProviderTableMeta.CONTENT_URI_UPLOADS, cv);
-
-        Log_OC.d(TAG, "storeUpload returns with: " + result + " for file: " + ocUpload.getLocalPath());
-        if (result == null) {
-            Log_OC.e(TAG, "Failed to insert item " + ocUpload.getLocalPath() + " into upload db.");
-            return -1;
-        } else {
-            long new_id = Long.parseLong(result.getPathSegments().get(1));
-            ocUpload.setUploadId(new_id);
-            notifyObserversNow();
-            return new_id;
-        }
+        return cv;
     }
 
     /**
@@ -244,8 +303,7 @@ public class UploadsStorageManager extends Observable {
      * @return true when the upload was stored and could be removed.
      */
     public int removeUpload(OCUpload upload) {
-        int result = getDB().delete(
-                ProviderTableMeta.CONTENT_URI_UPLOADS,
+        int result = deleteUploads(
                 ProviderTableMeta._ID + "=?",
                 new String[]{Long.toString(upload.getUploadId())}
         );
@@ -264,8 +322,7 @@ public class UploadsStorageManager extends Observable {
      * @return true when one or more upload entries were removed
      */
     public int removeUpload(String accountName, String remotePath) {
-        int result = getDB().delete(
-                ProviderTableMeta.CONTENT_URI_UPLOADS,
+        int result = deleteUploads(
                 ProviderTableMeta.UPLOADS_ACCOUNT_NAME + "=? AND " + ProviderTableMeta.UPLOADS_REMOTE_PATH + "=?",
                 new String[]{accountName, remotePath}
         );
@@ -283,8 +340,7 @@ public class UploadsStorageManager extends Observable {
      * @return true when one or more upload entries were removed
      */
     public int removeUploads(String accountName) {
-        int result = getDB().delete(
-                ProviderTableMeta.CONTENT_URI_UPLOADS,
+        int result = deleteUploads(
                 ProviderTableMeta.UPLOADS_ACCOUNT_NAME + "=?",
                 new String[]{accountName}
         );
@@ -425,9 +481,52 @@ public class UploadsStorageManager extends Observable {
         return mContentResolver;
     }
 
-    public long clearFailedButNotDelayedForWifiUploads() {
-        long result = getDB().delete(
+    /**
+     * Deletes uploads from the uploads list, and releases the persistable permissions on the "content://"
+     * URIs they were reading from, unless other upload still in the list reads from the same URI.
+     *
+     * @param selection         Uploads to delete.
+     * @param selectionArgs     Values for the arguments in the selection.
+     * @return                  Number of deleted uploads.
+     */
+    private int deleteUploads(String selection, String[] selectionArgs) {
+        Set<String> contentUris = getContentUris(selection, selectionArgs);
+        int result = getDB().delete(ProviderTableMeta.CONTENT_URI_UPLOADS, selection, selectionArgs);
+        if (result > 0) {
+            for (String contentUri : contentUris) {
+                if (getContentUris(ProviderTableMeta.UPLOADS_LOCAL_PATH + "=?", new String[]{contentUri})
+                        .isEmpty()) {
+                    UploadSource.releasePersistedPermission(getDB(), contentUri);
+                }
+            }
+        }
+        return result;
+    }
+
+    private Set<String> getContentUris(String selection, String[] selectionArgs) {
+        String[] contentUriArgs = new String[selectionArgs.length + 1];
+        System.arraycopy(selectionArgs, 0, contentUriArgs, 0, selectionArgs.length);
+        contentUriArgs[selectionArgs.length] = UriUtils.URI_CONTENT_SCHEME + "%";
+
+        Set<String> contentUris = new HashSet<>();
+        Cursor c = getDB().query(
                 ProviderTableMeta.CONTENT_URI_UPLOADS,
+                new String[]{ProviderTableMeta.UPLOADS_LOCAL_PATH},
+                "(" + selection + ") AND " + ProviderTableMeta.UPLOADS_LOCAL_PATH + " LIKE ?",
+                contentUriArgs,
+                null
+        );
+        if (c != null) {
+            while (c.moveToNext()) {
+                contentUris.add(c.getString(0));
+            }
+            c.close();
+        }
+        return contentUris;
+    }
+
+    public long clearFailedButNotDelayedForWifiUploads() {
+        long result = deleteUploads(
                 ProviderTableMeta.UPLOADS_STATUS + "=? AND " +
                         ProviderTableMeta.UPLOADS_LAST_RESULT + "!=?" ,
                 new String[]{String.valueOf(UploadStatus.UPLOAD_FAILED.value),
@@ -441,8 +540,7 @@ public class UploadsStorageManager extends Observable {
     }
 
     public long clearSuccessfulUploads() {
-        long result = getDB().delete(
-                ProviderTableMeta.CONTENT_URI_UPLOADS,
+        long result = deleteUploads(
                 ProviderTableMeta.UPLOADS_STATUS + "=?",
                 new String[]{String.valueOf(UploadStatus.UPLOAD_SUCCEEDED.value)}
         );
@@ -457,8 +555,7 @@ public class UploadsStorageManager extends Observable {
         String[] whereArgs = new String[2];
         whereArgs[0] = String.valueOf(UploadStatus.UPLOAD_SUCCEEDED.value);
         whereArgs[1] = String.valueOf(UploadStatus.UPLOAD_FAILED.value);
-        long result = getDB().delete(
-                ProviderTableMeta.CONTENT_URI_UPLOADS,
+        long result = deleteUploads(
                 ProviderTableMeta.UPLOADS_STATUS + "=? OR " + ProviderTableMeta.UPLOADS_STATUS + "=? AND " +
                         ProviderTableMeta.UPLOADS_LAST_RESULT + "<>" + UploadResult.DELAYED_FOR_WIFI.getValue(),
                 whereArgs
@@ -58,6 +58,12 @@ public abstract class PreferenceManager {
     private static final String PREF__CAMERA_VIDEO_UPLOADS_PATH = "camera_video_uploads_path";
     private static final String PREF__CAMERA_UPLOADS_BEHAVIOUR = "camera_uploads_behaviour";
     private static final String PREF__CAMERA_UPLOADS_SOURCE = "camera_uploads_source_path";
+    private static final String PREF__UPLOAD_LIMIT_WIFI = "upload_limit_wifi";
+    private static final String PREF__UPLOAD_LIMIT_MOBILE = "upload_limit_mobile";
+    private static final String PREF__DOWNLOAD_LIMIT_WIFI = "download_limit_wifi";
+    private static final String PREF__DOWNLOAD_LIMIT_MOBILE = "download_limit_mobile";
+    private static final String PREF__THUMBNAILS_CACHE_MAX_SIZE = "thumbnails_cache_max_size";
+    private static final int DEFAULT_THUMBNAILS_CACHE_MAX_SIZE = 100;    // MB
 
     public static boolean cameraPictureUploadEnabled(Context context) {
         return getDefaultSharedPreferences(context).getBoolean(PREF__CAMERA_PICTURE_UPLOADS_ENABLED, false);
@@ -126,6 +132,62 @@ public abstract class PreferenceManager {
         return result;
     }
 
+    /**
+     * Gets the max upload rate selected by the user for a network type.
+     *
+     * @param context Caller {@link Context}, used to access to shared preferences manager.
+     * @param onWifi  'true' to get the limit for unmetered networks, 'false' for mobile networks.
+     * @return Max upload rate in KB/s, or 0 if unlimited.
+     */
+    public static int getUploadLimit(Context context, boolean onWifi) {
+        return getIntFromStringPreference(context, onWifi ? PREF__UPLOAD_LIMIT_WIFI : PREF__UPLOAD_LIMIT_MOBILE);
+    }
+
+    /**
+     * Gets the max download rate selected by the user for a network type.
+     *
+     * @param context Caller {@link Context}, used to access to shared preferences manager.
+     * @param onWifi  'true' to get the limit for unmetered networks, 'false' for mobile networks.
+     * @return Max download rate in KB/s, or 0 if unlimited.
+     */
+    public static int getDownloadLimit(Context context, boolean onWifi) {
+        return getIntFromStringPreference(context, onWifi ? PREF__DOWNLOAD_LIMIT_WIFI : PREF__DOWNLOAD_LIMIT_MOBILE);
+    }
+
+    /**
+     * Gets the max space in disk the user allows for thumbnails.
+     *
+     * @param context Caller {@link Context}, used to access to shared preferences manager.
+     * @return Max size of the thumbnails cache in MB.
+     */
+    public static int getThumbnailsCacheMaxSize(Context context) {
+        return getIntFromStringPreference(
+                context,
+                PREF__THUMBNAILS_CACHE_MAX_SIZE,
+                DEFAULT_THUMBNAILS_CACHE_MAX_SIZE
+        );
+    }
+
+    /**
+     * Registers a listener for changes in the max size of the thumbnails cache.
+     *
+     * Shared preferences only keep a weak reference to the listener; the caller must keep it.
+     *
+     * @param context   Caller {@link Context}, used to access to shared preferences manager.
+     * @param listener  Run in the main thread when the max size changes.
+     * @return          Registered listener, to keep.
+     */
+    public static SharedPreferences.OnSharedPreferenceChangeListener registerThumbnailsCacheMaxSizeListener(
+            Context context, Runnable listener) {
+        SharedPreferences.OnSharedPreferenceChangeListener preferenceListener = (preferences, key) -> {
+            if (PREF__THUMBNAILS_CACHE_MAX_SIZE.equals(key)) {
+                listener.run();
+            }
+        };
+        getDefaultSharedPreferences(context).registerOnSharedPreferenceChangeListener(preferenceListener);
+        return preferenceListener;
+    }
+
     /**
      * Gets the path where the user selected to do the last upload of a file shared from other app.
      *
@@ -225,6 +287,20 @@ public abstract class PreferenceManager {
         appPreferences.apply();
     }
 
+    private static int getIntFromStringPreference(Context context, String key) {
+        return getIntFromStringPreference(context, key, 0);
+    }
+
+    private static int getIntFromStringPreference(Context context, String key, int defaultValue) {
+        // list preferences store their values as strings
+        String value = getDefaultSharedPreferences(context).getString(key, String.valueOf(defaultValue));
+        try {
+            return Math.max(Integer.parseInt(value), 0);
+        } catch (NumberFormatException e) {
+            return defaultValue;
+        }
+    }
+
     private static SharedPreferences getDefaultSharedPreferences(Context context) {
         return android.preference.PreferenceManager.getDefaultSharedPreferences(context.getApplicationContext());
     }
@@ -33,7 +33,7 @@ import com.owncloud.android.MainApp;
 public class ProviderMeta {
 
     public static final String DB_NAME = "filelist";
-    public static final int DB_VERSION = 25;
+    public static final int DB_VERSION = 26;
 
     private ProviderMeta() {
     }
@@ -67,6 +67,9 @@ public class ProviderMeta {
         public static final String CONTENT_TYPE = "vnd.android.cursor.dir/vnd.owncloud.file";
         public static final String CONTENT_TYPE_ITEM = "vnd.android.cursor.item/vnd.owncloud.file";
 
+        // Query parameter of content URIs with a LIMIT clause for queries, as "limit" or "offset,limit"
+        public static final String QUERY_PARAMETER_LIMIT = "limit";
+
         // Columns of filelist table
         public static final String FILE_PARENT = "parent";
         public static final String FILE_NAME = "filename";
@@ -91,6 +94,8 @@ public class ProviderMeta {
         public static final String FILE_IS_DOWNLOADING = "is_downloading";
         public static final String FILE_ETAG_IN_CONFLICT = "etag_in_conflict";
         public static final String FILE_PRIVATE_LINK = "private_link";
+        // FILE_NAME without case nor accents, for searches; filled by the provider
+        public static final String FILE_NAME_NORMALIZED = "filename_normalized";
 
         public static final String FILE_DEFAULT_SORT_ORDER = FILE_NAME
                 + " collate nocase asc";
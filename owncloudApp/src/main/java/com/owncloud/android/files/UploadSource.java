@@ -0,0 +1,267 @@
+/**
+ * ownCloud Android client application
+ * <p>
+ * Copyright (C) 2019 ownCloud GmbH.
+ * <p>
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 2,
+ * as published by the Free Software Foundation.
+ * <p>
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * <p>
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.owncloud.android.files;
+
+import android.Manifest;
+import android.content.ContentResolver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.UriPermission;
+import android.content.pm.PackageManager;
+import android.database.Cursor;
+import android.net.Uri;
+import android.os.ParcelFileDescriptor;
+import android.provider.DocumentsContract;
+import android.provider.MediaStore;
+
+import androidx.core.content.ContextCompat;
+import com.owncloud.android.lib.common.utils.Log_OC;
+import com.owncloud.android.utils.UriUtils;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+
+/**
+ * Source of the contents of a file to upload.
+ *
+ * Local paths of uploads may be absolute paths in the local file system, or "content://" URIs shared by other
+ * apps. The latter are read straight from the {@link ParcelFileDescriptor} returned by their provider when
+ * it is backed by a regular file, so that the upload operations (including chunked uploads, which need
+ * positional reads) can access them through a path without a temporary copy in the OC folder.
+ *
+ * Providers serving pipes or files the app is not allowed to reopen can't be read that way, and
+ * {@link #getReadablePath()} returns null for them; callers must fall back to a temporary copy.
+ */
+public abstract class UploadSource implements Closeable {
+
+    private static final String TAG = UploadSource.class.getSimpleName();
+
+    private static final String PROC_SELF_FD_PATH = "/proc/self/fd/";
+
+    /**
+     * Opens the source of an upload.
+     *
+     * @param context       Context used to access the provider of "content://" URIs.
+     * @param localPath     Local path of the upload; absolute path or "content://" URI.
+     * @return              Source of the upload; must be closed when the upload finishes.
+     * @throws FileNotFoundException    If a "content://" URI could not be opened.
+     */
+    public static UploadSource open(Context context, String localPath) throws FileNotFoundException {
+        if (isContentUri(localPath)) {
+            return new ContentUriSource(context.getContentResolver(), Uri.parse(localPath));
+        } else {
+            return new LocalFileSource(new File(localPath));
+        }
+    }
+
+    /**
+     * @param localPath     Local path of an upload.
+     * @return              'true' if the path is a "content://" URI.
+     */
+    public static boolean isContentUri(String localPath) {
+        return localPath != null && localPath.startsWith(UriUtils.URI_CONTENT_SCHEME);
+    }
+
+    /**
+     * Checks if a "content://" URI received from other app can be opened again later from
+     * {@link com.owncloud.android.files.services.FileUploader}, once the temporary permission granted
+     * to the receiving Activity is gone.
+     *
+     * That is the case when a persistable permission can be taken on it, or when it is a media URI and
+     * the app holds the permission to read the external storage.
+     *
+     * @param context       Context of the Activity that received the URI.
+     * @param uri           "content://" URI to check.
+     * @return              'true' if the URI can be opened later.
+     */
+    public static boolean canBeReopened(Context context, Uri uri) {
+        ContentResolver contentResolver = context.getContentResolver();
+        try {
+            contentResolver.takePersistableUriPermission(uri, Intent.FLAG_GRANT_READ_URI_PERMISSION);
+        } catch (SecurityException e) {
+            // not persistable; only grants not depending on the caller Activity are left
+        }
+        for (UriPermission permission : contentResolver.getPersistedUriPermissions()) {
+            if (permission.isReadPermission() && permission.getUri().equals(uri)) {
+                return true;
+            }
+        }
+        return MediaStore.AUTHORITY.equals(uri.getAuthority()) &&
+                ContextCompat.checkSelfPermission(context, Manifest.permission.READ_EXTERNAL_STORAGE) ==
+                        PackageManager.PERMISSION_GRANTED;
+    }
+
+    /**
+     * Releases the persistable permission taken in {@link #canBeReopened(Context, Uri)}, if any, once the
+     * upload does not need it anymore.
+     *
+     * @param context       Context used to access the provider.
+     * @param localPath     Local path of the upload; nothing is done if not a "content://" URI.
+     */
+    public static void releasePersistedPermission(Context context, String localPath) {
+        releasePersistedPermission(context.getContentResolver(), localPath);
+    }
+
+    /**
+     * Same as {@link #releasePersistedPermission(Context, String)}, for callers that only keep a
+     * {@link ContentResolver}.
+     */
+    public static void releasePersistedPermission(ContentResolver contentResolver, String localPath) {
+        if (!isContentUri(localPath)) {
+            return;
+        }
+        try {
+            contentResolver.releasePersistableUriPermission(
+                    Uri.parse(localPath),
+                    Intent.FLAG_GRANT_READ_URI_PERMISSION
+            );
+        } catch (SecurityException e) {
+            // no persisted permission was held, nothing to release
+        }
+    }
+
+    /**
+     * @return      'true' if the contents to upload are still available.
+     */
+    public abstract boolean exists();
+
+    /**
+     * @return      Size in bytes of the contents, or -1 if unknown.
+     */
+    public abstract long length();
+
+    /**
+     * @return      Last modification time in milliseconds, or 0 if unknown.
+     */
+    public abstract long lastModified();
+
+    /**
+     * @return      Path in the local file system that can be read with positional reads to access the
+     *              contents while the source is open, or null if there is no such path.
+     */
+    public abstract String getReadablePath();
+
+    @Override
+    public void close() {
+        // nothing to release by default
+    }
+
+    private static class LocalFileSource extends UploadSource {
+
+        private final File mFile;
+
+        LocalFileSource(File file) {
+            mFile = file;
+        }
+
+        @Override
+        public boolean exists() {
+            return mFile.exists();
+        }
+
+        @Override
+        public long length() {
+            return mFile.length();
+        }
+
+        @Override
+        public long lastModified() {
+            return mFile.lastModified();
+        }
+
+        @Override
+        public String getReadablePath() {
+            return mFile.getAbsolutePath();
+        }
+    }
+
+    private static class ContentUriSource extends UploadSource {
+
+        private final ContentResolver mContentResolver;
+        private final Uri mUri;
+        private final ParcelFileDescriptor mFileDescriptor;
+
+        ContentUriSource(ContentResolver contentResolver, Uri uri) throws FileNotFoundException {
+            mContentResolver = contentResolver;
+            mUri = uri;
+            mFileDescriptor = contentResolver.openFileDescriptor(uri, "r");
+            if (mFileDescriptor == null) {
+                throw new FileNotFoundException("Provider returned no descriptor for " + uri);
+            }
+        }
+
+        @Override
+        public boolean exists() {
+            return true;    // was opened
+        }
+
+        @Override
+        public long length() {
+            // -1 for pipes and sockets
+            return mFileDescriptor.getStatSize();
+        }
+
+        @Override
+        public long lastModified() {
+            Cursor cursor = null;
+            try {
+                cursor = mContentResolver.query(
+                        mUri,
+                        new String[]{DocumentsContract.Document.COLUMN_LAST_MODIFIED},
+                        null,
+                        null,
+                        null
+                );
+                if (cursor != null && cursor.moveToFirst() && !cursor.isNull(0)) {
+                    return cursor.getLong(0);
+                }
+
+            } catch (Exception e) {
+                Log_OC.d(TAG, "No last modification date available for " + mUri);
+
+            } finally {
+                if (cursor != null) {
+                    cursor.close();
+                }
+            }
+            return 0;
+        }
+
+        @Override
+        public String getReadablePath() {
+            if (length() < 0) {
+                return null;    // not a regular file, no positional reads
+            }
+            File fdLink = new File(PROC_SELF_FD_PATH + mFileDescriptor.getFd());
+            // reopening the link is subject to the permissions of the target file
+            return fdLink.canRead() ? fdLink.getAbsolutePath() : null;
+        }
+
+        @Override
+        public void close() {
+            try {
+                mFileDescriptor.close();
+            } catch (IOException e) {
+                Log_OC.d(TAG, "Weird exception while closing descriptor for " + mUri + " (ignoring)", e);
+            }
+        }
+    }
+}
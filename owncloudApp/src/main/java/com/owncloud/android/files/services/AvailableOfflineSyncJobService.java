@@ -40,7 +40,9 @@ import com.owncloud.android.utils.Extras;
 import com.owncloud.android.utils.FileStorageUtils;
 
 import java.io.File;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 import static com.owncloud.android.ui.notifications.NotificationUtils.notifyConflict;
 
@@ -97,6 +99,8 @@ public class AvailableOfflineSyncJobService extends JobService {
         }
 
         private void syncAvailableOfflineFiles(List<Pair<OCFile, String>> availableOfflineFilesForAccount) {
+            // transfers are requested at once for each account, by id, instead of one Intent per file
+            Map<String, TransferBatch> transfers = new HashMap<>();
             for (Pair<OCFile, String> fileForAccount : availableOfflineFilesForAccount) {
 
                 String localPath = fileForAccount.first.getStoragePath();
@@ -116,7 +120,21 @@ public class AvailableOfflineSyncJobService extends JobService {
                     continue;
                 }
 
-                startSyncOperation(fileForAccount.first, fileForAccount.second);
+                TransferBatch accountTransfers = transfers.get(fileForAccount.second);
+                if (accountTransfers == null) {
+                    accountTransfers = new TransferBatch(FileUploader.LOCAL_BEHAVIOUR_MOVE, true);
+                    transfers.put(fileForAccount.second, accountTransfers);
+                }
+                startSyncOperation(fileForAccount.first, fileForAccount.second, accountTransfers);
+            }
+
+            for (Map.Entry<String, TransferBatch> accountTransfers : transfers.entrySet()) {
+                Account account = AccountUtils.getOwnCloudAccountByName(
+                        mAvailableOfflineJobService, accountTransfers.getKey()
+                );
+                if (account != null) {
+                    accountTransfers.getValue().request(mAvailableOfflineJobService, account, true);
+                }
             }
         }
 
@@ -126,8 +144,9 @@ public class AvailableOfflineSyncJobService extends JobService {
          *
          * @param availableOfflineFile file to synchronize
          * @param accountName          account to synchronize the available offline file with
+         * @param transfers            batch collecting the transfer needed, if any
          */
-        private void startSyncOperation(OCFile availableOfflineFile, String accountName) {
+        private void startSyncOperation(OCFile availableOfflineFile, String accountName, TransferBatch transfers) {
             if (MainApp.isDeveloper()) {
                 Log_OC.i(
                         TAG,
@@ -149,6 +168,7 @@ public class AvailableOfflineSyncJobService extends JobService {
             SynchronizeFileOperation synchronizeFileOperation =
                     new SynchronizeFileOperation(availableOfflineFile, null, account, false,
                             mAvailableOfflineJobService, true);
+            synchronizeFileOperation.setTransferBatch(transfers);
 
             RemoteOperationResult result = synchronizeFileOperation.
                     execute(storageManager, mAvailableOfflineJobService);
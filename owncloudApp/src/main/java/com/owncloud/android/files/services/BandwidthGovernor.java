@@ -0,0 +1,226 @@
+/**
+ * ownCloud Android client application
+ * <p>
+ * Copyright (C) 2019 ownCloud GmbH.
+ * <p>
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 2,
+ * as published by the Free Software Foundation.
+ * <p>
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * <p>
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.owncloud.android.files.services;
+
+import android.content.Context;
+import android.os.SystemClock;
+
+import com.owncloud.android.db.PreferenceManager;
+import com.owncloud.android.lib.common.network.OnDatatransferProgressListener;
+import com.owncloud.android.lib.common.utils.Log_OC;
+import com.owncloud.android.utils.ConnectivityUtils;
+
+/**
+ * Process-wide limit of the bandwidth used by transfers, with separate budgets for uploads and downloads.
+ *
+ * Every transfer reports the bytes it moves to the budget of its direction, and the reporting thread is
+ * put to sleep as long as needed to keep the aggregated rate of all the transfers below the limit selected
+ * by the user for the current network type. Since the reports come from the loops writing to or reading
+ * from the network, a sleeping transfer stops filling the socket and TCP slows the peer down.
+ *
+ * Limits are read again from the preferences with {@link #updateLimits(Context)}, which transfers call
+ * when they start. Achieved rates are measured even when there is no limit.
+ */
+public class BandwidthGovernor {
+
+    private static final String TAG = BandwidthGovernor.class.getSimpleName();
+
+    private static final int BYTES_PER_KILOBYTE = 1024;
+
+    private static final BandwidthGovernor sInstance = new BandwidthGovernor();
+
+    private final TokenBucket mUploadBudget = new TokenBucket();
+    private final TokenBucket mDownloadBudget = new TokenBucket();
+
+    private final OnDatatransferProgressListener mUploadThrottle = new OnDatatransferProgressListener() {
+        @Override
+        public void onTransferProgress(long progressRate, long totalTransferredSoFar, long totalToTransfer,
+                                       String fileName) {
+            // progressRate is the amount of bytes written since the previous report
+            mUploadBudget.acquire(progressRate);
+        }
+    };
+
+    private final OnDatatransferProgressListener mDownloadThrottle = new OnDatatransferProgressListener() {
+        @Override
+        public void onTransferProgress(long progressRate, long totalTransferredSoFar, long totalToTransfer,
+                                       String fileName) {
+            mDownloadBudget.acquire(progressRate);
+        }
+    };
+
+    public static BandwidthGovernor getInstance() {
+        return sInstance;
+    }
+
+    private BandwidthGovernor() {
+    }
+
+    /**
+     * Reads the limits selected by the user for the network type the device is connected to.
+     *
+     * @param context       Context used to access preferences and connectivity state.
+     */
+    public void updateLimits(Context context) {
+        boolean onWifi = ConnectivityUtils.isAppConnectedViaWiFi(context);
+        long uploadLimit = (long) PreferenceManager.getUploadLimit(context, onWifi) * BYTES_PER_KILOBYTE;
+        long downloadLimit = (long) PreferenceManager.getDownloadLimit(context, onWifi) * BYTES_PER_KILOBYTE;
+        if (mUploadBudget.setRate(uploadLimit) | mDownloadBudget.setRate(downloadLimit)) {
+            Log_OC.d(TAG, "Bandwidth limits " + (onWifi ? "on Wi-Fi" : "on mobile network") +
+                    ": upload " + uploadLimit + " B/s, download " + downloadLimit + " B/s (0 is unlimited)");
+        }
+    }
+
+    /**
+     * @return      Listener to add to upload operations so that they are limited by the upload budget.
+     */
+    public OnDatatransferProgressListener getUploadThrottle() {
+        return mUploadThrottle;
+    }
+
+    /**
+     * @return      Listener to add to download operations so that they are limited by the download budget.
+     */
+    public OnDatatransferProgressListener getDownloadThrottle() {
+        return mDownloadThrottle;
+    }
+
+    /**
+     * Charges bytes read by a download not performed through a download operation, such as a video stream,
+     * blocking the calling thread if the download budget is exhausted.
+     *
+     * @param bytes         Amount of bytes just read.
+     */
+    public void onBytesDownloaded(long bytes) {
+        mDownloadBudget.acquire(bytes);
+    }
+
+    /**
+     * @return      Upload limit in bytes per second, or 0 if unlimited.
+     */
+    public long getUploadLimit() {
+        return mUploadBudget.getRate();
+    }
+
+    /**
+     * @return      Download limit in bytes per second, or 0 if unlimited.
+     */
+    public long getDownloadLimit() {
+        return mDownloadBudget.getRate();
+    }
+
+    /**
+     * @return      Aggregated rate of all the uploads in the last measurement window, in bytes per second.
+     */
+    public long getAchievedUploadRate() {
+        return mUploadBudget.getAchievedRate();
+    }
+
+    /**
+     * @return      Aggregated rate of all the downloads in the last measurement window, in bytes per second.
+     */
+    public long getAchievedDownloadRate() {
+        return mDownloadBudget.getAchievedRate();
+    }
+
+    /**
+     * Token bucket shared by all the transfers in one direction.
+     *
+     * Tokens are refilled at the configured rate up to one second of burst. Transfers take tokens for the
+     * bytes they already moved, so the bucket may go into debt; the thread that caused it sleeps for the
+     * time needed to pay it back, and the following ones queue behind it.
+     */
+    private static class TokenBucket {
+
+        private static final long BURST_MS = 1000;
+
+        private static final long MEASUREMENT_WINDOW_MS = 1000;
+
+        private long mRate = 0;                 // bytes per second; 0 is unlimited
+        private double mTokens = 0;
+        private long mLastRefillTime = 0;
+
+        private long mWindowStartTime = 0;
+        private long mWindowBytes = 0;
+        private long mAchievedRate = 0;         // bytes per second
+
+        /**
+         * @return      'true' if the rate changed.
+         */
+        synchronized boolean setRate(long rate) {
+            if (rate == mRate) {
+                return false;
+            }
+            mRate = rate;
+            mTokens = Math.min(mTokens, capacity());
+            mLastRefillTime = SystemClock.elapsedRealtime();
+            return true;
+        }
+
+        synchronized long getRate() {
+            return mRate;
+        }
+
+        synchronized long getAchievedRate() {
+            long now = SystemClock.elapsedRealtime();
+            // an idle direction does not close windows by itself
+            return (now - mWindowStartTime > 2 * MEASUREMENT_WINDOW_MS) ? 0 : mAchievedRate;
+        }
+
+        void acquire(long bytes) {
+            if (bytes <= 0) {
+                return;
+            }
+            long waitMs;
+            synchronized (this) {
+                long now = SystemClock.elapsedRealtime();
+                measure(bytes, now);
+                if (mRate <= 0) {
+                    return;
+                }
+                mTokens = Math.min(mTokens + (now - mLastRefillTime) * mRate / 1000.0, capacity());
+                mLastRefillTime = now;
+                mTokens -= bytes;
+                waitMs = (mTokens < 0) ? (long) Math.ceil(-mTokens * 1000 / mRate) : 0;
+            }
+            if (waitMs > 0) {
+                try {
+                    Thread.sleep(waitMs);
+                } catch (InterruptedException e) {
+                    // transfer is being cancelled; let it notice
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }
+
+        private void measure(long bytes, long now) {
+            long elapsed = now - mWindowStartTime;
+            if (elapsed >= MEASUREMENT_WINDOW_MS) {
+                mAchievedRate = (elapsed < 2 * MEASUREMENT_WINDOW_MS) ? mWindowBytes * 1000 / elapsed : 0;
+                mWindowStartTime = now;
+                mWindowBytes = 0;
+            }
+            mWindowBytes += bytes;
+        }
+
+        private double capacity() {
+            return mRate * BURST_MS / 1000.0;
+        }
+    }
+}
@@ -0,0 +1,171 @@
+/**
+ * ownCloud Android client application
+ * <p>
+ * Copyright (C) 2019 ownCloud GmbH.
+ * <p>
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 2,
+ * as published by the Free Software Foundation.
+ * <p>
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * <p>
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.owncloud.android.files.services;
+
+import android.os.SystemClock;
+
+import com.owncloud.android.lib.resources.files.chunks.ChunkedUploadRemoteFileOperation;
+
+/**
+ * Adaptive choice of the largest file uploaded in a single request, from the throughput and the response
+ * time measured in recent uploads; bigger files are uploaded in chunks.
+ *
+ * Chunks are always sent with the fixed size {@link ChunkedUploadRemoteFileOperation#CHUNK_SIZE}, so only
+ * the limit to split a file is adaptive. Larger requests amortize the round trip each of them waits for,
+ * so the limit grows with the bandwidth-delay product of the link. A failed request is sent again from its
+ * start, so the limit is also bound to a few seconds of transfer, and halved after every failure due to
+ * the network.
+ *
+ * Limits are kept between {@link ChunkedUploadRemoteFileOperation#CHUNK_SIZE} and a value that depends on
+ * the network type and keeps requests below usual limits of servers and proxies. Measurements are
+ * discarded when the network type changes.
+ */
+class ChunkSizePolicy {
+
+    /**
+     * Largest request on unmetered networks.
+     */
+    static final long MAX_CHUNK_SIZE_WIFI = 10 * 1024 * 1024;
+
+    /**
+     * Largest request on mobile networks.
+     */
+    static final long MAX_CHUNK_SIZE_MOBILE = 4 * ChunkedUploadRemoteFileOperation.CHUNK_SIZE;
+
+    /**
+     * Requests are sized to spend at least this many times the response time transferring data.
+     */
+    private static final int RTT_AMORTIZATION_FACTOR = 9;
+
+    /**
+     * Max time a single request should take with the measured throughput.
+     */
+    private static final long MAX_REQUEST_DURATION_MS = 10000;
+
+    /**
+     * Lowest reduction applied to the max request duration after consecutive failures.
+     */
+    private static final double MIN_LOSS_FACTOR = 1.0 / 64;
+
+    /**
+     * Weight of the newest sample in the moving averages.
+     */
+    private static final double EWMA_WEIGHT = 0.3;
+
+    private double mThroughput = 0;         // bytes per millisecond
+    private double mRtt = 0;                // milliseconds
+    private double mLossFactor = 1;         // 1 without recent failures, halved on each one
+    private boolean mSamplesOnWifi = false;
+
+    private boolean mTransferInProgress = false;
+    private long mFirstProgressTime = 0;
+    private long mFirstTransferred = 0;
+    private long mLastProgressTime = 0;
+    private long mLastTransferred = 0;
+    private long mWaitingTime = 0;
+
+    /**
+     * Chooses the largest file to upload in a single request.
+     *
+     * @param onWifi        'true' if the device is connected to an unmetered network.
+     * @return              Size in bytes; bigger files are uploaded in chunks.
+     */
+    synchronized long getSingleRequestLimit(boolean onWifi) {
+        if (onWifi != mSamplesOnWifi) {
+            reset(onWifi);
+        }
+        long maxSize = onWifi ? MAX_CHUNK_SIZE_WIFI : MAX_CHUNK_SIZE_MOBILE;
+        if (mThroughput <= 0) {
+            return ChunkedUploadRemoteFileOperation.CHUNK_SIZE;
+        }
+        double size = RTT_AMORTIZATION_FACTOR * mThroughput * mRtt;
+        size = Math.min(size, mThroughput * MAX_REQUEST_DURATION_MS * mLossFactor);
+        size = Math.min(size, maxSize);
+        return Math.max((long) size, ChunkedUploadRemoteFileOperation.CHUNK_SIZE);
+    }
+
+    /**
+     * Called when an upload starts.
+     */
+    synchronized void onTransferStarted() {
+        mTransferInProgress = true;
+        mFirstProgressTime = 0;
+        mFirstTransferred = 0;
+        mLastProgressTime = 0;
+        mLastTransferred = 0;
+        mWaitingTime = 0;
+    }
+
+    /**
+     * Called for every progress report of the current upload.
+     *
+     * Time between the end of a chunk and the first progress of the next one is spent waiting for the
+     * response of the server, and is taken as a sample of response time.
+     *
+     * @param totalTransferredSoFar     Bytes of the current upload sent so far.
+     */
+    synchronized void onTransferProgress(long totalTransferredSoFar) {
+        long now = SystemClock.elapsedRealtime();
+        if (mFirstProgressTime <= 0) {
+            // time before is spent in requests previous to the upload
+            mFirstProgressTime = now;
+            mFirstTransferred = totalTransferredSoFar;
+
+        } else if (totalTransferredSoFar > mLastTransferred &&
+                mLastTransferred % ChunkedUploadRemoteFileOperation.CHUNK_SIZE == 0) {
+            long wait = now - mLastProgressTime;
+            mWaitingTime += wait;
+            mRtt = average(mRtt, wait);
+        }
+        mLastProgressTime = now;
+        mLastTransferred = totalTransferredSoFar;
+    }
+
+    /**
+     * Called when an upload finishes.
+     *
+     * @param success           'true' if the upload succeeded.
+     * @param networkFailure    'true' if the upload failed due to the network.
+     */
+    synchronized void onTransferFinished(boolean success, boolean networkFailure) {
+        if (!mTransferInProgress) {
+            return;
+        }
+        long sendingTime = mLastProgressTime - mFirstProgressTime - mWaitingTime;
+        if (success && sendingTime > 0) {
+            mThroughput = average(mThroughput, (double) (mLastTransferred - mFirstTransferred) / sendingTime);
+            mLossFactor = Math.min(1, mLossFactor * 2);
+
+        } else if (networkFailure) {
+            mLossFactor = Math.max(mLossFactor / 2, MIN_LOSS_FACTOR);
+        }
+        mTransferInProgress = false;
+    }
+
+    private void reset(boolean onWifi) {
+        mSamplesOnWifi = onWifi;
+        mThroughput = 0;
+        mRtt = 0;
+        mLossFactor = 1;
+    }
+
+    private static double average(double current, double sample) {
+        return (current <= 0) ? sample : (1 - EWMA_WEIGHT) * current + EWMA_WEIGHT * sample;
+    }
+}
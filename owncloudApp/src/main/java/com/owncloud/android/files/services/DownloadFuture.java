@@ -0,0 +1,113 @@
+/**
+ * ownCloud Android client application
+ * <p>
+ * Copyright (C) 2019 ownCloud GmbH.
+ * <p>
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 2,
+ * as published by the Free Software Foundation.
+ * <p>
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * <p>
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.owncloud.android.files.services;
+
+/**
+ * End of the download of a file in {@link FileDownloader}, for components in the same process that need
+ * to wait for it, such as document providers.
+ *
+ * Obtained with {@link FileDownloader#getDownloadFuture(android.accounts.Account,
+ * com.owncloud.android.datamodel.OCFile)}, before requesting the download. All the callers waiting for the
+ * same file share the same instance, and so the same download. It's completed when the download finishes,
+ * fails, or is cancelled.
+ *
+ * Progress of the download is also kept, so that callers can read the temporary file while it grows.
+ */
+public class DownloadFuture {
+
+    private boolean mDone = false;
+    private boolean mSuccess = false;
+    private long mTransferred = 0;
+    private String mStoragePath = null;
+
+    DownloadFuture() {
+    }
+
+    synchronized void onProgress(long totalTransferredSoFar) {
+        mTransferred = totalTransferredSoFar;
+        notifyAll();
+    }
+
+    synchronized void complete(boolean success, String storagePath) {
+        mDone = true;
+        mSuccess = success;
+        mStoragePath = storagePath;
+        notifyAll();
+    }
+
+    /**
+     * @return      'true' if the download finished, in any way.
+     */
+    public synchronized boolean isDone() {
+        return mDone;
+    }
+
+    /**
+     * @return      'true' if the download finished and the file was downloaded.
+     */
+    public synchronized boolean isSuccess() {
+        return mDone && mSuccess;
+    }
+
+    /**
+     * @return      Path to the downloaded file in the local file system, or null if not downloaded.
+     */
+    public synchronized String getStoragePath() {
+        return mStoragePath;
+    }
+
+    /**
+     * @return      Bytes written so far to the temporary file of the download.
+     */
+    public synchronized long getTransferred() {
+        return mTransferred;
+    }
+
+    /**
+     * Blocks the calling thread until the download finishes.
+     *
+     * @return      'true' if the file was downloaded, 'false' if the download failed or was cancelled.
+     * @throws InterruptedException     If the calling thread was interrupted while waiting.
+     */
+    public synchronized boolean await() throws InterruptedException {
+        while (!mDone) {
+            wait();
+        }
+        return mSuccess;
+    }
+
+    /**
+     * Blocks the calling thread until the download reaches an amount of bytes, finishes, or a timeout
+     * expires.
+     *
+     * @param bytes         Amount of bytes to wait for.
+     * @param timeoutMs     Max time to wait, in milliseconds.
+     * @return              Bytes written so far to the temporary file of the download.
+     * @throws InterruptedException     If the calling thread was interrupted while waiting.
+     */
+    public synchronized long awaitTransferred(long bytes, long timeoutMs) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + timeoutMs;
+        long remaining = timeoutMs;
+        while (!mDone && mTransferred < bytes && remaining > 0) {
+            wait(remaining);
+            remaining = deadline - System.currentTimeMillis();
+        }
+        return mTransferred;
+    }
+}
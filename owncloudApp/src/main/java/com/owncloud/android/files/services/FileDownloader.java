@@ -65,10 +65,11 @@ import com.owncloud.android.ui.preview.PreviewImageFragment;
 import com.owncloud.android.utils.Extras;
 
 import java.io.File;
-import java.lang.ref.WeakReference;
 import java.util.AbstractList;
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
 import java.util.Vector;
 
@@ -76,7 +77,11 @@ public class FileDownloader extends Service
         implements OnDatatransferProgressListener, OnAccountsUpdateListener {
 
     public static final String KEY_ACCOUNT = "ACCOUNT";
-    public static final String KEY_FILE = "FILE";
+    /**
+     * Ids of the files to download, stored in the database; files are read from the database by the service,
+     * so that requests for many files don't exceed the size limit of Binder transactions.
+     */
+    public static final String KEY_FILE_IDS = "FILE_IDS";
     public static final String KEY_IS_AVAILABLE_OFFLINE_FILE = "KEY_IS_AVAILABLE_OFFLINE_FILE";
     public static final String KEY_RETRY_DOWNLOAD = "KEY_RETRY_DOWNLOAD";
 
@@ -86,6 +91,11 @@ public class FileDownloader extends Service
 
     private static final String TAG = FileDownloader.class.getSimpleName();
 
+    /**
+     * Futures waited for by other components, by download key; see {@link #getDownloadFuture(Account, OCFile)}.
+     */
+    private static final Map<String, DownloadFuture> sDownloadFutures = new HashMap<>();
+
     private Looper mServiceLooper;
     private ServiceHandler mServiceHandler;
     private IBinder mBinder;
@@ -97,10 +107,48 @@ public class FileDownloader extends Service
 
     private DownloadFileOperation mCurrentDownload = null;
 
+    /**
+     * Key of the ongoing download in {@link #mPendingDownloads}.
+     */
+    private String mCurrentDownloadKey = null;
+
+    /**
+     * Key of the ongoing download in {@link #mProgressBus}.
+     */
+    private String mCurrentProgressKey = null;
+
+    /**
+     * Progress of downloads delivered to the notification and to listeners bound through
+     * {@link FileDownloaderBinder}.
+     */
+    private final TransferProgressBus mProgressBus = new TransferProgressBus();
+
     private NotificationManager mNotificationManager;
     private NotificationCompat.Builder mNotificationBuilder;
     private int mLastPercent;
 
+    /**
+     * Updates the progress bar in the status notification; runs in the main thread.
+     */
+    private final OnDatatransferProgressListener mNotificationProgressListener = new OnDatatransferProgressListener() {
+        @Override
+        public void onTransferProgress(long progressRate, long totalTransferredSoFar,
+                                       long totalToTransfer, String filePath) {
+            int percent = (int) (100.0 * ((double) totalTransferredSoFar) / ((double) totalToTransfer));
+            if (percent != mLastPercent) {
+                mNotificationBuilder.setProgress(100, percent, totalToTransfer < 0);
+                String fileName = filePath.substring(filePath.lastIndexOf(FileUtils.PATH_SEPARATOR) + 1);
+                String text = String.format(getString(R.string.downloader_download_in_progress_content), percent,
+                        fileName);
+                mNotificationBuilder.setContentText(text);
+                mNotificationBuilder.setChannelId(DOWNLOAD_NOTIFICATION_CHANNEL_ID);
+                mNotificationManager.notify(R.string.downloader_download_in_progress_ticker,
+                        mNotificationBuilder.build());
+            }
+            mLastPercent = percent;
+        }
+    };
+
     private LocalBroadcastManager mLocalBroadcastManager;
 
     public static String getDownloadAddedMessage() {
@@ -145,6 +193,7 @@ public class FileDownloader extends Service
         mServiceLooper = thread.getLooper();
         mServiceHandler = new ServiceHandler(mServiceLooper, this);
         mBinder = new FileDownloaderBinder();
+        mProgressBus.addGlobalListener(mNotificationProgressListener);
 
         // add AccountsUpdatedListener
         AccountManager am = AccountManager.get(getApplicationContext());
@@ -160,12 +209,16 @@ public class FileDownloader extends Service
     @Override
     public void onDestroy() {
         Log_OC.v(TAG, "Destroying service");
+        mProgressBus.removeGlobalListener(mNotificationProgressListener);
         mBinder = null;
         mServiceHandler = null;
         mServiceLooper.quit();
         mServiceLooper = null;
         mNotificationManager = null;
 
+        // downloads still queued won't be done by this instance; don't keep anybody waiting for them
+        failAllDownloadFutures();
+
         // remove AccountsUpdatedListener
         AccountManager am = AccountManager.get(getApplicationContext());
         am.removeOnAccountsUpdatedListener(this);
@@ -197,25 +250,39 @@ public class FileDownloader extends Service
         }
 
         if (!intent.hasExtra(KEY_ACCOUNT) ||
-                !intent.hasExtra(KEY_FILE)
+                !intent.hasExtra(KEY_FILE_IDS)
         ) {
             Log_OC.e(TAG, "Not enough information provided in intent");
             return START_NOT_STICKY;
         } else {
             final Account account = intent.getParcelableExtra(KEY_ACCOUNT);
-            final OCFile file = intent.getParcelableExtra(KEY_FILE);
+            long[] fileIds = intent.getLongArrayExtra(KEY_FILE_IDS);
+            if (fileIds == null) {
+                Log_OC.e(TAG, "Incorrect array for file ids provided in download intent");
+                return START_NOT_STICKY;
+            }
+            List<OCFile> files =
+                    new FileDataStorageManager(this, account, getContentResolver()).getFilesByIds(fileIds);
+            if (files.size() < fileIds.length) {
+                Log_OC.w(TAG, (fileIds.length - files.size()) + " files to download not found in database, " +
+                        "ignored");
+            }
             AbstractList<String> requestedDownloads = new Vector<>();
             try {
-                DownloadFileOperation newDownload = new DownloadFileOperation(account, file);
-                newDownload.addDatatransferProgressListener(this);
-                newDownload.addDatatransferProgressListener((FileDownloaderBinder) mBinder);
-                Pair<String, String> putResult = mPendingDownloads.putIfAbsent(
-                        account.name, file.getRemotePath(), newDownload);
-                if (putResult != null) {
-                    String downloadKey = putResult.first;
-                    requestedDownloads.add(downloadKey);
-                    sendBroadcastNewDownload(newDownload, putResult.second);
-                }   // else, file already in the queue of downloads; don't repeat the request
+                for (OCFile file : files) {
+                    DownloadFileOperation newDownload = new DownloadFileOperation(account, file);
+                    newDownload.addDatatransferProgressListener(this);
+                    newDownload.addDatatransferProgressListener(
+                            BandwidthGovernor.getInstance().getDownloadThrottle()
+                    );
+                    Pair<String, String> putResult = mPendingDownloads.putIfAbsent(
+                            account.name, file.getRemotePath(), newDownload);
+                    if (putResult != null) {
+                        String downloadKey = putResult.first;
+                        requestedDownloads.add(downloadKey);
+                        sendBroadcastNewDownload(newDownload, putResult.second);
+                    }   // else, file already in the queue of downloads; don't repeat the request
+                }
 
             } catch (IllegalArgumentException e) {
                 Log_OC.e(TAG, "Not enough information provided in intent: " + e.getMessage());
@@ -268,15 +335,7 @@ public class FileDownloader extends Service
      * <p/>
      * It provides by itself the available operations.
      */
-    public class FileDownloaderBinder extends Binder implements OnDatatransferProgressListener {
-
-        /**
-         * Map of listeners that will be reported about progress of downloads from a
-         * {@link FileDownloaderBinder}
-         * instance.
-         */
-        private Map<Long, WeakReference<OnDatatransferProgressListener>> mBoundListeners =
-                new HashMap<>();
+    public class FileDownloaderBinder extends Binder {
 
         /**
          * Cancels a pending or current download of a remote file.
@@ -318,7 +377,7 @@ public class FileDownloader extends Service
         }
 
         public void clearListeners() {
-            mBoundListeners.clear();
+            mProgressBus.clearSubscriptions();
         }
 
         /**
@@ -341,6 +400,8 @@ public class FileDownloader extends Service
         /**
          * Adds a listener interested in the progress of the download for a concrete file.
          *
+         * Progress is delivered in the main thread, at most once per {@link TransferProgressBus#DELIVERY_INTERVAL_MS}.
+         *
          * @param listener Object to notify about progress of transfer.
          * @param account  ownCloud account holding the file of interest.
          * @param file     {@link OCFile} of interest for listener.
@@ -351,7 +412,7 @@ public class FileDownloader extends Service
             if (account == null || file == null || listener == null) {
                 return;
             }
-            mBoundListeners.put(file.getFileId(), new WeakReference<>(listener));
+            mProgressBus.subscribe(buildProgressKey(file), listener);
         }
 
         /**
@@ -367,27 +428,109 @@ public class FileDownloader extends Service
             if (account == null || file == null || listener == null) {
                 return;
             }
-            Long fileId = file.getFileId();
-            if (mBoundListeners.get(fileId) == listener) {
-                mBoundListeners.remove(fileId);
-            }
+            mProgressBus.unsubscribe(buildProgressKey(file), listener);
         }
 
-        @Override
-        public void onTransferProgress(long progressRate, long totalTransferredSoFar,
-                                       long totalToTransfer, String fileName) {
-            WeakReference<OnDatatransferProgressListener> boundListenerRef =
-                    mBoundListeners.get(mCurrentDownload.getFile().getFileId());
-            if (boundListenerRef != null && boundListenerRef.get() != null) {
-                boundListenerRef.get().onTransferProgress(
-                        progressRate,
-                        totalTransferredSoFar,
-                        totalToTransfer,
-                        fileName
-                );
+    }
+
+    /**
+     * Gets the future completed when the next or ongoing download of a file finishes, fails or is cancelled.
+     *
+     * Must be called BEFORE requesting the download with startService(), to not miss its end. The future is
+     * shared by all the callers interested in the same file.
+     *
+     * @param account   ownCloud account where the remote file is stored.
+     * @param file      File to wait for.
+     * @return          Future for the download of the file.
+     */
+    public static DownloadFuture getDownloadFuture(Account account, OCFile file) {
+        String key = buildDownloadKey(account.name, file.getRemotePath());
+        synchronized (sDownloadFutures) {
+            DownloadFuture future = sDownloadFutures.get(key);
+            if (future == null) {
+                future = new DownloadFuture();
+                sDownloadFutures.put(key, future);
             }
+            return future;
         }
+    }
+
+    /**
+     * Fails the future of a download that could not be requested, so that the callers waiting for it don't
+     * wait forever.
+     *
+     * @param account   ownCloud account where the remote file is stored.
+     * @param file      File that will not be downloaded.
+     */
+    public static void failDownloadFuture(Account account, OCFile file) {
+        completeDownloadFuture(buildDownloadKey(account.name, file.getRemotePath()), false, null);
+    }
+
+    /**
+     * Fails the futures of all the downloads not finished yet.
+     */
+    private static void failAllDownloadFutures() {
+        List<DownloadFuture> futures;
+        synchronized (sDownloadFutures) {
+            futures = new ArrayList<>(sDownloadFutures.values());
+            sDownloadFutures.clear();
+        }
+        for (DownloadFuture future : futures) {
+            future.complete(false, null);
+        }
+    }
+
+    /**
+     * Completes the future of a download, if any caller is waiting for it.
+     *
+     * @param downloadKey   Key of the download in {@link #mPendingDownloads}.
+     * @param success       'true' if the file was downloaded.
+     * @param storagePath   Local path of the downloaded file; null if not downloaded.
+     */
+    private static void completeDownloadFuture(String downloadKey, boolean success, String storagePath) {
+        if (downloadKey == null) {
+            return;
+        }
+        DownloadFuture future;
+        synchronized (sDownloadFutures) {
+            future = sDownloadFutures.remove(downloadKey);
+        }
+        if (future != null) {
+            future.complete(success, storagePath);
+        }
+    }
 
+    /**
+     * Updates the future of a download with its progress, if any caller is waiting for it.
+     *
+     * @param downloadKey               Key of the download in {@link #mPendingDownloads}.
+     * @param totalTransferredSoFar     Bytes downloaded so far.
+     */
+    private static void updateDownloadFuture(String downloadKey, long totalTransferredSoFar) {
+        DownloadFuture future;
+        synchronized (sDownloadFutures) {
+            future = sDownloadFutures.get(downloadKey);
+        }
+        if (future != null) {
+            future.onProgress(totalTransferredSoFar);
+        }
+    }
+
+    /**
+     * Same as {@link IndexedForest#buildKey(String, String)}, without an instance of the service.
+     */
+    private static String buildDownloadKey(String accountName, String remotePath) {
+        return accountName + remotePath;
+    }
+
+    /**
+     * Builds a key for the progress of a download in {@link #mProgressBus}.
+     *
+     * @param file      File being downloaded.
+     * @return          Key
+     */
+    private static String buildProgressKey(OCFile file) {
+        return String.valueOf(file.getFileId());
     }
 
     /**
@@ -433,7 +576,11 @@ public class FileDownloader extends Service
 
         mCurrentDownload = mPendingDownloads.get(downloadKey);
 
-        if (mCurrentDownload != null) {
+        if (mCurrentDownload == null) {
+            // cancelled while waiting in the queue
+            completeDownloadFuture(downloadKey, false, null);
+
+        } else {
 
             /// Check account existence
             if (!AccountUtils.exists(mCurrentDownload.getAccount().name, this)) {
@@ -443,6 +590,7 @@ public class FileDownloader extends Service
                                 " does not exist anymore -> cancelling all its downloads"
                 );
                 cancelDownloadsForAccount(mCurrentDownload.getAccount());
+                completeDownloadFuture(downloadKey, false, null);
                 return;
             }
 
@@ -470,6 +618,9 @@ public class FileDownloader extends Service
                         getClientFor(ocAccount, this);
 
                 /// perform the download
+                mCurrentDownloadKey = downloadKey;
+                mCurrentProgressKey = buildProgressKey(mCurrentDownload.getFile());
+                BandwidthGovernor.getInstance().updateLimits(this);
                 downloadResult = mCurrentDownload.execute(mDownloadClient);
                 if (downloadResult.isSuccess()) {
                     saveDownloadedFile();
@@ -524,10 +675,20 @@ public class FileDownloader extends Service
                     );
                 }
 
-                /// notify result
+                /// notify result; no progress can be delivered after this
+                if (mCurrentProgressKey != null) {
+                    mProgressBus.finish(mCurrentProgressKey);
+                    mCurrentProgressKey = null;
+                }
                 notifyDownloadResult(mCurrentDownload, downloadResult);
 
                 sendBroadcastDownloadFinished(mCurrentDownload, downloadResult, removeResult.second);
+                mCurrentDownloadKey = null;
+                completeDownloadFuture(
+                        downloadKey,
+                        downloadResult.isSuccess(),
+                        downloadResult.isSuccess() ? mCurrentDownload.getSavePath() : null
+                );
             }
 
         }
@@ -597,21 +758,14 @@ public class FileDownloader extends Service
     }
 
     /**
-     * Callback method to update the progress bar in the status notification.
+     * Callback method to receive the progress of the current download, in the download thread; posts it to
+     * the listeners of {@link #mProgressBus}.
      */
     @Override
     public void onTransferProgress(long progressRate, long totalTransferredSoFar,
                                    long totalToTransfer, String filePath) {
-        int percent = (int) (100.0 * ((double) totalTransferredSoFar) / ((double) totalToTransfer));
-        if (percent != mLastPercent) {
-            mNotificationBuilder.setProgress(100, percent, totalToTransfer < 0);
-            String fileName = filePath.substring(filePath.lastIndexOf(FileUtils.PATH_SEPARATOR) + 1);
-            String text = String.format(getString(R.string.downloader_download_in_progress_content), percent, fileName);
-            mNotificationBuilder.setContentText(text);
-            mNotificationBuilder.setChannelId(DOWNLOAD_NOTIFICATION_CHANNEL_ID);
-            mNotificationManager.notify(R.string.downloader_download_in_progress_ticker, mNotificationBuilder.build());
-        }
-        mLastPercent = percent;
+        mProgressBus.post(mCurrentProgressKey, progressRate, totalTransferredSoFar, totalToTransfer, filePath);
+        updateDownloadFuture(mCurrentDownloadKey, totalTransferredSoFar);
     }
 
     /**
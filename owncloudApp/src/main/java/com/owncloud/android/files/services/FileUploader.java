@@ -41,7 +41,6 @@ import android.os.HandlerThread;
 import android.os.IBinder;
 import android.os.Looper;
 import android.os.Message;
-import android.os.Parcelable;
 import android.os.Process;
 import android.util.Pair;
 
@@ -56,6 +55,7 @@ import com.owncloud.android.datamodel.OCUpload;
 import com.owncloud.android.datamodel.UploadsStorageManager;
 import com.owncloud.android.datamodel.UploadsStorageManager.UploadStatus;
 import com.owncloud.android.db.UploadResult;
+import com.owncloud.android.files.UploadSource;
 import com.owncloud.android.lib.common.OwnCloudAccount;
 import com.owncloud.android.lib.common.OwnCloudClient;
 import com.owncloud.android.lib.common.OwnCloudClientManagerFactory;
@@ -73,15 +73,16 @@ import com.owncloud.android.ui.activity.FileActivity;
 import com.owncloud.android.ui.activity.UploadListActivity;
 import com.owncloud.android.ui.errorhandling.ErrorMessageAdapter;
 import com.owncloud.android.ui.notifications.NotificationUtils;
+import com.owncloud.android.utils.ConnectivityUtils;
 import com.owncloud.android.utils.Extras;
 import com.owncloud.android.utils.SecurityUtils;
 
 import java.io.File;
-import java.lang.ref.WeakReference;
+import java.io.IOException;
 import java.util.AbstractList;
-import java.util.HashMap;
+import java.util.ArrayList;
 import java.util.Iterator;
-import java.util.Map;
+import java.util.List;
 import java.util.Vector;
 
 import static com.owncloud.android.operations.UploadFileOperation.CREATED_AS_CAMERA_UPLOAD_PICTURE;
@@ -110,7 +111,17 @@ public class FileUploader extends Service
     private static final String UPLOAD_FINISH_MESSAGE = "UPLOAD_FINISH";
     private static final String UPLOAD_NOTIFICATION_CHANNEL_ID = "UPLOAD_NOTIFICATION_CHANNEL";
 
-    protected static final String KEY_FILE = "FILE";
+    /**
+     * Ids of files already uploaded and stored in the database, to upload them again; files are read from the
+     * database by the service, so that requests for many files don't exceed the size limit of Binder
+     * transactions.
+     */
+    protected static final String KEY_FILE_IDS = "FILE_IDS";
+    /**
+     * Set to true, with KEY_FILE_IDS, to upload the files only if their etag in the server is still the one
+     * stored in the database; otherwise the upload fails with a conflict.
+     */
+    protected static final String KEY_IF_UNCHANGED_IN_SERVER = "KEY_IF_UNCHANGED_IN_SERVER";
     protected static final String KEY_LOCAL_FILE = "LOCAL_FILE";
     protected static final String KEY_REMOTE_FILE = "REMOTE_FILE";
     protected static final String KEY_MIME_TYPE = "MIME_TYPE";
@@ -165,6 +176,11 @@ public class FileUploader extends Service
 
     private IndexedForest<UploadFileOperation> mPendingUploads = new IndexedForest<UploadFileOperation>();
 
+    /**
+     * Size of upload requests adapted to recent uploads; shared by all the instances of the service.
+     */
+    private static final ChunkSizePolicy sChunkSizePolicy = new ChunkSizePolicy();
+
     private LocalBroadcastManager mLocalBroadcastManager;
 
     /**
@@ -172,10 +188,41 @@ public class FileUploader extends Service
      */
     private UploadFileOperation mCurrentUpload = null;
 
+    /**
+     * Key of the ongoing upload in {@link #mProgressBus}.
+     */
+    private String mCurrentProgressKey = null;
+
+    /**
+     * Progress of uploads delivered to the notification and to listeners bound through {@link FileUploaderBinder}.
+     */
+    private final TransferProgressBus mProgressBus = new TransferProgressBus();
+
     private NotificationManager mNotificationManager;
     private NotificationCompat.Builder mNotificationBuilder;
     private int mLastPercent;
 
+    /**
+     * Updates the progress bar in the status notification; runs in the main thread.
+     */
+    private final OnDatatransferProgressListener mNotificationProgressListener = new OnDatatransferProgressListener() {
+        @Override
+        public void onTransferProgress(long progressRate, long totalTransferredSoFar,
+                                       long totalToTransfer, String filePath) {
+            int percent = (int) (100.0 * ((double) totalTransferredSoFar) / ((double) totalToTransfer));
+            if (percent != mLastPercent) {
+                mNotificationBuilder.setProgress(100, percent, false);
+                String fileName = filePath.substring(filePath.lastIndexOf(FileUtils.PATH_SEPARATOR) + 1);
+                String text = String.format(getString(R.string.uploader_upload_in_progress_content), percent, fileName);
+                mNotificationBuilder.setContentText(text);
+                mNotificationBuilder.setChannelId(UPLOAD_NOTIFICATION_CHANNEL_ID);
+                getNotificationManager().notify(R.string.uploader_upload_in_progress_ticker,
+                        mNotificationBuilder.build());
+            }
+            mLastPercent = percent;
+        }
+    };
+
     public static String getUploadsAddedMessage() {
         return FileUploader.class.getName() + UPLOADS_ADDED_MESSAGE;
     }
@@ -190,6 +237,8 @@ public class FileUploader extends Service
 
     @Override
     public void onRenameUpload() {
+        mProgressBus.finish(mCurrentProgressKey);
+        mCurrentProgressKey = buildProgressKey(mCurrentAccount.name, mCurrentUpload.getFile().getRemotePath());
         mUploadsStorageManager.updateDatabaseUploadStart(mCurrentUpload);
         sendBroadcastUploadStarted(mCurrentUpload);
     }
@@ -226,6 +275,7 @@ public class FileUploader extends Service
         mServiceLooper = thread.getLooper();
         mServiceHandler = new ServiceHandler(mServiceLooper, this);
         mBinder = new FileUploaderBinder();
+        mProgressBus.addGlobalListener(mNotificationProgressListener);
 
         mUploadsStorageManager = new UploadsStorageManager(getContentResolver());
 
@@ -258,6 +308,7 @@ public class FileUploader extends Service
     @Override
     public void onDestroy() {
         Log_OC.v(TAG, "Destroying service");
+        mProgressBus.removeGlobalListener(mNotificationProgressListener);
         mBinder = null;
         mServiceHandler = null;
         mServiceLooper.quit();
@@ -328,9 +379,10 @@ public class FileUploader extends Service
         }
         OwnCloudVersion ocv = AccountUtils.getServerVersion(account);
         boolean chunked = ocv.isChunkedUploadSupported();
+        long singleRequestLimit = sChunkSizePolicy.getSingleRequestLimit(ConnectivityUtils.isAppConnectedViaWiFi(this));
 
         if (!retry) {
-            if (!(intent.hasExtra(KEY_LOCAL_FILE) || intent.hasExtra(KEY_FILE))) {
+            if (!(intent.hasExtra(KEY_LOCAL_FILE) || intent.hasExtra(KEY_FILE_IDS))) {
                 Log_OC.e(TAG, "Not enough information provided in intent");
                 return Service.START_NOT_STICKY;
             }
@@ -338,10 +390,23 @@ public class FileUploader extends Service
             String[] localPaths = null, remotePaths = null, mimeTypes = null;
             OCFile[] files = null;
 
-            if (intent.hasExtra(KEY_FILE)) {
-                Parcelable[] files_temp = intent.getParcelableArrayExtra(KEY_FILE);
-                files = new OCFile[files_temp.length];
-                System.arraycopy(files_temp, 0, files, 0, files_temp.length);
+            if (intent.hasExtra(KEY_FILE_IDS)) {
+                long[] fileIds = intent.getLongArrayExtra(KEY_FILE_IDS);
+                if (fileIds != null) {
+                    List<OCFile> storedFiles = new FileDataStorageManager(this, account, getContentResolver())
+                            .getFilesByIds(fileIds);
+                    if (storedFiles.size() < fileIds.length) {
+                        Log_OC.w(TAG, (fileIds.length - storedFiles.size()) + " files to upload not found in " +
+                                "database, ignored");
+                    }
+                    if (intent.getBooleanExtra(KEY_IF_UNCHANGED_IN_SERVER, false)) {
+                        for (OCFile storedFile : storedFiles) {
+                            // sent as If-Match; prevents overwriting changes in the server not noticed yet
+                            storedFile.setEtagInConflict(storedFile.getEtag());
+                        }
+                    }
+                    files = storedFiles.toArray(new OCFile[storedFiles.size()]);
+                }
 
             } else {
                 localPaths = intent.getStringArrayExtra(KEY_LOCAL_FILE);
@@ -354,11 +419,11 @@ public class FileUploader extends Service
 
             boolean isCreateRemoteFolder = intent.getBooleanExtra(KEY_CREATE_REMOTE_FOLDER, false);
 
-            if (intent.hasExtra(KEY_FILE) && files == null) {
+            if (intent.hasExtra(KEY_FILE_IDS) && files == null) {
                 Log_OC.e(TAG, "Incorrect array for OCFiles provided in upload intent");
                 return Service.START_NOT_STICKY;
 
-            } else if (!intent.hasExtra(KEY_FILE)) {
+            } else if (!intent.hasExtra(KEY_FILE_IDS)) {
                 if (localPaths == null) {
                     Log_OC.e(TAG, "Incorrect array for local paths provided in upload intent");
                     return Service.START_NOT_STICKY;
@@ -391,11 +456,20 @@ public class FileUploader extends Service
 
             String uploadKey;
             UploadFileOperation newUploadFileOperation;
+            List<OCUpload> newUploads = new ArrayList<>(files.length);
+            List<UploadFileOperation> newUploadFileOperations = new ArrayList<>(files.length);
             try {
                 for (OCFile ocFile : files) {
 
+                    // length in the database may be stale for local files; size of "content://" URIs is
+                    // unknown until the upload runs, and they may be big
+                    boolean contentUri = UploadSource.isContentUri(ocFile.getStoragePath());
+                    long fileLength = contentUri ?
+                            ocFile.getFileLength() :
+                            new File(ocFile.getStoragePath()).length();
+
                     OCUpload ocUpload = new OCUpload(ocFile, account);
-                    ocUpload.setFileSize(ocFile.getFileLength());
+                    ocUpload.setFileSize(fileLength);
                     ocUpload.setForceOverwrite(forceOverwrite);
                     ocUpload.setCreateRemoteFolder(isCreateRemoteFolder);
                     ocUpload.setCreatedBy(createdBy);
@@ -404,8 +478,10 @@ public class FileUploader extends Service
                     ocUpload.setWhileChargingOnly(isWhileChargingOnly);*/
                     ocUpload.setUploadStatus(UploadStatus.UPLOAD_IN_PROGRESS);
 
-                    if (chunked && new File(ocFile.getStoragePath()).length() >
-                            ChunkedUploadRemoteFileOperation.CHUNK_SIZE) {
+                    boolean chunkedUpload = chunked && (fileLength > singleRequestLimit ||
+                            contentUri && fileLength <= 0);
+                    TransferMetrics.getInstance().recordUploadSplit(singleRequestLimit, chunkedUpload);
+                    if (chunkedUpload) {
                         ocUpload.setTransferId(
                                 SecurityUtils.stringToMD5Hash(ocFile.getRemotePath()) + System.currentTimeMillis());
                         newUploadFileOperation = new ChunkedUploadFileOperation(
@@ -432,7 +508,9 @@ public class FileUploader extends Service
                         newUploadFileOperation.setRemoteFolderToBeCreated();
                     }
                     newUploadFileOperation.addDatatransferProgressListener(this);
-                    newUploadFileOperation.addDatatransferProgressListener((FileUploaderBinder) mBinder);
+                    newUploadFileOperation.addDatatransferProgressListener(
+                            BandwidthGovernor.getInstance().getUploadThrottle()
+                    );
 
                     newUploadFileOperation.addRenameUploadListener(this);
 
@@ -444,13 +522,17 @@ public class FileUploader extends Service
                     if (putResult != null) {
                         uploadKey = putResult.first;
                         requestedUploads.add(uploadKey);
-
-                        // Save upload in database
-                        long id = mUploadsStorageManager.storeUpload(ocUpload);
-                        newUploadFileOperation.setOCUploadId(id);
+                        newUploads.add(ocUpload);
+                        newUploadFileOperations.add(newUploadFileOperation);
                     }
                 }
 
+                // Save uploads in database, all at once; uploads don't start before this method returns
+                mUploadsStorageManager.storeUploads(newUploads);
+                for (int i = 0; i < newUploads.size(); i++) {
+                    newUploadFileOperations.get(i).setOCUploadId(newUploads.get(i).getUploadId());
+                }
+
             } catch (IllegalArgumentException e) {
                 Log_OC.e(TAG, "Not enough information provided in intent: " + e.getMessage());
                 return START_NOT_STICKY;
@@ -474,7 +556,9 @@ public class FileUploader extends Service
 
             UploadFileOperation newUploadFileOperation;
 
-            if (chunked && upload.getFileSize() > ChunkedUploadRemoteFileOperation.CHUNK_SIZE) {
+            boolean chunkedUpload = chunked && upload.getFileSize() > singleRequestLimit;
+            TransferMetrics.getInstance().recordUploadSplit(singleRequestLimit, chunkedUpload);
+            if (chunkedUpload) {
                 upload.setTransferId(
                         SecurityUtils.stringToMD5Hash(upload.getRemotePath()) + System.currentTimeMillis());
                 newUploadFileOperation = new ChunkedUploadFileOperation(
@@ -497,7 +581,9 @@ public class FileUploader extends Service
             }
 
             newUploadFileOperation.addDatatransferProgressListener(this);
-            newUploadFileOperation.addDatatransferProgressListener((FileUploaderBinder) mBinder);
+            newUploadFileOperation.addDatatransferProgressListener(
+                    BandwidthGovernor.getInstance().getUploadThrottle()
+            );
 
             newUploadFileOperation.addRenameUploadListener(this);
 
@@ -564,14 +650,7 @@ public class FileUploader extends Service
      * <p/>
      * It provides by itself the available operations.
      */
-    public class FileUploaderBinder extends Binder implements OnDatatransferProgressListener {
-
-        /**
-         * Map of listeners that will be reported about progress of uploads from a
-         * {@link FileUploaderBinder} instance
-         */
-        private Map<String, WeakReference<OnDatatransferProgressListener>> mBoundListeners =
-                new HashMap<String, WeakReference<OnDatatransferProgressListener>>();
+    public class FileUploaderBinder extends Binder {
 
         /**
          * Cancels a pending or current upload of a remote file.
@@ -639,7 +718,7 @@ public class FileUploader extends Service
         }
 
         public void clearListeners() {
-            mBoundListeners.clear();
+            mProgressBus.clearSubscriptions();
         }
 
         /**
@@ -676,6 +755,8 @@ public class FileUploader extends Service
         /**
          * Adds a listener interested in the progress of the upload for a concrete file.
          *
+         * Progress is delivered in the main thread, at most once per {@link TransferProgressBus#DELIVERY_INTERVAL_MS}.
+         *
          * @param listener Object to notify about progress of transfer.
          * @param account  ownCloud account holding the file of interest.
          * @param file     {@link OCFile} of interest for listener.
@@ -688,8 +769,7 @@ public class FileUploader extends Service
             if (account == null || file == null || listener == null) {
                 return;
             }
-            String targetKey = buildRemoteName(account.name, file.getRemotePath());
-            mBoundListeners.put(targetKey, new WeakReference<>(listener));
+            mProgressBus.subscribe(buildProgressKey(account.name, file.getRemotePath()), listener);
         }
 
         /**
@@ -705,8 +785,7 @@ public class FileUploader extends Service
             if (ocUpload == null || listener == null) {
                 return;
             }
-            String targetKey = buildRemoteName(ocUpload.getAccountName(), ocUpload.getRemotePath());
-            mBoundListeners.put(targetKey, new WeakReference<>(listener));
+            mProgressBus.subscribe(buildProgressKey(ocUpload.getAccountName(), ocUpload.getRemotePath()), listener);
         }
 
         /**
@@ -724,10 +803,7 @@ public class FileUploader extends Service
             if (account == null || file == null || listener == null) {
                 return;
             }
-            String targetKey = buildRemoteName(account.name, file.getRemotePath());
-            if (mBoundListeners.get(targetKey) == listener) {
-                mBoundListeners.remove(targetKey);
-            }
+            mProgressBus.unsubscribe(buildProgressKey(account.name, file.getRemotePath()), listener);
         }
 
         /**
@@ -743,34 +819,21 @@ public class FileUploader extends Service
             if (ocUpload == null || listener == null) {
                 return;
             }
-            String targetKey = buildRemoteName(ocUpload.getAccountName(), ocUpload.getRemotePath());
-            if (mBoundListeners.get(targetKey) == listener) {
-                mBoundListeners.remove(targetKey);
-            }
-        }
-
-        /**
-         * Builds a key for the map of listeners.
-         * <p/>
-         * TODO use method in IndexedForest, or refactor both to a common place
-         * add to local database) to better policy (add to local database, then upload)
-         *
-         * @param accountName Local name of the ownCloud account where the file to upload belongs.
-         * @param remotePath  Remote path to upload the file to.
-         * @return Key
-         */
-        private String buildRemoteName(String accountName, String remotePath) {
-            return accountName + remotePath;
+            mProgressBus.unsubscribe(buildProgressKey(ocUpload.getAccountName(), ocUpload.getRemotePath()), listener);
         }
+    }
 
-        @Override
-        public void onTransferProgress(long read, long transferred, long total, String absolutePath) {
-            String key = buildRemoteName(mCurrentUpload.getAccount().name, mCurrentUpload.getFile().getRemotePath());
-            WeakReference<OnDatatransferProgressListener> boundListenerRef = mBoundListeners.get(key);
-            if (boundListenerRef != null && boundListenerRef.get() != null) {
-                boundListenerRef.get().onTransferProgress(read, transferred, total, absolutePath);
-            }
-        }
+    /**
+     * Builds a key for the progress of an upload in {@link #mProgressBus}.
+     * <p/>
+     * TODO use method in IndexedForest, or refactor both to a common place
+     *
+     * @param accountName Local name of the ownCloud account where the file to upload belongs.
+     * @param remotePath  Remote path to upload the file to.
+     * @return Key
+     */
+    private static String buildProgressKey(String accountName, String remotePath) {
+        return accountName + remotePath;
     }
 
     /**
@@ -861,6 +924,9 @@ public class FileUploader extends Service
                         getClientFor(ocAccount, this);
 
                 /// perform the upload
+                mCurrentProgressKey = buildProgressKey(mCurrentAccount.name, mCurrentUpload.getFile().getRemotePath());
+                BandwidthGovernor.getInstance().updateLimits(this);
+                sChunkSizePolicy.onTransferStarted();
                 uploadResult = mCurrentUpload.execute(mUploadClient, mStorageManager);
 
             } catch (Exception e) {
@@ -883,6 +949,11 @@ public class FileUploader extends Service
                     );
                 }
 
+                sChunkSizePolicy.onTransferFinished(
+                        uploadResult.isSuccess(),
+                        !uploadResult.isSuccess() && uploadResult.getException() instanceof IOException
+                );
+
                 if (!uploadResult.isSuccess() && uploadResult.getException() != null) {
 
                     // if failed due to lack of connectivity, schedule an automatic retry
@@ -923,7 +994,11 @@ public class FileUploader extends Service
 
                 mUploadsStorageManager.updateDatabaseUploadResult(uploadResult, mCurrentUpload);
 
-                /// notify result
+                /// notify result; no progress can be delivered after this
+                if (mCurrentProgressKey != null) {
+                    mProgressBus.finish(mCurrentProgressKey);
+                    mCurrentProgressKey = null;
+                }
                 notifyUploadResult(mCurrentUpload, uploadResult);
 
                 sendBroadcastUploadFinished(mCurrentUpload, uploadResult, removeResult.second);
@@ -978,21 +1053,14 @@ public class FileUploader extends Service
     }
 
     /**
-     * Callback method to update the progress bar in the status notification
+     * Callback method to receive the progress of the current upload, in the upload thread; posts it to
+     * the listeners of {@link #mProgressBus}.
      */
     @Override
     public void onTransferProgress(long progressRate, long totalTransferredSoFar,
                                    long totalToTransfer, String filePath) {
-        int percent = (int) (100.0 * ((double) totalTransferredSoFar) / ((double) totalToTransfer));
-        if (percent != mLastPercent) {
-            mNotificationBuilder.setProgress(100, percent, false);
-            String fileName = filePath.substring(filePath.lastIndexOf(FileUtils.PATH_SEPARATOR) + 1);
-            String text = String.format(getString(R.string.uploader_upload_in_progress_content), percent, fileName);
-            mNotificationBuilder.setContentText(text);
-            mNotificationBuilder.setChannelId(UPLOAD_NOTIFICATION_CHANNEL_ID);
-            getNotificationManager().notify(R.string.uploader_upload_in_progress_ticker, mNotificationBuilder.build());
-        }
-        mLastPercent = percent;
+        sChunkSizePolicy.onTransferProgress(totalTransferredSoFar);
+        mProgressBus.post(mCurrentProgressKey, progressRate, totalTransferredSoFar, totalToTransfer, filePath);
     }
 
     /**
@@ -23,220 +23,264 @@ package com.owncloud.android.files.services;
 import android.util.Pair;
 
 import com.owncloud.android.datamodel.OCFile;
-import com.owncloud.android.lib.common.utils.Log_OC;
 
-import java.io.File;
-import java.util.HashSet;
-import java.util.Iterator;
-import java.util.Set;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ConcurrentMap;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 
 /**
  *  Helper structure to keep the trees of folders containing any file downloading or synchronizing.
  *
- *  A map provides the indexation based in hashing.
+ *  A tree is created per account, with a node per segment of the remote paths, so that inserting and
+ *  finding a path costs O(depth), and removing a folder costs O(size of its subtree). Every folder containing
+ *  a pending element has a node, so {@link #contains(String, String)} also tells in O(depth) if there is
+ *  anything pending under a folder.
  *
- *  A tree is created per account.
+ *  Elements with payload are also indexed by the key returned in {@link #putIfAbsent(String, String, Object)},
+ *  for direct access with {@link #get(String)}.
  */
 public class IndexedForest<V> {
 
-    private ConcurrentMap<String, Node<V>> mMap = new ConcurrentHashMap<String, Node<V>>();
+    /**
+     * Root node of the tree of every account, by account name.
+     */
+    private final Map<String, Node<V>> mRoots = new HashMap<>();
 
-    private class Node<V> {
-        String mKey = null;
-        Node<V> mParent = null;
-        Set<Node<V>> mChildren = new HashSet<Node<V>>();    // TODO be careful with hash()
-        V mPayload = null;
+    /**
+     * Nodes with payload, by key.
+     */
+    private final Map<String, Node<V>> mValuedNodes = new HashMap<>();
 
-        // payload is optional
-        public Node(String key, V payload) {
-            if (key == null) {
-                throw new IllegalArgumentException("Argument key MUST NOT be null");
-            }
-            mKey = key;
-            mPayload = payload;
-        }
+    private static class Node<V> {
+        final String mPath;
+        final String mName;                         // segment of the path in the parent; null in roots
+        final Node<V> mParent;
+        Map<String, Node<V>> mChildren = null;     // by name; created on demand
+        V mPayload = null;
+        String mKey = null;                         // only while there is payload
 
-        public Node<V> getParent() {
-            return mParent;
+        Node(String path, String name, Node<V> parent) {
+            mPath = path;
+            mName = name;
+            mParent = parent;
         }
 
-        public Set<Node<V>> getChildren() {
-            return mChildren;
+        Node<V> getChild(String name) {
+            return (mChildren == null) ? null : mChildren.get(name);
         }
 
-        public String getKey() {
-            return mKey;
+        void addChild(Node<V> child) {
+            if (mChildren == null) {
+                mChildren = new HashMap<>();
+            }
+            mChildren.put(child.mName, child);
         }
 
-        public V getPayload() {
-            return mPayload;
+        boolean hasChildren() {
+            return mChildren != null && !mChildren.isEmpty();
         }
 
-        public void addChild(Node<V> child) {
-            mChildren.add(child);
-            child.setParent(this);
+        void removeChild(Node<V> child) {
+            if (mChildren != null) {
+                mChildren.remove(child.mName);
+            }
         }
+    }
 
-        private void setParent(Node<V> parent) {
-            mParent = parent;
+    /**
+     * Adds an element, if there was no element or folder with pending elements in the same path.
+     *
+     * @param accountName   Local name of the ownCloud account where the file is stored.
+     * @param remotePath    Path of the file in the server.
+     * @param value         Payload of the element.
+     * @return              Key of the new element, and path of the deepest folder that was already in the
+     *                      tree before adding it (or root folder, if none); null if the element was not added.
+     */
+    public synchronized Pair<String, String> putIfAbsent(String accountName, String remotePath, V value) {
+        Node<V> node = mRoots.get(accountName);
+        String linkedTo = OCFile.ROOT_PATH;
+        boolean created = false;
+        if (node == null) {
+            node = new Node<>(OCFile.ROOT_PATH, null, null);
+            mRoots.put(accountName, node);
+            created = true;
         }
 
-        public boolean hasChildren() {
-            return mChildren.size() > 0;
+        int start = 0;
+        while (start < remotePath.length()) {
+            int end = remotePath.indexOf(OCFile.PATH_SEPARATOR, start);
+            if (end < 0) {
+                end = remotePath.length();
+            }
+            if (end > start) {
+                String name = remotePath.substring(start, end);
+                Node<V> child = node.getChild(name);
+                if (child == null) {
+                    if (!created) {
+                        linkedTo = node.mPath;
+                        created = true;
+                    }
+                    // folders in the path are indexed with the trailing separator, as in OCFile
+                    String childPath = (end < remotePath.length()) ?
+                            remotePath.substring(0, end + 1) :
+                            remotePath;
+                    child = new Node<>(childPath, name, node);
+                    node.addChild(child);
+                }
+                node = child;
+            }
+            start = end + 1;
         }
 
-        public void removeChild(Node<V> removed) {
-            mChildren.remove(removed);
+        if (!created) {
+            // remotePath already known, as an element or a folder with elements inside; not replaced
+            return null;
         }
 
-        public void clearPayload() {
-            mPayload = null;
-        }
+        String key = buildKey(accountName, remotePath);
+        node.mPayload = value;
+        node.mKey = key;
+        mValuedNodes.put(key, node);
+        return new Pair<>(key, linkedTo);
     }
 
-    public /* synchronized */ Pair<String, String> putIfAbsent(String accountName, String remotePath, V value) {
-        String targetKey = buildKey(accountName, remotePath);
-
-        Node<V> valuedNode = new Node(targetKey, value);
-        Node<V> previousValue = mMap.putIfAbsent(
-                targetKey,
-                valuedNode
-        );
-        if (previousValue != null) {
-            // remotePath already known; not replaced
-            return null;
-
-        } else {
-            // value really added
-            String currentPath = remotePath, parentPath = null, parentKey = null;
-            Node<V> currentNode = valuedNode, parentNode = null;
-            boolean linked = false;
-            while (!OCFile.ROOT_PATH.equals(currentPath) && !linked) {
-                parentPath = new File(currentPath).getParent();
-                if (!parentPath.endsWith(OCFile.PATH_SEPARATOR)) {
-                    parentPath += OCFile.PATH_SEPARATOR;
-                }
-                parentKey = buildKey(accountName, parentPath);
-                parentNode = mMap.get(parentKey);
-                if (parentNode == null) {
-                    parentNode = new Node(parentKey, null);
-                    parentNode.addChild(currentNode);
-                    mMap.put(parentKey, parentNode);
-                } else {
-                    parentNode.addChild(currentNode);
-                    linked = true;
-                }
-                currentPath = parentPath;
-                currentNode = parentNode;
-            }
-
-            String linkedTo = OCFile.ROOT_PATH;
-            if (linked) {
-                linkedTo = parentNode.getKey().substring(accountName.length());
+    /**
+     * Removes the payload of an element, and the element itself if there are no pending elements under it.
+     *
+     * @param accountName   Local name of the ownCloud account where the file is stored.
+     * @param remotePath    Path of the file in the server.
+     * @return              Removed payload, and path of the deepest folder left in the tree if the element was
+     *                      removed from it.
+     */
+    public synchronized Pair<V, String> removePayload(String accountName, String remotePath) {
+        Node<V> target = find(accountName, remotePath);
+        if (target != null) {
+            V payload = clearPayload(target);
+            if (!target.hasChildren()) {
+                return new Pair<>(payload, unlink(accountName, target));
             }
-
-            return new Pair<String, String>(targetKey, linkedTo);
+            return new Pair<>(payload, null);
         }
+        return new Pair<>(null, null);
     }
 
-    public Pair<V, String> removePayload(String accountName, String remotePath) {
-        String targetKey = buildKey(accountName, remotePath);
-        Node<V> target = mMap.get(targetKey);
+    /**
+     * Removes an element and all the elements under it.
+     *
+     * @param accountName   Local name of the ownCloud account where the file is stored.
+     * @param remotePath    Path of the file in the server.
+     * @return              Payload of the removed element, and path of the deepest folder left in the tree.
+     */
+    public synchronized Pair<V, String> remove(String accountName, String remotePath) {
+        Node<V> target = find(accountName, remotePath);
         if (target != null) {
-            target.clearPayload();
-            if (!target.hasChildren()) {
-                return remove(accountName, remotePath);
-            }
+            V payload = target.mPayload;
+            clearSubtree(target);
+            return new Pair<>(payload, unlink(accountName, target));
         }
-        return new Pair<V, String>(null, null);
+        return new Pair<>(null, null);
     }
 
-    public /* synchronized */ Pair<V, String> remove(String accountName, String remotePath) {
-        String targetKey = buildKey(accountName, remotePath);
-        Node<V> firstRemoved = mMap.remove(targetKey);
-        String unlinkedFrom = null;
-
-        if (firstRemoved != null) {
-            /// remove children
-            removeDescendants(firstRemoved);
-
-            /// remove ancestors if only here due to firstRemoved
-            Node<V> removed = firstRemoved;
-            Node<V> parent = removed.getParent();
-            boolean unlinked = false;
-            while (parent != null) {
-                parent.removeChild(removed);
-                if (!parent.hasChildren()) {
-                    removed = mMap.remove(parent.getKey());
-                    parent = removed.getParent();
-                } else {
-                    break;
-                }
-            }
-
-            if (parent != null) {
-                unlinkedFrom = parent.getKey().substring(accountName.length());
-            }
-
-            return new Pair<V, String>(firstRemoved.getPayload(), unlinkedFrom);
+    /**
+     * Removes all the elements of an account.
+     *
+     * @param accountName   Local name of the ownCloud account.
+     */
+    public synchronized void remove(String accountName) {
+        Node<V> root = mRoots.remove(accountName);
+        if (root != null) {
+            clearSubtree(root);
         }
+    }
 
-        return new Pair<V, String>(null, null);
+    /**
+     * @param accountName   Local name of the ownCloud account where the file is stored.
+     * @param remotePath    Path of a file or folder in the server.
+     * @return              'true' if there is an element in the path, or any element under it.
+     */
+    public synchronized boolean contains(String accountName, String remotePath) {
+        return find(accountName, remotePath) != null;
     }
 
-    private void removeDescendants(Node<V> removed) {
-        Iterator<Node<V>> childrenIt = removed.getChildren().iterator();
-        Node<V> child = null;
-        while (childrenIt.hasNext()) {
-            child = childrenIt.next();
-            mMap.remove(child.getKey());
-            removeDescendants(child);
-        }
+    public synchronized V get(String key) {
+        Node<V> node = mValuedNodes.get(key);
+        return (node != null) ? node.mPayload : null;
     }
 
-    public boolean contains(String accountName, String remotePath) {
-        String targetKey = buildKey(accountName, remotePath);
-        return mMap.containsKey(targetKey);
+    public synchronized V get(String accountName, String remotePath) {
+        Node<V> node = find(accountName, remotePath);
+        return (node != null) ? node.mPayload : null;
     }
 
-    public /* synchronized */ V get(String key) {
-        Node<V> node = mMap.get(key);
-        if (node != null) {
-            return node.getPayload();
-        } else {
-            return null;
+    /**
+     * Builds a key to index files
+     *
+     * @param accountName   Local name of the ownCloud account where the file to download is stored.
+     * @param remotePath    Path of the file in the server.
+     */
+    public String buildKey(String accountName, String remotePath) {
+        return accountName + remotePath;
+    }
+
+    private Node<V> find(String accountName, String remotePath) {
+        Node<V> node = mRoots.get(accountName);
+        int start = 0;
+        while (node != null && start < remotePath.length()) {
+            int end = remotePath.indexOf(OCFile.PATH_SEPARATOR, start);
+            if (end < 0) {
+                end = remotePath.length();
+            }
+            if (end > start) {
+                node = node.getChild(remotePath.substring(start, end));
+            }
+            start = end + 1;
         }
+        return node;
     }
 
-    public V get(String accountName, String remotePath) {
-        String key = buildKey(accountName, remotePath);
-        return get(key);
+    private V clearPayload(Node<V> node) {
+        V payload = node.mPayload;
+        if (node.mKey != null) {
+            mValuedNodes.remove(node.mKey);
+        }
+        node.mPayload = null;
+        node.mKey = null;
+        return payload;
     }
 
     /**
-     * Remove the elements that contains account as a part of its key
-     * @param accountName
+     * Clears the payloads of a node and all its descendants, without recursion.
      */
-    public void remove(String accountName) {
-        Iterator<String> it = mMap.keySet().iterator();
-        while (it.hasNext()) {
-            String key = it.next();
-            Log_OC.d("IndexedForest", "Number of pending downloads= " + mMap.size());
-            if (key.startsWith(accountName)) {
-                mMap.remove(key);
+    private void clearSubtree(Node<V> root) {
+        List<Node<V>> pending = new ArrayList<>();
+        pending.add(root);
+        while (!pending.isEmpty()) {
+            Node<V> node = pending.remove(pending.size() - 1);
+            clearPayload(node);
+            if (node.mChildren != null) {
+                pending.addAll(node.mChildren.values());
             }
         }
     }
 
     /**
-     * Builds a key to index files
+     * Detaches a node from its tree, with the ancestors that were only kept because of it.
      *
-     * @param accountName   Local name of the ownCloud account where the file to download is stored.
-     * @param remotePath    Path of the file in the server.
+     * @return      Path of the deepest ancestor left in the tree, or null if the whole tree was removed.
      */
-    public String buildKey(String accountName, String remotePath) {
-        return accountName + remotePath;
+    private String unlink(String accountName, Node<V> removed) {
+        Node<V> parent = removed.mParent;
+        while (parent != null) {
+            parent.removeChild(removed);
+            if (parent.hasChildren() || parent.mPayload != null) {
+                return parent.mPath;
+            }
+            removed = parent;
+            parent = removed.mParent;
+        }
+        // the root itself was removed
+        mRoots.remove(accountName);
+        return null;
     }
 }
@@ -68,7 +68,7 @@ public class RetryDownloadJobService extends JobService {
                 // Retry download
                 Intent intent = new Intent(this, FileDownloader.class);
                 intent.putExtra(FileDownloader.KEY_ACCOUNT, account);
-                intent.putExtra(FileDownloader.KEY_FILE, ocFile);
+                intent.putExtra(FileDownloader.KEY_FILE_IDS, new long[]{ocFile.getFileId()});
                 intent.putExtra(FileDownloader.KEY_RETRY_DOWNLOAD, true);
                 ContextCompat.startForegroundService(this, intent);
             } else {
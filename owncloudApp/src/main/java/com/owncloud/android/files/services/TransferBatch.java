@@ -0,0 +1,108 @@
+/**
+ * ownCloud Android client application
+ * <p>
+ * Copyright (C) 2019 ownCloud GmbH.
+ * <p>
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 2,
+ * as published by the Free Software Foundation.
+ * <p>
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * <p>
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.owncloud.android.files.services;
+
+import android.accounts.Account;
+import android.content.Context;
+
+import com.owncloud.android.MainApp;
+import com.owncloud.android.datamodel.OCFile;
+import com.owncloud.android.lib.common.utils.Log_OC;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Transfers of files stored in the database, collected while synchronizing many files, to request them all
+ * at once with {@link TransferRequester}. Only the ids of the files are sent to the transfer services, which
+ * read the files from the database; any change in the files must be saved before requesting the batch.
+ */
+public class TransferBatch {
+
+    private static final String TAG = TransferBatch.class.getSimpleName();
+
+    private final int mUploadBehaviour;
+    private final boolean mForceOverwrite;
+
+    private final List<Long> mDownloads = new ArrayList<>();
+    private final List<Long> mUploads = new ArrayList<>();
+    private final List<Long> mUploadsIfUnchangedInServer = new ArrayList<>();
+
+    /**
+     * @param uploadBehaviour   Local behaviour for the uploads, one of the FileUploader.LOCAL_BEHAVIOUR_* values.
+     * @param forceOverwrite    'true' to overwrite the files in the server when uploading.
+     */
+    public TransferBatch(int uploadBehaviour, boolean forceOverwrite) {
+        mUploadBehaviour = uploadBehaviour;
+        mForceOverwrite = forceOverwrite;
+    }
+
+    public void addDownload(OCFile file) {
+        add(mDownloads, file);
+    }
+
+    /**
+     * @param ifUnchangedInServer   'true' to upload the file only if its etag in the server is still the one
+     *                              stored in the database.
+     */
+    public void addUpload(OCFile file, boolean ifUnchangedInServer) {
+        add(ifUnchangedInServer ? mUploadsIfUnchangedInServer : mUploads, file);
+    }
+
+    private void add(List<Long> ids, OCFile file) {
+        if (file.getFileId() < 0) {
+            Log_OC.e(TAG, "File " + file.getRemotePath() + " not saved in the database, transfer ignored");
+            return;
+        }
+        ids.add(file.getFileId());
+    }
+
+    /**
+     * Requests the collected transfers, and empties the batch.
+     */
+    public void request(Context context, Account account, boolean requestedFromAvOfflineJobService) {
+        TransferRequester requester = new TransferRequester();
+        if (!mDownloads.isEmpty()) {
+            requester.downloadFiles(context, account, toArray(mDownloads), requestedFromAvOfflineJobService);
+        }
+        if (!mUploads.isEmpty()) {
+            requester.uploadsUpdate(context, account, toArray(mUploads), mUploadBehaviour, mForceOverwrite,
+                    false, requestedFromAvOfflineJobService);
+        }
+        if (!mUploadsIfUnchangedInServer.isEmpty()) {
+            requester.uploadsUpdate(context, account, toArray(mUploadsIfUnchangedInServer), mUploadBehaviour,
+                    mForceOverwrite, true, requestedFromAvOfflineJobService);
+        }
+        if (MainApp.isDeveloper()) {
+            Log_OC.d(TAG, "Requested " + mDownloads.size() + " downloads and " +
+                    (mUploads.size() + mUploadsIfUnchangedInServer.size()) + " uploads in " + account.name);
+        }
+        mDownloads.clear();
+        mUploads.clear();
+        mUploadsIfUnchangedInServer.clear();
+    }
+
+    private static long[] toArray(List<Long> ids) {
+        long[] array = new long[ids.size()];
+        for (int i = 0; i < array.length; i++) {
+            array[i] = ids.get(i);
+        }
+        return array;
+    }
+}
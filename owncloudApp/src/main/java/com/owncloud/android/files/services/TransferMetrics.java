@@ -0,0 +1,87 @@
+/**
+ * ownCloud Android client application
+ * <p>
+ * Copyright (C) 2019 ownCloud GmbH.
+ * <p>
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 2,
+ * as published by the Free Software Foundation.
+ * <p>
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * <p>
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.owncloud.android.files.services;
+
+import com.owncloud.android.lib.common.utils.Log_OC;
+
+/**
+ * Process-wide counters about transfers performed by {@link FileUploader} and {@link FileDownloader}.
+ *
+ * Only aggregated values are kept; nothing is persisted.
+ */
+public class TransferMetrics {
+
+    private static final String TAG = TransferMetrics.class.getSimpleName();
+
+    private static final TransferMetrics sInstance = new TransferMetrics();
+
+    private long mUploadSplitDecisions = 0;
+    private long mLastSingleRequestLimit = 0;
+    private long mMinSingleRequestLimit = Long.MAX_VALUE;
+    private long mMaxSingleRequestLimit = 0;
+    private long mChunkedUploads = 0;
+
+    public static TransferMetrics getInstance() {
+        return sInstance;
+    }
+
+    private TransferMetrics() {
+    }
+
+    /**
+     * Records the choice between uploading a file in a single request or in chunks.
+     *
+     * Chunks are always sent with the fixed size
+     * {@link com.owncloud.android.lib.resources.files.chunks.ChunkedUploadRemoteFileOperation#CHUNK_SIZE};
+     * only the limit is recorded.
+     *
+     * @param singleRequestLimit    Largest file to upload in a single request, in bytes.
+     * @param chunked               'true' if the file is uploaded in chunks, 'false' if in a single request.
+     */
+    public synchronized void recordUploadSplit(long singleRequestLimit, boolean chunked) {
+        mUploadSplitDecisions++;
+        mLastSingleRequestLimit = singleRequestLimit;
+        mMinSingleRequestLimit = Math.min(mMinSingleRequestLimit, singleRequestLimit);
+        mMaxSingleRequestLimit = Math.max(mMaxSingleRequestLimit, singleRequestLimit);
+        if (chunked) {
+            mChunkedUploads++;
+        }
+        Log_OC.v(TAG, "Single request limit " + singleRequestLimit + (chunked ? ", chunked" : ", single request"));
+    }
+
+    public synchronized long getUploadSplitDecisions() {
+        return mUploadSplitDecisions;
+    }
+
+    public synchronized long getLastSingleRequestLimit() {
+        return mLastSingleRequestLimit;
+    }
+
+    public synchronized long getMinSingleRequestLimit() {
+        return mUploadSplitDecisions > 0 ? mMinSingleRequestLimit : 0;
+    }
+
+    public synchronized long getMaxSingleRequestLimit() {
+        return mMaxSingleRequestLimit;
+    }
+
+    public synchronized long getChunkedUploads() {
+        return mChunkedUploads;
+    }
+}
@@ -0,0 +1,243 @@
+/**
+ * ownCloud Android client application
+ * <p>
+ * Copyright (C) 2019 ownCloud GmbH.
+ * <p>
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 2,
+ * as published by the Free Software Foundation.
+ * <p>
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * <p>
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.owncloud.android.files.services;
+
+import android.os.Handler;
+import android.os.Looper;
+
+import com.owncloud.android.lib.common.network.OnDatatransferProgressListener;
+
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Carries the progress of transfers from the threads performing them to listeners in the main thread.
+ *
+ * Transfer threads post every progress report, which only overwrites the last state known for the
+ * transfer. Once per {@link #DELIVERY_INTERVAL_MS}, the states changed since the previous delivery are sent
+ * to the listeners in the main thread, so that they are updated at a bounded rate no matter how often
+ * progress is reported or how many transfers are running. Nothing is allocated per report after the
+ * first one of every transfer.
+ *
+ * Listeners may subscribe to a single transfer by its key, or to all of them. The first ones are weakly
+ * referenced.
+ */
+public class TransferProgressBus {
+
+    /**
+     * Min time between deliveries to listeners.
+     */
+    static final long DELIVERY_INTERVAL_MS = 250;
+
+    private final Handler mMainHandler = new Handler(Looper.getMainLooper());
+
+    private final Runnable mDeliveryRunnable = new Runnable() {
+        @Override
+        public void run() {
+            deliver();
+        }
+    };
+
+    private final Map<String, TransferProgress> mTransfers = new HashMap<>();
+    private final List<TransferProgress> mTransfersList = new ArrayList<>();   // for iteration without iterators
+    private final Map<String, List<WeakReference<OnDatatransferProgressListener>>> mSubscribers =
+            new HashMap<>();
+    private final List<OnDatatransferProgressListener> mGlobalListeners = new ArrayList<>();
+
+    private boolean mDeliveryScheduled = false;
+
+    /**
+     * Records progress of a transfer. May be called from any thread.
+     *
+     * @param key                       Key of the transfer.
+     * @param progressRate              Bytes transferred since the previous report.
+     * @param totalTransferredSoFar     Bytes transferred so far.
+     * @param totalToTransfer           Total of bytes to transfer.
+     * @param fileName                  Name or path of the transferred file.
+     */
+    public synchronized void post(String key, long progressRate, long totalTransferredSoFar,
+                                  long totalToTransfer, String fileName) {
+        TransferProgress progress = mTransfers.get(key);
+        if (progress == null) {
+            progress = new TransferProgress(key);
+            mTransfers.put(key, progress);
+            mTransfersList.add(progress);
+        }
+        progress.mUndeliveredBytes += progressRate;
+        progress.mTransferredSoFar = totalTransferredSoFar;
+        progress.mTotalToTransfer = totalToTransfer;
+        progress.mFileName = fileName;
+        progress.mChanged = true;
+
+        if (!mDeliveryScheduled) {
+            mDeliveryScheduled = true;
+            mMainHandler.postDelayed(mDeliveryRunnable, DELIVERY_INTERVAL_MS);
+        }
+    }
+
+    /**
+     * Forgets a transfer that finished; progress not delivered yet is dropped.
+     *
+     * When this method returns, no delivery for the transfer is in progress or will happen later.
+     *
+     * @param key       Key of the transfer.
+     */
+    public synchronized void finish(String key) {
+        TransferProgress progress = mTransfers.remove(key);
+        if (progress != null) {
+            mTransfersList.remove(progress);
+        }
+    }
+
+    /**
+     * Subscribes a listener to the progress of a single transfer, delivered in the main thread.
+     *
+     * The transfer does not need to exist yet. Subscribing the same listener several times for the same
+     * key results in a single subscription.
+     *
+     * @param key           Key of the transfer.
+     * @param listener      Listener to notify; weakly referenced.
+     */
+    public synchronized void subscribe(String key, OnDatatransferProgressListener listener) {
+        List<WeakReference<OnDatatransferProgressListener>> subscribers = mSubscribers.get(key);
+        if (subscribers == null) {
+            subscribers = new ArrayList<>();
+            mSubscribers.put(key, subscribers);
+        }
+        if (indexOf(subscribers, listener) < 0) {
+            subscribers.add(new WeakReference<>(listener));
+        }
+    }
+
+    /**
+     * Cancels a subscription done with {@link #subscribe(String, OnDatatransferProgressListener)}.
+     *
+     * @param key           Key of the transfer.
+     * @param listener      Subscribed listener.
+     */
+    public synchronized void unsubscribe(String key, OnDatatransferProgressListener listener) {
+        List<WeakReference<OnDatatransferProgressListener>> subscribers = mSubscribers.get(key);
+        if (subscribers == null) {
+            return;
+        }
+        int index = indexOf(subscribers, listener);
+        if (index >= 0) {
+            subscribers.remove(index);
+        }
+        if (subscribers.isEmpty()) {
+            mSubscribers.remove(key);
+        }
+    }
+
+    /**
+     * Cancels all the subscriptions to single transfers.
+     */
+    public synchronized void clearSubscriptions() {
+        mSubscribers.clear();
+    }
+
+    /**
+     * Adds a listener to the progress of every transfer, delivered in the main thread.
+     *
+     * @param listener      Listener to notify; strongly referenced until removed.
+     */
+    public synchronized void addGlobalListener(OnDatatransferProgressListener listener) {
+        if (!mGlobalListeners.contains(listener)) {
+            mGlobalListeners.add(listener);
+        }
+    }
+
+    public synchronized void removeGlobalListener(OnDatatransferProgressListener listener) {
+        mGlobalListeners.remove(listener);
+    }
+
+    /**
+     * Sends the progress changed since the last delivery. Runs in the main thread.
+     *
+     * The lock is held while listeners run, so that {@link #finish(String)} can't return in the middle
+     * of a delivery for the finished transfer; listeners must be quick.
+     */
+    private synchronized void deliver() {
+        mDeliveryScheduled = false;
+        for (int i = 0; i < mTransfersList.size(); i++) {
+            TransferProgress progress = mTransfersList.get(i);
+            if (!progress.mChanged) {
+                continue;
+            }
+            progress.mChanged = false;
+            long bytes = progress.mUndeliveredBytes;
+            progress.mUndeliveredBytes = 0;
+
+            for (int j = 0; j < mGlobalListeners.size(); j++) {
+                mGlobalListeners.get(j).onTransferProgress(
+                        bytes,
+                        progress.mTransferredSoFar,
+                        progress.mTotalToTransfer,
+                        progress.mFileName
+                );
+            }
+
+            List<WeakReference<OnDatatransferProgressListener>> subscribers = mSubscribers.get(progress.mKey);
+            if (subscribers != null) {
+                for (int j = subscribers.size() - 1; j >= 0; j--) {
+                    OnDatatransferProgressListener listener = subscribers.get(j).get();
+                    if (listener == null) {
+                        subscribers.remove(j);
+                    } else {
+                        listener.onTransferProgress(
+                                bytes,
+                                progress.mTransferredSoFar,
+                                progress.mTotalToTransfer,
+                                progress.mFileName
+                        );
+                    }
+                }
+            }
+        }
+    }
+
+    private static int indexOf(List<WeakReference<OnDatatransferProgressListener>> subscribers,
+                               OnDatatransferProgressListener listener) {
+        for (int i = 0; i < subscribers.size(); i++) {
+            if (subscribers.get(i).get() == listener) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Last progress known for a transfer; reused for all its reports.
+     */
+    private static class TransferProgress {
+        final String mKey;
+        long mUndeliveredBytes = 0;
+        long mTransferredSoFar = 0;
+        long mTotalToTransfer = 0;
+        String mFileName = null;
+        boolean mChanged = false;
+
+        TransferProgress(String key) {
+            mKey = key;
+        }
+    }
+}
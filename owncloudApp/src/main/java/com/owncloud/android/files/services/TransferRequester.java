@@ -42,6 +42,9 @@ import com.owncloud.android.utils.Extras;
 import com.owncloud.android.utils.PowerUtils;
 
 import java.net.SocketTimeoutException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 
 import static com.owncloud.android.operations.UploadFileOperation.CREATED_AS_CAMERA_UPLOAD_PICTURE;
 import static com.owncloud.android.operations.UploadFileOperation.CREATED_AS_CAMERA_UPLOAD_VIDEO;
@@ -55,8 +58,6 @@ import static com.owncloud.android.operations.UploadFileOperation.CREATED_AS_CAM
  * {@link FileDownloader}.
  *
  * Protects client objects from the verbosity of {@link android.content.Intent}s.
- *
- * TODO add methods for {@link FileDownloader}, right now it's just about uploads
  */
 
 public class TransferRequester {
@@ -64,7 +65,21 @@ public class TransferRequester {
     private static final String TAG = TransferRequester.class.getName();
 
     /**
-     * Call to upload several new files
+     * Max number of files requested to {@link FileUploader} in a single Intent; keeps the Intent below the
+     * size limit of Binder transactions. Every request is stored in the database in a single transaction.
+     */
+    private static final int MAX_FILES_PER_UPLOAD_REQUEST = 500;
+
+    /**
+     * Max number of file ids sent to a transfer service in a single Intent; 80 KB of ids.
+     */
+    private static final int MAX_FILE_IDS_PER_REQUEST = 10000;
+
+    /**
+     * Call to upload several new files.
+     *
+     * The files are enqueued in bulk: their uploads are stored in the database in a single transaction per
+     * block of {@link #MAX_FILES_PER_UPLOAD_REQUEST} files, and observers are notified once per block.
      */
     public void uploadNewFiles(
             Context context,
@@ -75,6 +90,36 @@ public class TransferRequester {
             Integer behaviour,
             Boolean createRemoteFolder,
             int createdBy
+    ) {
+        if (localPaths.length <= MAX_FILES_PER_UPLOAD_REQUEST) {
+            requestNewUploads(context, account, localPaths, remotePaths, mimeTypes, behaviour, createRemoteFolder,
+                    createdBy);
+            return;
+        }
+        for (int from = 0; from < localPaths.length; from += MAX_FILES_PER_UPLOAD_REQUEST) {
+            int to = Math.min(from + MAX_FILES_PER_UPLOAD_REQUEST, localPaths.length);
+            requestNewUploads(
+                    context,
+                    account,
+                    Arrays.copyOfRange(localPaths, from, to),
+                    Arrays.copyOfRange(remotePaths, from, to),
+                    (mimeTypes != null) ? Arrays.copyOfRange(mimeTypes, from, to) : null,
+                    behaviour,
+                    createRemoteFolder,
+                    createdBy
+            );
+        }
+    }
+
+    private void requestNewUploads(
+            Context context,
+            Account account,
+            String[] localPaths,
+            String[] remotePaths,
+            String[] mimeTypes,
+            Integer behaviour,
+            Boolean createRemoteFolder,
+            int createdBy
     ) {
         Intent intent = new Intent(context, FileUploader.class);
 
@@ -115,37 +160,112 @@ public class TransferRequester {
     }
 
     /**
-     * Call to update multiple files already uploaded
+     * Call to update multiple files already uploaded, known their ids in the database.
+     *
+     * Only ids travel in the Intents; {@link FileUploader} reads the files from the database, so any change
+     * in the {@link OCFile} objects that was not saved before calling this method is not considered.
+     *
+     * @param ifUnchangedInServer   'true' to upload the files only if their etag in the server is still the
+     *                              one stored in the database.
      */
-    private void uploadsUpdate(Context context, Account account, OCFile[] existingFiles, Integer behaviour,
-                               Boolean forceOverwrite, boolean requestedFromAvOfflineJobService) {
-        Intent intent = new Intent(context, FileUploader.class);
-
-        intent.putExtra(FileUploader.KEY_ACCOUNT, account);
-        intent.putExtra(FileUploader.KEY_FILE, existingFiles);
-        intent.putExtra(FileUploader.KEY_LOCAL_BEHAVIOUR, behaviour);
-        intent.putExtra(FileUploader.KEY_FORCE_OVERWRITE, forceOverwrite);
-
-        // Since in Android O and above the apps in background are not allowed to start background
-        // services and available offline feature may try to do it, this is the way to proceed
-        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O && requestedFromAvOfflineJobService) {
-            intent.putExtra(FileUploader.KEY_IS_AVAILABLE_OFFLINE_FILE, true);
-            context.startForegroundService(intent);
-        } else {
-            context.startService(intent);
+    public void uploadsUpdate(Context context, Account account, long[] existingFileIds, Integer behaviour,
+                              Boolean forceOverwrite, boolean ifUnchangedInServer,
+                              boolean requestedFromAvOfflineJobService) {
+        List<Intent> intents = buildUploadsUpdateIntents(context, account, existingFileIds, behaviour,
+                forceOverwrite, ifUnchangedInServer, requestedFromAvOfflineJobService);
+        for (Intent intent : intents) {
+            // Since in Android O and above the apps in background are not allowed to start background
+            // services and available offline feature may try to do it, this is the way to proceed
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O && requestedFromAvOfflineJobService) {
+                context.startForegroundService(intent);
+            } else {
+                context.startService(intent);
+            }
         }
     }
 
     /**
-     * Call to update a dingle file already uploaded
+     * Call to update a single file already uploaded; the file is read from the database by {@link FileUploader}.
      */
     public void uploadUpdate(Context context, Account account, OCFile existingFile, Integer behaviour,
                              Boolean forceOverwrite, boolean requestedFromAvOfflineJobService) {
 
-        uploadsUpdate(context, account, new OCFile[]{existingFile}, behaviour, forceOverwrite,
+        uploadsUpdate(context, account, new long[]{existingFile.getFileId()}, behaviour, forceOverwrite, false,
                 requestedFromAvOfflineJobService);
     }
 
+    /**
+     * Builds the Intents to request to {@link FileUploader} the updates of the given files, with at most
+     * {@link #MAX_FILE_IDS_PER_REQUEST} ids each.
+     */
+    List<Intent> buildUploadsUpdateIntents(Context context, Account account, long[] existingFileIds,
+                                           Integer behaviour, Boolean forceOverwrite, boolean ifUnchangedInServer,
+                                           boolean requestedFromAvOfflineJobService) {
+        List<Intent> intents = new ArrayList<>();
+        for (int from = 0; from < existingFileIds.length; from += MAX_FILE_IDS_PER_REQUEST) {
+            int to = Math.min(from + MAX_FILE_IDS_PER_REQUEST, existingFileIds.length);
+            Intent intent = new Intent(context, FileUploader.class);
+
+            intent.putExtra(FileUploader.KEY_ACCOUNT, account);
+            intent.putExtra(FileUploader.KEY_FILE_IDS, Arrays.copyOfRange(existingFileIds, from, to));
+            intent.putExtra(FileUploader.KEY_LOCAL_BEHAVIOUR, behaviour);
+            intent.putExtra(FileUploader.KEY_FORCE_OVERWRITE, forceOverwrite);
+            intent.putExtra(FileUploader.KEY_IF_UNCHANGED_IN_SERVER, ifUnchangedInServer);
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O && requestedFromAvOfflineJobService) {
+                intent.putExtra(FileUploader.KEY_IS_AVAILABLE_OFFLINE_FILE, true);
+            }
+            intents.add(intent);
+        }
+        return intents;
+    }
+
+    /**
+     * Call to download multiple files, known their ids in the database.
+     *
+     * Only ids travel in the Intents; {@link FileDownloader} reads the files from the database.
+     */
+    public void downloadFiles(Context context, Account account, long[] fileIds,
+                              boolean requestedFromAvOfflineJobService) {
+        List<Intent> intents = buildDownloadIntents(context, account, fileIds, requestedFromAvOfflineJobService);
+        for (Intent intent : intents) {
+            // Since in Android O and above the apps in background are not allowed to start background
+            // services and available offline feature may try to do it, this is the way to proceed
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O && requestedFromAvOfflineJobService) {
+                context.startForegroundService(intent);
+            } else {
+                context.startService(intent);
+            }
+        }
+    }
+
+    /**
+     * Call to download a single file; the file is read from the database by {@link FileDownloader}.
+     */
+    public void downloadFile(Context context, Account account, OCFile file) {
+        downloadFiles(context, account, new long[]{file.getFileId()}, false);
+    }
+
+    /**
+     * Builds the Intents to request to {@link FileDownloader} the downloads of the given files, with at most
+     * {@link #MAX_FILE_IDS_PER_REQUEST} ids each.
+     */
+    List<Intent> buildDownloadIntents(Context context, Account account, long[] fileIds,
+                                      boolean requestedFromAvOfflineJobService) {
+        List<Intent> intents = new ArrayList<>();
+        for (int from = 0; from < fileIds.length; from += MAX_FILE_IDS_PER_REQUEST) {
+            int to = Math.min(from + MAX_FILE_IDS_PER_REQUEST, fileIds.length);
+            Intent intent = new Intent(context, FileDownloader.class);
+
+            intent.putExtra(FileDownloader.KEY_ACCOUNT, account);
+            intent.putExtra(FileDownloader.KEY_FILE_IDS, Arrays.copyOfRange(fileIds, from, to));
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O && requestedFromAvOfflineJobService) {
+                intent.putExtra(FileDownloader.KEY_IS_AVAILABLE_OFFLINE_FILE, true);
+            }
+            intents.add(intent);
+        }
+        return intents;
+    }
+
     /**
      * Call to retry upload identified by remotePath
      */
@@ -24,14 +24,11 @@ package com.owncloud.android.operations;
 
 import android.accounts.Account;
 import android.content.Context;
-import android.content.Intent;
-import android.os.Build;
 
 import com.owncloud.android.MainApp;
 import com.owncloud.android.datamodel.OCFile;
-import com.owncloud.android.files.services.FileDownloader;
 import com.owncloud.android.files.services.FileUploader;
-import com.owncloud.android.files.services.TransferRequester;
+import com.owncloud.android.files.services.TransferBatch;
 import com.owncloud.android.lib.common.OwnCloudClient;
 import com.owncloud.android.lib.common.operations.RemoteOperationResult;
 import com.owncloud.android.lib.common.operations.RemoteOperationResult.ResultCode;
@@ -58,6 +55,7 @@ public class SynchronizeFileOperation extends SyncOperation {
 
     private boolean mTransferWasRequested = false;
     private boolean mRequestedFromAvOfflineJobService;
+    private TransferBatch mTransferBatch = null;
 
     /**
      * Constructor for "full synchronization mode".
@@ -190,17 +188,15 @@ public class SynchronizeFileOperation extends SyncOperation {
                     getStorageManager().saveConflict(mLocalFile, mServerFile.getEtag());
 
                 } else if (localChanged) {
-                    if (mPushOnly) {
-                        // prevent accidental override of unnoticed change in server;
-                        // dirty trick, more refactoring is needed, but not today;
-                        // works due to {@link UploadFileOperation#L364,L367}
-                        mLocalFile.setEtagInConflict(mLocalFile.getEtag());
-                    }
-                    requestForUpload(mLocalFile);
+                    // if push only, prevent accidental override of unnoticed change in server;
+                    // FileUploader sends the stored etag to be matched in the server
+                    requestForUpload(mLocalFile, mPushOnly);
                     result = new RemoteOperationResult<>(ResultCode.OK);
 
                 } else if (serverChanged) {
                     mLocalFile.setRemoteId(mServerFile.getRemoteId());
+                    // saved; FileDownloader reads the file from the database
+                    getStorageManager().saveFile(mLocalFile);
                     requestForDownload(mLocalFile);
                     // mLocalFile, not mServerFile; we want to keep the value of
                     // available-offline property
@@ -229,16 +225,25 @@ public class SynchronizeFileOperation extends SyncOperation {
     }
 
     /**
-     * Requests for an upload to the FileUploader service
+     * Collects the transfer needed, if any, in a batch, instead of requesting it when the operation is executed.
+     * The batch is requested by the caller, after running all the operations sharing it.
      *
-     * @param file OCFile object representing the file to upload
+     * @param transferBatch     Batch of transfers; uploads in it must move the local file and force overwrite.
      */
-    private void requestForUpload(OCFile file) {
-        TransferRequester requester = new TransferRequester();
-        requester.uploadUpdate(mContext, mAccount, file, FileUploader.LOCAL_BEHAVIOUR_MOVE, true,
-                mRequestedFromAvOfflineJobService);
+    public void setTransferBatch(TransferBatch transferBatch) {
+        mTransferBatch = transferBatch;
+    }
 
-        mTransferWasRequested = true;
+    /**
+     * Requests for an upload to the FileUploader service
+     *
+     * @param file                  OCFile object representing the file to upload
+     * @param ifUnchangedInServer   'true' to upload only if the etag of the file in the server is still the stored one
+     */
+    private void requestForUpload(OCFile file, boolean ifUnchangedInServer) {
+        TransferBatch batch = getTransferBatch();
+        batch.addUpload(file, ifUnchangedInServer);
+        requestIfNotBatched(batch);
     }
 
     /**
@@ -247,19 +252,21 @@ public class SynchronizeFileOperation extends SyncOperation {
      * @param file OCFile object representing the file to download
      */
     private void requestForDownload(OCFile file) {
-        Intent intent = new Intent(mContext, FileDownloader.class);
-        intent.putExtra(FileDownloader.KEY_ACCOUNT, mAccount);
-        intent.putExtra(FileDownloader.KEY_FILE, file);
-
-        // Since in Android O and above the apps in background are not allowed to start background
-        // services and available offline feature may try to do it, this is the way to proceed
-        if (mRequestedFromAvOfflineJobService && Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
-            intent.putExtra(FileDownloader.KEY_IS_AVAILABLE_OFFLINE_FILE, true);
-            mContext.startForegroundService(intent);
-        } else {
-            mContext.startService(intent);
-        }
+        TransferBatch batch = getTransferBatch();
+        batch.addDownload(file);
+        requestIfNotBatched(batch);
+    }
 
+    private TransferBatch getTransferBatch() {
+        return (mTransferBatch != null) ?
+                mTransferBatch :
+                new TransferBatch(FileUploader.LOCAL_BEHAVIOUR_MOVE, true);
+    }
+
+    private void requestIfNotBatched(TransferBatch batch) {
+        if (batch != mTransferBatch) {
+            batch.request(mContext, mAccount, mRequestedFromAvOfflineJobService);
+        }
         mTransferWasRequested = true;
     }
 
@@ -30,6 +30,8 @@ import com.owncloud.android.datamodel.FileDataStorageManager;
 import com.owncloud.android.datamodel.OCFile;
 import com.owncloud.android.datamodel.OCUpload;
 import com.owncloud.android.datamodel.UploadsStorageManager;
+import com.owncloud.android.files.services.FileUploader;
+import com.owncloud.android.files.services.TransferBatch;
 import com.owncloud.android.lib.common.OwnCloudClient;
 import com.owncloud.android.lib.common.operations.OperationCancelledException;
 import com.owncloud.android.lib.common.operations.RemoteOperationResult;
@@ -477,25 +479,33 @@ public class SynchronizeFolderOperation extends SyncOperation<ArrayList<RemoteFi
 
         Log_OC.v(TAG, "Starting content synchronization... ");
         RemoteOperationResult contentsResult;
-        for (SyncOperation op : mFilesToSyncContents) {
-            if (mCancellationRequested.get()) {
-                throw new OperationCancelledException();
-            }
-            contentsResult = op.execute(getStorageManager(), mContext);
-            if (!contentsResult.isSuccess()) {
-                if (contentsResult.getCode() == ResultCode.SYNC_CONFLICT) {
-                    mConflictsFound++;
-                } else {
-                    mFailsInFileSyncsFound++;
-                    if (contentsResult.getException() != null) {
-                        Log_OC.e(TAG, "Error while synchronizing file : "   // Vs " av-off file"
-                                + contentsResult.getLogMessage(), contentsResult.getException());
+        // transfers of all the files are requested at once, by id, instead of one Intent per file
+        TransferBatch transfers = new TransferBatch(FileUploader.LOCAL_BEHAVIOUR_MOVE, true);
+        try {
+            for (SynchronizeFileOperation op : mFilesToSyncContents) {
+                if (mCancellationRequested.get()) {
+                    throw new OperationCancelledException();
+                }
+                op.setTransferBatch(transfers);
+                contentsResult = op.execute(getStorageManager(), mContext);
+                if (!contentsResult.isSuccess()) {
+                    if (contentsResult.getCode() == ResultCode.SYNC_CONFLICT) {
+                        mConflictsFound++;
                     } else {
-                        Log_OC.e(TAG, "Error while synchronizing file : "
-                                + contentsResult.getLogMessage());
+                        mFailsInFileSyncsFound++;
+                        if (contentsResult.getException() != null) {
+                            Log_OC.e(TAG, "Error while synchronizing file : "   // Vs " av-off file"
+                                    + contentsResult.getLogMessage(), contentsResult.getException());
+                        } else {
+                            Log_OC.e(TAG, "Error while synchronizing file : "
+                                    + contentsResult.getLogMessage());
+                        }
                     }
-                }
-            }   // won't let these fails break the synchronization process
+                }   // won't let these fails break the synchronization process
+            }
+        } finally {
+            // files already checked keep their transfers, even if cancelled
+            transfers.request(mContext, mAccount, false);
         }
         for (Intent intent : mFoldersToSyncContents) {
             if (mCancellationRequested.get()) {
@@ -27,6 +27,7 @@ import android.net.Uri;
 import com.owncloud.android.datamodel.OCFile;
 import com.owncloud.android.datamodel.OCUpload;
 import com.owncloud.android.db.PreferenceManager;
+import com.owncloud.android.files.UploadSource;
 import com.owncloud.android.files.services.FileUploader;
 import com.owncloud.android.lib.common.OwnCloudClient;
 import com.owncloud.android.lib.common.http.HttpConstants;
@@ -42,17 +43,16 @@ import com.owncloud.android.lib.resources.files.RemoteFile;
 import com.owncloud.android.lib.resources.files.UploadRemoteFileOperation;
 import com.owncloud.android.operations.common.SyncOperation;
 import com.owncloud.android.utils.ConnectivityUtils;
+import com.owncloud.android.utils.FileCopyUtils;
 import com.owncloud.android.utils.FileStorageUtils;
 import com.owncloud.android.utils.MimetypeIconUtil;
 import com.owncloud.android.utils.UriUtils;
 
 import java.io.File;
 import java.io.FileInputStream;
-import java.io.FileOutputStream;
+import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.OutputStream;
-import java.nio.channels.FileChannel;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.Set;
@@ -83,7 +83,10 @@ public class UploadFileOperation extends SyncOperation {
         newFile.setLastSyncDateForData(0);
 
         // size
-        if (localPath != null && localPath.length() > 0) {
+        if (UploadSource.isContentUri(localPath)) {
+            // opening the provider may block; size is set when the upload runs, out of the main thread
+
+        } else if (localPath != null && localPath.length() > 0) {
             File localFile = new File(localPath);
             newFile.setFileLength(localFile.length());
             newFile.setLastSyncDateForData(localFile.lastModified());
@@ -166,6 +169,10 @@ public class UploadFileOperation extends SyncOperation {
         mForceOverwrite = forceOverwrite;
         mLocalBehaviour = localBehaviour;
         mOriginalStoragePath = mFile.getStoragePath();
+        if (UploadSource.isContentUri(mOriginalStoragePath) && mLocalBehaviour == FileUploader.LOCAL_BEHAVIOUR_MOVE) {
+            // contents shared by other apps can't be moved into the OC folder
+            mLocalBehaviour = FileUploader.LOCAL_BEHAVIOUR_COPY;
+        }
         mContext = context;
         mOCUploadId = upload.getUploadId();
         mCreatedBy = upload.getCreatedBy();
@@ -280,6 +287,7 @@ public class UploadFileOperation extends SyncOperation {
         mUploadStarted.set(true);
         RemoteOperationResult result = null;
         File temporalFile = null, originalFile = new File(mOriginalStoragePath), expectedFile = null;
+        UploadSource uploadSource = null;
 
         try {
 
@@ -290,10 +298,19 @@ public class UploadFileOperation extends SyncOperation {
             }
 
             /// check if the file continues existing before schedule the operation
-            if (!originalFile.exists()) {
+            try {
+                uploadSource = UploadSource.open(mContext, mOriginalStoragePath);
+            } catch (FileNotFoundException | SecurityException e) {
+                Log_OC.d(TAG, mOriginalStoragePath + " can't be opened anymore");
+                return new RemoteOperationResult(ResultCode.LOCAL_FILE_NOT_FOUND);
+            }
+            if (!uploadSource.exists()) {
                 Log_OC.d(TAG, mOriginalStoragePath.toString() + " not exists anymore");
                 return new RemoteOperationResult(ResultCode.LOCAL_FILE_NOT_FOUND);
             }
+            if (mFile.getFileLength() <= 0) {
+                mFile.setFileLength(Math.max(uploadSource.length(), 0));
+            }
 
             /// check the existence of the parent folder for the file to upload
             String remoteParentPath = new File(getRemotePath()).getParent();
@@ -337,10 +354,28 @@ public class UploadFileOperation extends SyncOperation {
                 mFile.setStoragePath(temporalPath);
                 temporalFile = new File(temporalPath);
 
-                result = copy(originalFile, temporalFile);
+                result = copy(uploadSource, originalFile, temporalFile);
                 if (result != null) {
                     return result;
                 }
+
+            } else if (UploadSource.isContentUri(mOriginalStoragePath)) {
+                String readablePath = uploadSource.getReadablePath();
+                if (readablePath != null) {
+                    /// read the shared content straight from the descriptor opened to its provider
+                    mFile.setStoragePath(readablePath);
+
+                } else {
+                    /// the provider can't be read with positional reads; copy as fallback
+                    String temporalPath = FileStorageUtils.getTemporalPath(mAccount.name) + mFile.getRemotePath();
+                    mFile.setStoragePath(temporalPath);
+                    temporalFile = new File(temporalPath);
+
+                    result = copy(uploadSource, originalFile, temporalFile);
+                    if (result != null) {
+                        return result;
+                    }
+                }
             }
 
             if (mCancellationRequested.get()) {
@@ -348,7 +383,11 @@ public class UploadFileOperation extends SyncOperation {
             }
 
             // Get the last modification date of the file from the file system
-            Long timeStampLong = originalFile.lastModified() / 1000;
+            long lastModified = uploadSource.lastModified();
+            if (lastModified <= 0) {
+                lastModified = System.currentTimeMillis();
+            }
+            Long timeStampLong = lastModified / 1000;
             String timeStamp = timeStampLong.toString();
 
             // Perform the upload
@@ -362,9 +401,16 @@ public class UploadFileOperation extends SyncOperation {
             if (temporalFile != null && !originalFile.equals(temporalFile)) {
                 temporalFile.delete();
             }
+            if (uploadSource != null) {
+                uploadSource.close();
+            }
             if (result == null) {
                 result = new RemoteOperationResult(ResultCode.UNKNOWN_ERROR);
             }
+            if (!result.isSuccess() && UploadSource.isContentUri(mOriginalStoragePath)) {
+                // paths to the closed source or its temporal copy are not valid anymore
+                mFile.setStoragePath(mOriginalStoragePath);
+            }
             if (result.isSuccess()) {
                 Log_OC.i(TAG, "Upload of " + mOriginalStoragePath + " to " + mRemotePath + ": " +
                         result.getLogMessage());
@@ -387,9 +433,14 @@ public class UploadFileOperation extends SyncOperation {
 
         if (result.isSuccess()) {
             saveUploadedFile(client);
+            UploadSource.releasePersistedPermission(mContext, mOriginalStoragePath);
 
         } else if (result.getCode() == ResultCode.SYNC_CONFLICT) {
             getStorageManager().saveConflict(mFile, mFile.getEtagInConflict());
+
+        } else if (result.getCode() == ResultCode.LOCAL_FILE_NOT_FOUND) {
+            // no retry can read it anymore
+            UploadSource.releasePersistedPermission(mContext, mOriginalStoragePath);
         }
 
         return result;
@@ -644,17 +695,18 @@ public class UploadFileOperation extends SyncOperation {
      * TODO rewrite with homogeneous fail handling, remove dependency on {@link RemoteOperationResult},
      * TODO     use Exceptions instead
      *
+     * @param   source          Open source of the upload.
      * @param   sourceFile      Source file to copy.
      * @param   targetFile      Target location to copy the file.
      * @return  {@link RemoteOperationResult}
      * @throws IOException
      */
-    private RemoteOperationResult copy(File sourceFile, File targetFile) throws IOException {
+    private RemoteOperationResult copy(UploadSource source, File sourceFile, File targetFile) throws IOException {
         Log_OC.d(TAG, "Copying local file");
 
         RemoteOperationResult result = null;
 
-        if (FileStorageUtils.getUsableSpace(mAccount.name) < sourceFile.length()) {
+        if (FileStorageUtils.getUsableSpace(mAccount.name) < source.length()) {
             result = new RemoteOperationResult(ResultCode.LOCAL_STORAGE_FULL);
             return result;  // error condition when the file should be copied
 
@@ -666,16 +718,8 @@ public class UploadFileOperation extends SyncOperation {
                 throw new IOException(
                         "Unexpected error: parent directory could not be created");
             }
-            Log_OC.d(TAG, "Creating temporal file");
-            targetFile.createNewFile();
-            if (!targetFile.isFile()) {
-                throw new IOException(
-                        "Unexpected error: target file could not be created");
-            }
-
             Log_OC.d(TAG, "Copying file contents");
             InputStream in = null;
-            OutputStream out = null;
 
             try {
                 if (!mOriginalStoragePath.equals(targetFile.getAbsolutePath())) {
@@ -686,22 +730,13 @@ public class UploadFileOperation extends SyncOperation {
                     } else {
                         in = new FileInputStream(sourceFile);
                     }
-                    out = new FileOutputStream(targetFile);
-                    int nRead;
-                    byte[] buf = new byte[4096];
-                    while (!mCancellationRequested.get() &&
-                            (nRead = in.read(buf)) > -1) {
-                        out.write(buf, 0, nRead);
+                    if (!FileCopyUtils.copy(in, source.length(), targetFile, null, mCancellationRequested)) {
+                        result = new RemoteOperationResult(new OperationCancelledException());
+                        return result;
                     }
-                    out.flush();
 
                 } // else: weird but possible situation, nothing to copy
 
-                if (mCancellationRequested.get()) {
-                    result = new RemoteOperationResult(new OperationCancelledException());
-                    return result;
-                }
-
             } catch (Exception e) {
                 result = new RemoteOperationResult(ResultCode.LOCAL_STORAGE_NOT_COPIED);
                 return result;
@@ -715,14 +750,6 @@ public class UploadFileOperation extends SyncOperation {
                     Log_OC.d(TAG, "Weird exception while closing input stream for " +
                             mOriginalStoragePath + " (ignoring)", e);
                 }
-                try {
-                    if (out != null) {
-                        out.close();
-                    }
-                } catch (Exception e) {
-                    Log_OC.d(TAG, "Weird exception while closing output stream for " +
-                            targetFile.getAbsolutePath() + " (ignoring)", e);
-                }
             }
         }
         return result;
@@ -732,8 +759,6 @@ public class UploadFileOperation extends SyncOperation {
      * TODO rewrite with homogeneous fail handling, remove dependency on {@link RemoteOperationResult},
      * TODO     use Exceptions instead
      *
-     * TODO refactor both this and 'copy' in a single method
-     *
      * @param   sourceFile      Source file to move.
      * @param   targetFile      Target location to move the file.
      * @return  {@link RemoteOperationResult}
@@ -741,36 +766,12 @@ public class UploadFileOperation extends SyncOperation {
      */
     private void move(File sourceFile, File targetFile) throws IOException {
 
-        if (!targetFile.equals(sourceFile)) {
-            File expectedFolder = targetFile.getParentFile();
-            expectedFolder.mkdirs();
-
-            if (expectedFolder.isDirectory()) {
-                if (!sourceFile.renameTo(targetFile)) {
-                    // try to copy and then delete
-                    targetFile.createNewFile();
-                    FileChannel inChannel = new FileInputStream(sourceFile).getChannel();
-                    FileChannel outChannel = new FileOutputStream(targetFile).getChannel();
-                    try {
-                        inChannel.transferTo(0, inChannel.size(), outChannel);
-                        sourceFile.delete();
-                    } catch (Exception e) {
-                        mFile.setStoragePath(""); // forget the local file
-                        // by now, treat this as a success; the file was uploaded
-                        // the best option could be show a warning message
-                    } finally {
-                        if (inChannel != null) {
-                            inChannel.close();
-                        }
-                        if (outChannel != null) {
-                            outChannel.close();
-                        }
-                    }
-                }
-
-            } else {
-                mFile.setStoragePath("");
-            }
+        try {
+            FileCopyUtils.move(sourceFile, targetFile, null, null);
+        } catch (IOException e) {
+            mFile.setStoragePath(""); // forget the local file
+            // by now, treat this as a success; the file was uploaded
+            // the best option could be show a warning message
         }
     }
 
@@ -29,15 +29,20 @@ import android.content.res.AssetFileDescriptor
 import android.database.Cursor
 import android.graphics.Point
 import android.net.Uri
+import android.os.Build
 import android.os.CancellationSignal
 import android.os.Handler
+import android.os.HandlerThread
 import android.os.ParcelFileDescriptor
+import android.os.storage.StorageManager
 import android.provider.DocumentsContract
 import android.provider.DocumentsProvider
 import com.owncloud.android.R
 import com.owncloud.android.authentication.AccountUtils
 import com.owncloud.android.datamodel.FileDataStorageManager
 import com.owncloud.android.datamodel.OCFile
+import com.owncloud.android.datamodel.ThumbnailsCacheManager
+import com.owncloud.android.files.services.DownloadFuture
 import com.owncloud.android.files.services.FileDownloader
 import com.owncloud.android.lib.common.operations.RemoteOperationResult
 import com.owncloud.android.lib.common.utils.Log_OC
@@ -54,7 +59,6 @@ import java.io.File
 import java.io.FileNotFoundException
 import java.io.IOException
 import java.util.HashMap
-import java.util.Vector
 
 class DocumentsStorageProvider : DocumentsProvider() {
     /**
@@ -75,21 +79,42 @@ class DocumentsStorageProvider : DocumentsProvider() {
             ?: throw FileNotFoundException("Failed to open document with id $documentId and mode $mode")
 
         if (!file.isDown) {
+            // get the future before requesting the download, so that its end can't be missed
+            val download = FileDownloader.getDownloadFuture(currentStorageManager!!.account, file)
+
             val i = Intent(context, FileDownloader::class.java).apply {
                 putExtra(FileDownloader.KEY_ACCOUNT, currentStorageManager!!.account)
-                putExtra(FileDownloader.KEY_FILE, file)
+                putExtra(FileDownloader.KEY_FILE_IDS, longArrayOf(file.fileId))
             }
 
-            context?.startService(i)
+            val requested = try {
+                context?.startService(i) != null
+            } catch (e: IllegalStateException) {
+                Log_OC.e(TAG, "Download of $documentId could not be requested", e)
+                false
+            } catch (e: SecurityException) {
+                Log_OC.e(TAG, "Download of $documentId could not be requested", e)
+                false
+            }
+            if (!requested) {
+                FileDownloader.failDownloadFuture(currentStorageManager!!.account, file)
+                throw FileNotFoundException("Failed to download document with id $documentId")
+            }
 
-            do {
-                if (!waitOrGetCancelled(signal)) {
-                    return null
-                }
-                file = currentStorageManager?.getFileById(docId)
-                    ?: throw FileNotFoundException("Failed to open document with id $documentId and mode $mode")
+            if (!mode.contains("w") && Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
+                // let the caller read while the file downloads
+                return openWhileDownloading(file, download)
+            }
+
+            if (!waitOrGetCancelled(download, signal)) {
+                return null
+            }
+            file = currentStorageManager?.getFileById(docId)
+                ?: throw FileNotFoundException("Failed to open document with id $documentId and mode $mode")
 
-            } while (!file.isDown)
+            if (!file.isDown) {
+                throw FileNotFoundException("Failed to download document with id $documentId")
+            }
         }
 
         val accessMode: Int = ParcelFileDescriptor.parseMode(mode)
@@ -103,7 +128,7 @@ class DocumentsStorageProvider : DocumentsProvider() {
             return ParcelFileDescriptor.open(File(file.storagePath), accessMode, handler) {
                 // Update the file with the cloud server. The client is done writing.
                 Log_OC.d(TAG, "A file with id $documentId has been closed! Time to synchronize it with server.")
-                Thread {
+                syncScheduler.requestFileSync(docId) {
                     SynchronizeFileOperation(
                         file,
                         null,
@@ -117,7 +142,7 @@ class DocumentsStorageProvider : DocumentsProvider() {
                             NotificationUtils.notifyConflict(file, currentStorageManager?.account, context)
                         }
                     }
-                }.apply { start() }
+                }
             }
         } catch (e: IOException) {
             throw FileNotFoundException(
@@ -196,15 +221,16 @@ class DocumentsStorageProvider : DocumentsProvider() {
         val docId = documentId.toLong()
         updateCurrentStorageManagerIfNeeded(docId)
 
-        val file = currentStorageManager?.getFileById(docId)
+        val storageManager = currentStorageManager
+            ?: throw FileNotFoundException("Failed to open thumbnail of document with id $documentId")
+        val file = storageManager.getFileById(docId)
+            ?: throw FileNotFoundException("Failed to open thumbnail of document with id $documentId")
 
-        val realFile = File(file?.storagePath)
+        val size = if (sizeHint != null) Math.max(sizeHint.x, sizeHint.y) else 0
+        val thumbnail = ThumbnailsCacheManager.openThumbnail(file, storageManager.account, storageManager, size)
+            ?: throw FileNotFoundException("No thumbnail available for document with id $documentId")
 
-        return AssetFileDescriptor(
-            ParcelFileDescriptor.open(realFile, ParcelFileDescriptor.MODE_READ_ONLY),
-            0,
-            AssetFileDescriptor.UNKNOWN_LENGTH
-        )
+        return AssetFileDescriptor(thumbnail, 0, AssetFileDescriptor.UNKNOWN_LENGTH)
     }
 
     override fun querySearchDocuments(rootId: String, query: String, projection: Array<String>?): Cursor {
@@ -212,10 +238,8 @@ class DocumentsStorageProvider : DocumentsProvider() {
 
         val result = FileCursor(projection)
 
-        val root = currentStorageManager?.getFileByPath(OCFile.ROOT_PATH) ?: return result
-
-        for (f in findFiles(root, query)) {
-            result.addFile(f)
+        currentStorageManager?.searchFilesByName(query, 0, SEARCH_RESULTS_LIMIT)?.forEach { file ->
+            result.addFile(file)
         }
 
         return result
@@ -340,35 +364,52 @@ class DocumentsStorageProvider : DocumentsProvider() {
             context
         ).apply { syncVersionAndProfileEnabled(false) }
 
-        val thread = Thread {
+        syncScheduler.requestFolderRefresh(folderId) {
             refreshFolderOperation.execute(currentStorageManager, context)
             notifyChangeInFolder(parentDocumentId)
         }
-        thread.start()
     }
 
-    private fun waitOrGetCancelled(cancellationSignal: CancellationSignal?): Boolean {
+    /**
+     * Opens a read-only descriptor served from the download in progress, or from the server for the regions
+     * not downloaded yet.
+     */
+    @TargetApi(26)
+    private fun openWhileDownloading(file: OCFile, download: DownloadFuture): ParcelFileDescriptor {
+        val storageManager = context?.getSystemService(StorageManager::class.java)
+            ?: throw FileNotFoundException("Failed to open document with id ${file.fileId}")
+        val thread = HandlerThread("Document ${file.fileId}").apply { start() }
         try {
-            Thread.sleep(1000)
-        } catch (e: InterruptedException) {
-            return false
+            return storageManager.openProxyFileDescriptor(
+                ParcelFileDescriptor.MODE_READ_ONLY,
+                DownloadingDocumentCallback(context, currentStorageManager!!.account, file, download, thread),
+                Handler(thread.looper)
+            )
+        } catch (e: IOException) {
+            thread.quitSafely()
+            throw FileNotFoundException("Failed to open document with id ${file.fileId}")
         }
-
-        return cancellationSignal == null || !cancellationSignal.isCanceled
     }
 
-    private fun findFiles(root: OCFile, query: String): Vector<OCFile> {
-        val result = Vector<OCFile>()
-
-        val folderContent = currentStorageManager?.getFolderContent(root, false) ?: return result
-
-        folderContent.forEach {
-            if (it.fileName.contains(query)) {
-                result.add(it)
-                if (it.isFolder) result.addAll(findFiles(it, query))
-            }
+    /**
+     * Blocks until the download finishes or the caller cancels the request.
+     *
+     * @return 'True' if the download finished, 'false' if the request was cancelled
+     */
+    private fun waitOrGetCancelled(download: DownloadFuture, cancellationSignal: CancellationSignal?): Boolean {
+        val waitingThread = Thread.currentThread()
+        // called right away if already cancelled
+        cancellationSignal?.setOnCancelListener { waitingThread.interrupt() }
+        return try {
+            download.await()
+            cancellationSignal == null || !cancellationSignal.isCanceled
+        } catch (e: InterruptedException) {
+            false
+        } finally {
+            // waits for a running cancel listener, then drops an interruption that arrived too late
+            cancellationSignal?.setOnCancelListener(null)
+            Thread.interrupted()
         }
-        return result
     }
 
     /**
@@ -395,6 +436,13 @@ class DocumentsStorageProvider : DocumentsProvider() {
 
     companion object {
         private val TAG = DocumentsStorageProvider::class.java.toString()
+
+        /**
+         * Max number of results returned by a search; the documents UI shows them in a single list.
+         */
+        private const val SEARCH_RESULTS_LIMIT = 200
         private var rootIdToStorageManager: MutableMap<Long, FileDataStorageManager> = HashMap()
+
+        private val syncScheduler = DocumentsSyncScheduler()
     }
 }
\ No newline at end of file
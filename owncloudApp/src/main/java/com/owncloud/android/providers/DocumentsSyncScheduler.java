@@ -0,0 +1,177 @@
+/**
+ * ownCloud Android client application
+ * <p>
+ * Copyright (C) 2019 ownCloud GmbH.
+ * <p>
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 2,
+ * as published by the Free Software Foundation.
+ * <p>
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * <p>
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.owncloud.android.providers;
+
+import com.owncloud.android.lib.common.utils.Log_OC;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs the synchronizations requested by {@link DocumentsStorageProvider} in a bounded pool of threads.
+ *
+ * There is at most one synchronization per document pending or running at a time:
+ * - uploads of documents written by other apps are delayed until writes stop for
+ *   {@link #WRITE_DEBOUNCE_MS}, so that a burst of saves results in a single upload; a save while the
+ *   upload is running makes it run once more when it finishes.
+ * - refreshes of folders are ignored while a refresh of the same folder is pending or running.
+ */
+class DocumentsSyncScheduler {
+
+    private static final String TAG = DocumentsSyncScheduler.class.getSimpleName();
+
+    private static final int MAX_THREADS = 2;
+
+    private static final long KEEP_ALIVE_MS = 30000;
+
+    /**
+     * Time without new writes before uploading a document.
+     */
+    static final long WRITE_DEBOUNCE_MS = 2000;
+
+    private static final String FILE_KEY_PREFIX = "file:";
+    private static final String FOLDER_KEY_PREFIX = "folder:";
+
+    private final ScheduledThreadPoolExecutor mExecutor;
+
+    private final Map<String, Job> mJobs = new HashMap<>();
+
+    DocumentsSyncScheduler() {
+        mExecutor = new ScheduledThreadPoolExecutor(MAX_THREADS);
+        mExecutor.setKeepAliveTime(KEEP_ALIVE_MS, TimeUnit.MILLISECONDS);
+        mExecutor.allowCoreThreadTimeOut(true);
+        mExecutor.setRemoveOnCancelPolicy(true);
+    }
+
+    /**
+     * Requests the upload of a document written by another app.
+     *
+     * @param documentId    Id of the document.
+     * @param sync          Synchronization to run; replaces any other pending for the same document.
+     */
+    synchronized void requestFileSync(long documentId, Runnable sync) {
+        Job job = getJob(FILE_KEY_PREFIX + documentId);
+        job.mTask = sync;
+        if (job.mRunning) {
+            job.mRerun = true;
+            return;
+        }
+        if (job.mFuture != null) {
+            job.mFuture.cancel(false);
+        }
+        job.mFuture = mExecutor.schedule(job, WRITE_DEBOUNCE_MS, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Requests the refresh of a folder from the server.
+     *
+     * @param folderId      Id of the folder.
+     * @param refresh       Refresh to run, if none is pending or running for the same folder.
+     * @return              'true' if the refresh was scheduled.
+     */
+    synchronized boolean requestFolderRefresh(long folderId, Runnable refresh) {
+        String key = FOLDER_KEY_PREFIX + folderId;
+        if (mJobs.containsKey(key)) {
+            return false;
+        }
+        Job job = getJob(key);
+        job.mTask = refresh;
+        job.mFuture = mExecutor.schedule(job, 0, TimeUnit.MILLISECONDS);
+        return true;
+    }
+
+    /**
+     * @return      Number of synchronizations waiting to run, including those that will run again.
+     */
+    synchronized int getQueueDepth() {
+        int depth = 0;
+        for (Job job : mJobs.values()) {
+            if (!job.mRunning || job.mRerun) {
+                depth++;
+            }
+        }
+        return depth;
+    }
+
+    /**
+     * @return      Number of synchronizations running.
+     */
+    synchronized int getRunningCount() {
+        int running = 0;
+        for (Job job : mJobs.values()) {
+            if (job.mRunning) {
+                running++;
+            }
+        }
+        return running;
+    }
+
+    private Job getJob(String key) {
+        Job job = mJobs.get(key);
+        if (job == null) {
+            job = new Job(key);
+            mJobs.put(key, job);
+        }
+        return job;
+    }
+
+    private class Job implements Runnable {
+
+        final String mKey;
+        Runnable mTask = null;
+        ScheduledFuture<?> mFuture = null;
+        boolean mRunning = false;
+        boolean mRerun = false;
+
+        Job(String key) {
+            mKey = key;
+        }
+
+        @Override
+        public void run() {
+            Runnable task;
+            synchronized (DocumentsSyncScheduler.this) {
+                mFuture = null;
+                mRunning = true;
+                task = mTask;
+            }
+            try {
+                task.run();
+
+            } catch (RuntimeException e) {
+                Log_OC.e(TAG, "Synchronization of " + mKey + " failed", e);
+
+            } finally {
+                synchronized (DocumentsSyncScheduler.this) {
+                    mRunning = false;
+                    if (mRerun) {
+                        mRerun = false;
+                        mFuture = mExecutor.schedule(this, WRITE_DEBOUNCE_MS, TimeUnit.MILLISECONDS);
+                    } else {
+                        mJobs.remove(mKey);
+                    }
+                    Log_OC.v(TAG, "Synchronizations pending: " + getQueueDepth());
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,264 @@
+/**
+ * ownCloud Android client application
+ * <p>
+ * Copyright (C) 2019 ownCloud GmbH.
+ * <p>
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 2,
+ * as published by the Free Software Foundation.
+ * <p>
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * <p>
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.owncloud.android.providers;
+
+import android.accounts.Account;
+import android.accounts.AuthenticatorException;
+import android.accounts.OperationCanceledException;
+import android.annotation.TargetApi;
+import android.content.Context;
+import android.net.Uri;
+import android.os.HandlerThread;
+import android.os.ProxyFileDescriptorCallback;
+import android.system.ErrnoException;
+import android.system.OsConstants;
+
+import com.owncloud.android.MainApp;
+import com.owncloud.android.authentication.AccountUtils;
+import com.owncloud.android.datamodel.OCFile;
+import com.owncloud.android.files.services.DownloadFuture;
+import com.owncloud.android.lib.common.accounts.AccountUtils.AccountNotFoundException;
+import com.owncloud.android.lib.common.utils.Log_OC;
+import com.owncloud.android.utils.FileStorageUtils;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.Map;
+
+/**
+ * Serves reads of a document to other apps while it's being downloaded by
+ * {@link com.owncloud.android.files.services.FileDownloader}, through a proxy file descriptor.
+ *
+ * Reads of the region already downloaded are served from the temporary file of the download, and from the
+ * final file once the download finishes. Reads slightly ahead of the downloaded region wait for the download
+ * to get there. Reads further away, or of a document whose download failed, are served with HTTP Range
+ * requests to the server, one block at a time, so that seeking apps don't wait for the full download.
+ *
+ * Runs in the thread of the {@link HandlerThread} passed to the proxy, which is stopped on release.
+ */
+@TargetApi(26)
+class DownloadingDocumentCallback extends ProxyFileDescriptorCallback {
+
+    private static final String TAG = DownloadingDocumentCallback.class.getSimpleName();
+
+    /**
+     * Reads starting this close to the end of the downloaded region wait for the download.
+     */
+    private static final long WAIT_WINDOW = 1024 * 1024;
+
+    /**
+     * Max time to wait for the download before falling back to a range request.
+     */
+    private static final long WAIT_TIMEOUT_MS = 3000;
+
+    /**
+     * Min size of range requests.
+     */
+    private static final int RANGE_BLOCK_SIZE = 512 * 1024;
+
+    private static final int TIMEOUT_MS = 60000;
+
+    private final Context mContext;
+    private final Account mAccount;
+    private final OCFile mFile;
+    private final DownloadFuture mDownload;
+    private final HandlerThread mThread;
+
+    private final File mTmpFile;
+    private RandomAccessFile mLocalReader = null;
+    private File mLocalReaderFile = null;
+
+    private byte[] mRangeBlock = null;
+    private long mRangeBlockOffset = -1;
+    private int mRangeBlockLength = 0;
+
+    /**
+     * @param context       Context used to access the account.
+     * @param account       ownCloud account where the document is stored.
+     * @param file          Document being downloaded.
+     * @param download      Future of the download of the document.
+     * @param thread        Thread serving the reads; quit on release.
+     */
+    DownloadingDocumentCallback(Context context, Account account, OCFile file, DownloadFuture download,
+                                HandlerThread thread) {
+        mContext = context;
+        mAccount = account;
+        mFile = file;
+        mDownload = download;
+        mThread = thread;
+        mTmpFile = new File(FileStorageUtils.getTemporalPath(account.name) + file.getRemotePath());
+    }
+
+    @Override
+    public long onGetSize() {
+        return mFile.getFileLength();
+    }
+
+    @Override
+    public int onRead(long offset, int size, byte[] data) throws ErrnoException {
+        long fileLength = mFile.getFileLength();
+        if (offset >= fileLength) {
+            return 0;
+        }
+        int length = (int) Math.min(size, fileLength - offset);
+        try {
+            while (true) {
+                /// downloaded file, or downloaded region of the temporary file
+                if (mDownload.isSuccess()) {
+                    // mFile was loaded before the download, without local path
+                    String storagePath = mDownload.getStoragePath();
+                    if (storagePath == null) {
+                        throw new IOException("No local path for downloaded " + mFile.getRemotePath());
+                    }
+                    return readLocal(new File(storagePath), offset, length, data);
+                }
+                long transferred = mDownload.getTransferred();
+                if (offset + length <= transferred && mTmpFile.exists()) {
+                    return readLocal(mTmpFile, offset, length, data);
+                }
+
+                /// close enough to the downloaded region; wait for it
+                if (!mDownload.isDone() && offset <= transferred + WAIT_WINDOW) {
+                    long reached = mDownload.awaitTransferred(offset + length, WAIT_TIMEOUT_MS);
+                    if (reached > transferred || mDownload.isDone()) {
+                        continue;
+                    }   // else, download is stuck or still in the queue
+                }
+
+                return readRange(offset, length, data);
+            }
+
+        } catch (InterruptedException e) {
+            throw new ErrnoException("onRead", OsConstants.EINTR);
+
+        } catch (IOException e) {
+            Log_OC.e(TAG, "Error reading " + mFile.getRemotePath() + " at " + offset, e);
+            throw new ErrnoException("onRead", OsConstants.EIO);
+        }
+    }
+
+    @Override
+    public void onRelease() {
+        closeLocalReader();
+        mThread.quitSafely();
+    }
+
+    private int readLocal(File source, long offset, int length, byte[] data) throws IOException {
+        if (mLocalReader == null || !source.equals(mLocalReaderFile)) {
+            // temporary file is replaced by the final one when the download finishes
+            closeLocalReader();
+            mLocalReader = new RandomAccessFile(source, "r");
+            mLocalReaderFile = source;
+        }
+        mLocalReader.seek(offset);
+        int read = 0;
+        while (read < length) {
+            int count = mLocalReader.read(data, read, length - read);
+            if (count < 0) {
+                break;
+            }
+            read += count;
+        }
+        return read;
+    }
+
+    private void closeLocalReader() {
+        if (mLocalReader != null) {
+            try {
+                mLocalReader.close();
+            } catch (IOException e) {
+                Log_OC.d(TAG, "Weird exception while closing " + mLocalReaderFile + " (ignoring)", e);
+            }
+            mLocalReader = null;
+            mLocalReaderFile = null;
+        }
+    }
+
+    /**
+     * Serves a read from the last block received with a range request, requesting a new one if needed.
+     */
+    private int readRange(long offset, int length, byte[] data) throws IOException {
+        if (offset < mRangeBlockOffset || offset + length > mRangeBlockOffset + mRangeBlockLength) {
+            requestRange(offset, Math.max(length, RANGE_BLOCK_SIZE));
+        }
+        int available = (int) Math.min(length, mRangeBlockOffset + mRangeBlockLength - offset);
+        System.arraycopy(mRangeBlock, (int) (offset - mRangeBlockOffset), data, 0, available);
+        return available;
+    }
+
+    private void requestRange(long offset, int length) throws IOException {
+        length = (int) Math.min(length, mFile.getFileLength() - offset);
+        HttpURLConnection connection = null;
+        try {
+            URL url = new URL(
+                    com.owncloud.android.lib.common.accounts.AccountUtils.getWebDavUrlForAccount(mContext, mAccount)
+                            + Uri.encode(mFile.getRemotePath(), "/")
+            );
+            connection = (HttpURLConnection) url.openConnection();
+            connection.setConnectTimeout(TIMEOUT_MS);
+            connection.setReadTimeout(TIMEOUT_MS);
+            connection.setRequestProperty("User-Agent", MainApp.getUserAgent());
+            connection.setRequestProperty("Range", "bytes=" + offset + "-" + (offset + length - 1));
+            for (Map.Entry<String, String> header :
+                    AccountUtils.getAuthorizationHeaders(mContext, mAccount).entrySet()) {
+                connection.setRequestProperty(header.getKey(), header.getValue());
+            }
+
+            if (connection.getResponseCode() != HttpURLConnection.HTTP_PARTIAL) {
+                // a full response would mean reading from the start of the file for every seek
+                throw new IOException("Range request not supported, status " + connection.getResponseCode());
+            }
+
+            if (mRangeBlock == null || mRangeBlock.length < length) {
+                mRangeBlock = new byte[length];
+            }
+            mRangeBlockOffset = offset;
+            mRangeBlockLength = 0;
+            InputStream in = connection.getInputStream();
+            try {
+                while (mRangeBlockLength < length) {
+                    int count = in.read(mRangeBlock, mRangeBlockLength, length - mRangeBlockLength);
+                    if (count < 0) {
+                        break;
+                    }
+                    mRangeBlockLength += count;
+                }
+            } finally {
+                in.close();
+            }
+            if (mRangeBlockLength <= 0) {
+                mRangeBlockOffset = -1;
+                throw new IOException("Empty response to range request");
+            }
+
+        } catch (AuthenticatorException | OperationCanceledException | AccountNotFoundException e) {
+            // account or credentials not available
+            throw new IOException(e);
+
+        } finally {
+            if (connection != null) {
+                connection.disconnect();
+            }
+        }
+    }
+}
@@ -39,6 +39,7 @@ import android.database.SQLException;
 import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteOpenHelper;
 import android.database.sqlite.SQLiteQueryBuilder;
+import android.database.sqlite.SQLiteStatement;
 import android.net.Uri;
 import android.os.CancellationSignal;
 import android.os.ParcelFileDescriptor;
@@ -113,6 +114,9 @@ public class FileContentProvider extends ContentProvider {
         mFileProjectionMap.put(ProviderTableMeta.FILE_IS_DOWNLOADING, ProviderTableMeta.FILE_IS_DOWNLOADING);
         mFileProjectionMap.put(ProviderTableMeta.FILE_ETAG_IN_CONFLICT, ProviderTableMeta.FILE_ETAG_IN_CONFLICT);
         mFileProjectionMap.put(ProviderTableMeta.FILE_PRIVATE_LINK, ProviderTableMeta.FILE_PRIVATE_LINK);
+        mFileProjectionMap.put(ProviderTableMeta.FILE_NAME_NORMALIZED, ProviderTableMeta.FILE_NAME_NORMALIZED);
+        // to count rows without reading them
+        mFileProjectionMap.put(ProviderTableMeta._COUNT, "COUNT(*) AS " + ProviderTableMeta._COUNT);
     }
 
     private static HashMap<String, String> mShareProjectionMap = new HashMap<>();
@@ -387,6 +391,7 @@ public class FileContentProvider extends ContentProvider {
         switch (mUriMatcher.match(uri)) {
             case ROOT_DIRECTORY:
             case SINGLE_FILE:
+                putNormalizedFileName(values);
                 String remotePath = values.getAsString(ProviderTableMeta.FILE_PATH);
                 String accountName = values.getAsString(ProviderTableMeta.FILE_ACCOUNT_OWNER);
                 String[] projection = new String[]{
@@ -660,9 +665,11 @@ public class FileContentProvider extends ContentProvider {
             order = sortOrder;
         }
 
+        String limit = uri.getQueryParameter(ProviderTableMeta.QUERY_PARAMETER_LIMIT);
+
         // DB case_sensitive
         db.execSQL("PRAGMA case_sensitive_like = true");
-        Cursor c = sqlQuery.query(db, projection, selection, selectionArgs, null, null, order);
+        Cursor c = sqlQuery.query(db, projection, selection, selectionArgs, null, null, order, limit);
         c.setNotificationUri(getContext().getContentResolver(), uri);
         return c;
     }
@@ -717,6 +724,7 @@ public class FileContentProvider extends ContentProvider {
             case QUOTAS:
                 return db.update(ProviderTableMeta.USER_QUOTAS_TABLE_NAME, values, selection, selectionArgs);
             default:
+                putNormalizedFileName(values);
                 return db.update(
                         ProviderTableMeta.FILE_TABLE_NAME, values, selection, selectionArgs
                 );
@@ -1136,6 +1144,22 @@ public class FileContentProvider extends ContentProvider {
                 }
             }
 
+            if (oldVersion < 26 && newVersion >= 26) {
+                Log_OC.i("SQL", "Entering in the #26 ADD in onUpgrade");
+                db.beginTransaction();
+                try {
+                    db.execSQL("ALTER TABLE " + ProviderTableMeta.FILE_TABLE_NAME +
+                            " ADD COLUMN " + ProviderTableMeta.FILE_NAME_NORMALIZED + " TEXT " +
+                            " DEFAULT NULL");
+                    fillNormalizedFileNames(db);
+                    createFileNameIndex(db);
+                    db.setTransactionSuccessful();
+                    upgraded = true;
+                } finally {
+                    db.endTransaction();
+                }
+            }
+
             if (!upgraded) {
                 Log_OC.i("SQL", "OUT of the ADD in onUpgrade; oldVersion == " + oldVersion +
                         ", newVersion == " + newVersion);
@@ -1169,10 +1193,69 @@ public class FileContentProvider extends ContentProvider {
                 + ProviderTableMeta.FILE_IS_DOWNLOADING + " INTEGER," //boolean
                 + ProviderTableMeta.FILE_ETAG_IN_CONFLICT + " TEXT,"
                 + ProviderTableMeta.FILE_SHARED_WITH_SHAREE + " INTEGER,"
-                + ProviderTableMeta.FILE_PRIVATE_LINK + " TEXT );"
+                + ProviderTableMeta.FILE_PRIVATE_LINK + " TEXT, "
+                + ProviderTableMeta.FILE_NAME_NORMALIZED + " TEXT );"
+        );
+        createFileNameIndex(db);
+    }
+
+    /**
+     * Index to search files by name in an account, see
+     * {@link com.owncloud.android.datamodel.FileDataStorageManager#searchFilesByName(String, int, int)}
+     *
+     * Searches look for substrings, so the index can't be used for a binary search, but it is scanned
+     * instead of the full table.
+     */
+    private void createFileNameIndex(SQLiteDatabase db) {
+        db.execSQL("CREATE INDEX " + ProviderTableMeta.FILE_TABLE_NAME + "_name_normalized_index ON "
+                + ProviderTableMeta.FILE_TABLE_NAME + "("
+                + ProviderTableMeta.FILE_ACCOUNT_OWNER + ", "
+                + ProviderTableMeta.FILE_NAME_NORMALIZED + ");"
         );
     }
 
+    /**
+     * Fills the normalized name of existing files, created before the column existed.
+     */
+    private void fillNormalizedFileNames(SQLiteDatabase db) {
+        Cursor c = db.query(
+                ProviderTableMeta.FILE_TABLE_NAME,
+                new String[]{ProviderTableMeta._ID, ProviderTableMeta.FILE_NAME},
+                null, null, null, null, null
+        );
+        SQLiteStatement update = db.compileStatement(
+                "UPDATE " + ProviderTableMeta.FILE_TABLE_NAME +
+                        " SET " + ProviderTableMeta.FILE_NAME_NORMALIZED + " = ?" +
+                        " WHERE " + ProviderTableMeta._ID + " = ?"
+        );
+        try {
+            while (c.moveToNext()) {
+                String name = c.getString(1);
+                if (name == null) {
+                    continue;
+                }
+                update.bindString(1, FileStorageUtils.normalizeForSearch(name));
+                update.bindLong(2, c.getLong(0));
+                update.executeUpdateDelete();
+            }
+        } finally {
+            update.close();
+            c.close();
+        }
+    }
+
+    /**
+     * Adds the normalized file name to the values written for a file, if its name is written.
+     */
+    private static void putNormalizedFileName(ContentValues values) {
+        if (values != null && values.containsKey(ProviderTableMeta.FILE_NAME)) {
+            values.put(
+                    ProviderTableMeta.FILE_NAME_NORMALIZED,
+                    FileStorageUtils.normalizeForSearch(values.getAsString(ProviderTableMeta.FILE_NAME))
+            );
+        }
+    }
+
     private void createOCSharesTable(SQLiteDatabase db) {
         // Create ocshares table
         db.execSQL("CREATE TABLE " + ProviderTableMeta.OCSHARES_TABLE_NAME + "("
@@ -26,6 +26,7 @@ import android.os.Bundle
 import android.provider.DocumentsContract
 import android.provider.DocumentsContract.Document
 import com.owncloud.android.datamodel.OCFile
+import com.owncloud.android.datamodel.ThumbnailsCacheManager
 import com.owncloud.android.utils.MimetypeIconUtil
 
 class FileCursor(projection: Array<String>?) : MatrixCursor(projection ?: DEFAULT_DOCUMENT_PROJECTION) {
@@ -40,8 +41,8 @@ class FileCursor(projection: Array<String>?) : MatrixCursor(projection ?: DEFAUL
     fun addFile(file: OCFile) {
         val iconRes = MimetypeIconUtil.getFileTypeIconId(file.mimetype, file.fileName)
         val mimeType = if (file.isFolder) Document.MIME_TYPE_DIR else file.mimetype
-        val imagePath = if (file.isImage && file.isDown) file.storagePath else null
-        var flags = if (imagePath != null) Document.FLAG_SUPPORTS_THUMBNAIL else 0
+        // thumbnails are generated on demand, also from the server for images not downloaded
+        var flags = if (ThumbnailsCacheManager.hasThumbnail(file)) Document.FLAG_SUPPORTS_THUMBNAIL else 0
 
         flags = flags or Document.FLAG_SUPPORTS_DELETE or Document.FLAG_SUPPORTS_WRITE
 
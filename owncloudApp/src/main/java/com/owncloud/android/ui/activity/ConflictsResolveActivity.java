@@ -21,11 +21,9 @@
 
 package com.owncloud.android.ui.activity;
 
-import android.content.Intent;
 import android.os.Bundle;
 
 import com.owncloud.android.datamodel.OCFile;
-import com.owncloud.android.files.services.FileDownloader;
 import com.owncloud.android.files.services.FileUploader;
 import com.owncloud.android.files.services.TransferRequester;
 import com.owncloud.android.lib.common.utils.Log_OC;
@@ -65,10 +63,7 @@ public class ConflictsResolveActivity extends FileActivity implements OnConflict
                 break;
             case SERVER:
                 // use server version -> delete local, request download
-                Intent intent = new Intent(this, FileDownloader.class);
-                intent.putExtra(FileDownloader.KEY_ACCOUNT, getAccount());
-                intent.putExtra(FileDownloader.KEY_FILE, getFile());
-                startService(intent);
+                new TransferRequester().downloadFile(this, getAccount(), getFile());
                 finish();
                 return;
             default:
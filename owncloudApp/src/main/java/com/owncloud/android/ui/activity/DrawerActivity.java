@@ -452,7 +452,7 @@ public abstract class DrawerActivity extends ToolbarActivity {
                                 mMenuAccountAvatarRadiusDimension,
                                 false
                         );
-                task.execute();
+                task.executeOnExecutor(ThumbnailsCacheManager.THUMBNAILS_EXECUTOR);
             }
         }
 
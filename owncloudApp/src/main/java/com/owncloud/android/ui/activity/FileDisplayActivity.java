@@ -1652,10 +1652,7 @@ public class FileDisplayActivity extends FileActivity
         //if (!mFileWaitingToPreview.isDownloading()) {
         // If the file is not being downloaded, start the download
         if (!mDownloaderBinder.isDownloading(account, mFileWaitingToPreview)) {
-            Intent i = new Intent(this, FileDownloader.class);
-            i.putExtra(FileDownloader.KEY_ACCOUNT, account);
-            i.putExtra(FileDownloader.KEY_FILE, mFileWaitingToPreview);
-            startService(i);
+            new TransferRequester().downloadFile(this, account, mFileWaitingToPreview);
         }
     }
 
@@ -1721,10 +1718,7 @@ public class FileDisplayActivity extends FileActivity
     private void requestForDownload(OCFile file) {
         Account account = getAccount();
         if (!mDownloaderBinder.isDownloading(account, mFileWaitingToPreview)) {
-            Intent i = new Intent(this, FileDownloader.class);
-            i.putExtra(FileDownloader.KEY_ACCOUNT, account);
-            i.putExtra(FileDownloader.KEY_FILE, file);
-            startService(i);
+            new TransferRequester().downloadFile(this, account, file);
         }
     }
 
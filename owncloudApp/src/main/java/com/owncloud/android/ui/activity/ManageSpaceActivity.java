@@ -25,6 +25,7 @@ import android.content.SharedPreferences;
 import android.os.AsyncTask;
 import android.os.Bundle;
 import android.preference.PreferenceManager;
+import android.text.format.Formatter;
 import android.view.MenuItem;
 import android.widget.Button;
 import android.widget.LinearLayout;
@@ -34,6 +35,7 @@ import androidx.appcompat.app.ActionBar;
 import androidx.appcompat.app.AppCompatActivity;
 import com.google.android.material.snackbar.Snackbar;
 import com.owncloud.android.R;
+import com.owncloud.android.datamodel.ThumbnailsCacheManager;
 import com.owncloud.android.lib.common.utils.Log_OC;
 import com.owncloud.android.utils.FileStorageUtils;
 import com.owncloud.android.utils.PreferenceUtils;
@@ -46,6 +48,12 @@ public class ManageSpaceActivity extends AppCompatActivity {
 
     private static final String LIB_FOLDER = "lib";
 
+    /**
+     * Part of the space used by thumbnails kept when deleting the least recently used ones.
+     */
+    private static final float THUMBNAILS_KEPT_FRACTION = 0.5f;
+    private static final float THUMBNAILS_KEEP_ALL = 1f;
+
     @Override
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
@@ -69,6 +77,18 @@ public class ManageSpaceActivity extends AppCompatActivity {
             ClearDataAsynTask clearDataTask = new ClearDataAsynTask();
             clearDataTask.execute();
         });
+
+        Button trimThumbnailsButton = findViewById(R.id.trimThumbnailsButton);
+        trimThumbnailsButton.setOnClickListener(v ->
+                new TrimThumbnailsAsyncTask().execute(THUMBNAILS_KEPT_FRACTION)
+        );
+
+        Button clearThumbnailsButton = findViewById(R.id.clearThumbnailsButton);
+        clearThumbnailsButton.setOnClickListener(v ->
+                new TrimThumbnailsAsyncTask().execute(0f)
+        );
+
+        new TrimThumbnailsAsyncTask().execute(THUMBNAILS_KEEP_ALL);
     }
 
     @Override
@@ -85,6 +105,35 @@ public class ManageSpaceActivity extends AppCompatActivity {
         return retval;
     }
 
+    /**
+     * AsyncTask to delete thumbnails, least recently used first, and show the space they use after that
+     */
+    private class TrimThumbnailsAsyncTask extends AsyncTask<Float, Void, Void> {
+
+        @Override
+        protected Void doInBackground(Float... params) {
+            ThumbnailsCacheManager.trimDiskCache(params[0]);
+            return null;
+        }
+
+        @Override
+        protected void onPostExecute(Void result) {
+            TextView usageTextView = findViewById(R.id.thumbnails_usage);
+            usageTextView.setText(getString(
+                    R.string.manage_space_thumbnails_usage,
+                    Formatter.formatShortFileSize(
+                            ManageSpaceActivity.this, ThumbnailsCacheManager.getDiskCacheSize()
+                    ),
+                    Formatter.formatShortFileSize(
+                            ManageSpaceActivity.this, ThumbnailsCacheManager.getDiskCacheMaxSize()
+                    ),
+                    Math.round(ThumbnailsCacheManager.getMemoryCacheHitRate() * 100),
+                    Math.round(ThumbnailsCacheManager.getDiskCacheHitRate() * 100),
+                    Math.round(ThumbnailsCacheManager.getDiskCacheEvictionRate() * 100)
+            ));
+        }
+    }
+
     /**
      * AsyncTask for Clear Data, saving the passcode
      */
@@ -20,49 +20,85 @@
 package com.owncloud.android.ui.adapter;
 
 import java.io.BufferedInputStream;
-import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.concurrent.atomic.AtomicLong;
 
 import android.graphics.Bitmap;
 import android.graphics.Bitmap.CompressFormat;
 import android.graphics.BitmapFactory;
+import android.os.ParcelFileDescriptor;
 
 import com.jakewharton.disklrucache.DiskLruCache;
 import com.owncloud.android.MainApp;
 import com.owncloud.android.lib.common.utils.Log_OC;
 
+/**
+ * Cache of images in disk, safe for concurrent use.
+ *
+ * Reads don't lock; writes and removals are serialized per key on a set of striped locks, so that different
+ * keys are written in parallel. Keys are mapped to file names with a SHA-256 digest.
+ */
 public class DiskLruImageCache {
 
     private DiskLruCache mDiskCache;
     private CompressFormat mCompressFormat;
     private int mCompressQuality;
-    private static final int CACHE_VERSION = 1;
+    // 2: keys mapped with SHA-256 instead of String#hashCode()
+    private static final int CACHE_VERSION = 2;
     private static final int VALUE_COUNT = 1;
     private static final int IO_BUFFER_SIZE = 8 * 1024;
+    private static final int LOCK_STRIPES = 16;
+    private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
+    private final Object[] mLocks = new Object[LOCK_STRIPES];
+
+    private final long mInitialSize;
+    private final AtomicLong mWrittenBytes = new AtomicLong();
+    private final AtomicLong mRemovedBytes = new AtomicLong();     // removed or replaced on purpose
 
     private static final String TAG = DiskLruImageCache.class.getSimpleName();
 
     //public DiskLruImageCache( Context context,String uniqueName, int diskCacheSize,
     public DiskLruImageCache(
-            File diskCacheDir, int diskCacheSize, CompressFormat compressFormat, int quality
+            File diskCacheDir, long diskCacheSize, CompressFormat compressFormat, int quality
     ) throws IOException {
 
         mDiskCache = DiskLruCache.open(
                 diskCacheDir, CACHE_VERSION, VALUE_COUNT, diskCacheSize
         );
+        mInitialSize = mDiskCache.size();
         mCompressFormat = compressFormat;
         mCompressQuality = quality;
+        for (int i = 0; i < LOCK_STRIPES; i++) {
+            mLocks[i] = new Object();
+        }
+    }
+
+    private Object getLock(String validKey) {
+        // valid keys are hex digests, evenly distributed
+        return mLocks[Character.digit(validKey.charAt(0), 16) % LOCK_STRIPES];
+    }
+
+    /**
+     * @return      Compressed bitmap, or null if it could not be compressed.
+     */
+    private byte[] encodeBitmap(Bitmap bitmap) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(IO_BUFFER_SIZE);
+        return bitmap.compress(mCompressFormat, mCompressQuality, out) ? out.toByteArray() : null;
     }
 
-    private boolean writeBitmapToFile(Bitmap bitmap, DiskLruCache.Editor editor)
-            throws IOException {
+    private void writeBytesToFile(byte[] data, DiskLruCache.Editor editor) throws IOException {
         OutputStream out = null;
         try {
-            out = new BufferedOutputStream(editor.newOutputStream(0), IO_BUFFER_SIZE);
-            return bitmap.compress(mCompressFormat, mCompressQuality, out);
+            out = editor.newOutputStream(0);
+            out.write(data);
         } finally {
             if (out != null) {
                 out.close();
@@ -72,17 +108,46 @@ public class DiskLruImageCache {
 
     public void put(String key, Bitmap data) {
 
-        DiskLruCache.Editor editor = null;
         String validKey = convertToValidKey(key);
+        synchronized (getLock(validKey)) {
+            put(validKey, data, null);
+        }
+    }
+
+    /**
+     * Stores an image already encoded, as is.
+     *
+     * @param key       Key of the image.
+     * @param data      Image encoded in any format {@link BitmapFactory} can decode.
+     */
+    public void putEncoded(String key, byte[] data) {
+        String validKey = convertToValidKey(key);
+        synchronized (getLock(validKey)) {
+            put(validKey, null, data);
+        }
+    }
+
+    /**
+     * @param validKey  Key of the image, already valid.
+     * @param bitmap    Image to compress, if 'encoded' is null.
+     * @param encoded   Encoded image to store as is, or null.
+     */
+    private void put(String validKey, Bitmap bitmap, byte[] encoded) {
+        DiskLruCache.Editor editor = null;
         try {
             editor = mDiskCache.edit(validKey);
             if (editor == null) {
                 return;
             }
 
-            if (writeBitmapToFile(data, editor)) {
-                mDiskCache.flush();
+            byte[] data = (encoded != null) ? encoded : encodeBitmap(bitmap);
+            if (data != null) {
+                long replacedBytes = getLength(validKey);
+                writeBytesToFile(data, editor);
+                // commit() writes and flushes its line in the journal; no need to flush the whole cache
                 editor.commit();
+                mWrittenBytes.addAndGet(data.length);
+                mRemovedBytes.addAndGet(replacedBytes);
                 if (MainApp.isDeveloper()) {
                    Log_OC.d( "cache_test_DISK_", "image put on disk cache " + validKey );
                 }
@@ -106,6 +171,77 @@ public class DiskLruImageCache {
 
     }
 
+    /**
+     * @return      Size of the stored image, or 0 if not stored.
+     */
+    private long getLength(String validKey) throws IOException {
+        DiskLruCache.Snapshot snapshot = mDiskCache.get(validKey);
+        if (snapshot == null) {
+            return 0;
+        }
+        try {
+            return snapshot.getLength(0);
+        } finally {
+            snapshot.close();
+        }
+    }
+
+    /**
+     * @return      Bytes used by the stored images.
+     */
+    public long getSize() {
+        return mDiskCache.size();
+    }
+
+    /**
+     * @return      Max bytes to use for images; least recently used images are evicted beyond it.
+     */
+    public long getMaxSize() {
+        return mDiskCache.getMaxSize();
+    }
+
+    public void setMaxSize(long maxSize) {
+        mDiskCache.setMaxSize(maxSize);
+    }
+
+    /**
+     * Evicts least recently used images until the cache uses no more than the given size. The max size
+     * of the cache is kept.
+     *
+     * @param size      Bytes to keep at most.
+     */
+    public synchronized void trimToSize(long size) {
+        long maxSize = mDiskCache.getMaxSize();
+        try {
+            long sizeBefore = mDiskCache.size();
+            mDiskCache.setMaxSize(Math.max(size, 0));
+            // evicts synchronously
+            mDiskCache.flush();
+            // requested, not for lack of space
+            mRemovedBytes.addAndGet(Math.max(0, sizeBefore - mDiskCache.size()));
+
+        } catch (IOException e) {
+            Log_OC.w(TAG, "Could not trim cache", e);
+
+        } finally {
+            mDiskCache.setMaxSize(maxSize);
+        }
+    }
+
+    /**
+     * @return      Bytes written to the cache since it was opened.
+     */
+    public long getWrittenBytes() {
+        return mWrittenBytes.get();
+    }
+
+    /**
+     * @return      Bytes evicted from the cache since it was opened for lack of space.
+     */
+    public long getEvictedBytes() {
+        return Math.max(0, mInitialSize + mWrittenBytes.get() - mRemovedBytes.get() - mDiskCache.size());
+    }
+
     public Bitmap getBitmap(String key) {
 
         Bitmap bitmap = null;
@@ -140,8 +276,57 @@ public class DiskLruImageCache {
 
     }
 
+    /**
+     * Opens the file storing an image in the cache, to read its encoded bytes without decoding them.
+     *
+     * The returned descriptor is independent from the cache; it can still be read if the image is
+     * evicted or replaced.
+     *
+     * @param key   Key of the image.
+     * @return      Descriptor of the file with the image, or null if not in the cache.
+     */
+    public ParcelFileDescriptor openFileDescriptor(String key) {
+        DiskLruCache.Snapshot snapshot = null;
+        String validKey = convertToValidKey(key);
+        try {
+            snapshot = mDiskCache.get(validKey);
+            if (snapshot == null) {
+                return null;
+            }
+            InputStream in = snapshot.getInputStream(0);
+            if (in instanceof FileInputStream) {
+                return ParcelFileDescriptor.dup(((FileInputStream) in).getFD());
+            }
+        } catch (IOException e) {
+            Log_OC.w(TAG, "Could not open image " + validKey + " in disk cache", e);
+        } finally {
+            if (snapshot != null) {
+                snapshot.close();
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Maps a key to a valid key for {@link DiskLruCache}, [a-z0-9_-]{1,64}
+     *
+     * @param key   Any key.
+     * @return      Hex SHA-256 digest of the key.
+     */
     private String convertToValidKey(String key) {
-        return Integer.toString(key.hashCode());
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(key.getBytes("UTF-8"));
+            char[] hex = new char[digest.length * 2];
+            for (int i = 0; i < digest.length; i++) {
+                hex[2 * i] = HEX_DIGITS[(digest[i] >> 4) & 0x0f];
+                hex[2 * i + 1] = HEX_DIGITS[digest[i] & 0x0f];
+            }
+            return new String(hex);
+
+        } catch (NoSuchAlgorithmException | IOException e) {
+            // SHA-256 and UTF-8 are always available in Android
+            throw new IllegalStateException(e);
+        }
     }
 
     /**
@@ -150,11 +335,16 @@ public class DiskLruImageCache {
      */
     public void removeKey(String key) {
         String validKey = convertToValidKey(key);
-        try {
-            mDiskCache.remove(validKey);
-            Log_OC.d(TAG, "removeKey from cache: " + validKey);
-        } catch (IOException e) {
-            e.printStackTrace();
+        synchronized (getLock(validKey)) {
+            try {
+                long removedBytes = getLength(validKey);
+                if (mDiskCache.remove(validKey)) {
+                    mRemovedBytes.addAndGet(removedBytes);
+                }
+                Log_OC.d(TAG, "removeKey from cache: " + validKey);
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
         }
     }
 }
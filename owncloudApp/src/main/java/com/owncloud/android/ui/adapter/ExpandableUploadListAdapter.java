@@ -435,7 +435,7 @@ public class ExpandableUploadListAdapter extends BaseExpandableListAdapter imple
                     && fakeFileToCheatThumbnailsCacheManagerInterface.getRemoteId() != null &&
                     upload.getUploadStatus() == UploadStatus.UPLOAD_SUCCEEDED)) {
                 // Thumbnail in Cache?
-                Bitmap thumbnail = ThumbnailsCacheManager.getBitmapFromDiskCache(
+                Bitmap thumbnail = ThumbnailsCacheManager.getBitmapFromMemoryCache(
                         String.valueOf(fakeFileToCheatThumbnailsCacheManagerInterface.getRemoteId())
                 );
                 if (thumbnail != null && !fakeFileToCheatThumbnailsCacheManagerInterface.needsUpdateThumbnail()) {
@@ -457,7 +457,10 @@ public class ExpandableUploadListAdapter extends BaseExpandableListAdapter imple
                                         task
                                 );
                         fileIcon.setImageDrawable(asyncDrawable);
-                        task.execute(fakeFileToCheatThumbnailsCacheManagerInterface);
+                        task.executeOnExecutor(
+                                ThumbnailsCacheManager.THUMBNAILS_EXECUTOR,
+                                fakeFileToCheatThumbnailsCacheManagerInterface
+                        );
                     }
                 }
 
@@ -469,7 +472,7 @@ public class ExpandableUploadListAdapter extends BaseExpandableListAdapter imple
             } else if (fakeFileToCheatThumbnailsCacheManagerInterface.isImage()) {
                 File file = new File(upload.getLocalPath());
                 // Thumbnail in Cache?
-                Bitmap thumbnail = ThumbnailsCacheManager.getBitmapFromDiskCache(
+                Bitmap thumbnail = ThumbnailsCacheManager.getBitmapFromMemoryCache(
                         String.valueOf(file.hashCode()));
                 if (thumbnail != null) {
                     fileIcon.setImageBitmap(thumbnail);
@@ -488,7 +491,7 @@ public class ExpandableUploadListAdapter extends BaseExpandableListAdapter imple
                                         task
                                 );
                         fileIcon.setImageDrawable(asyncDrawable);
-                        task.execute(file);
+                        task.executeOnExecutor(ThumbnailsCacheManager.THUMBNAILS_EXECUTOR, file);
                         Log_OC.v(TAG, "Executing task to generate a new thumbnail");
                     }
                 }
@@ -762,6 +765,9 @@ public class ExpandableUploadListAdapter extends BaseExpandableListAdapter imple
             mProgressBar = new WeakReference<ProgressBar>(progressBar);
         }
 
+        /**
+         * Called in the main thread, at a bounded rate; only the progress bar is updated, not the whole list.
+         */
         @Override
         public void onTransferProgress(long progressRate, long totalTransferredSoFar, long totalToTransfer, String
                 filename) {
@@ -770,7 +776,6 @@ public class ExpandableUploadListAdapter extends BaseExpandableListAdapter imple
                 ProgressBar pb = mProgressBar.get();
                 if (pb != null) {
                     pb.setProgress(percent);
-                    pb.postInvalidate();
                 }
             }
             mLastPercent = percent;
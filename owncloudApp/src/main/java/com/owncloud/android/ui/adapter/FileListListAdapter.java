@@ -30,6 +30,9 @@ import android.accounts.Account;
 import android.content.Context;
 import android.graphics.Bitmap;
 import android.graphics.Color;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.Process;
 import android.text.TextUtils;
 import android.util.SparseBooleanArray;
 import android.view.LayoutInflater;
@@ -41,13 +44,19 @@ import android.widget.GridView;
 import android.widget.ImageView;
 import android.widget.LinearLayout;
 import android.widget.ListAdapter;
+import android.widget.ListView;
 import android.widget.TextView;
 
+import androidx.recyclerview.widget.DiffUtil;
+import androidx.recyclerview.widget.ListUpdateCallback;
+
 import com.owncloud.android.R;
 import com.owncloud.android.authentication.AccountUtils;
 import com.owncloud.android.datamodel.FileDataStorageManager;
+import com.owncloud.android.datamodel.FolderSnapshot;
 import com.owncloud.android.datamodel.OCFile;
 import com.owncloud.android.datamodel.ThumbnailsCacheManager;
+import com.owncloud.android.datamodel.ThumbnailsPrefetcher;
 import com.owncloud.android.db.PreferenceManager;
 import com.owncloud.android.files.services.FileDownloader.FileDownloaderBinder;
 import com.owncloud.android.files.services.FileUploader.FileUploaderBinder;
@@ -58,28 +67,103 @@ import com.owncloud.android.utils.FileStorageUtils;
 import com.owncloud.android.utils.MimetypeIconUtil;
 import com.owncloud.android.utils.PreferenceUtils;
 
+import java.lang.ref.WeakReference;
 import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
 import java.util.List;
 import java.util.Vector;
+import java.util.WeakHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
 
 /**
  * This Adapter populates a ListView with all files and folders in an ownCloud
  * instance.
+ *
+ * Folders are loaded, sorted and searched in a background thread, into immutable snapshots. When the
+ * folder shown is refreshed or searched, the differences with the files shown are computed in the same
+ * thread; if no file was added, removed or moved, only the visible rows that changed are bound again,
+ * instead of all of them.
  */
-public class FileListListAdapter extends BaseAdapter implements ListAdapter {
+public class FileListListAdapter extends BaseAdapter implements ListAdapter, AbsListView.RecyclerListener {
+
+    private static final String TAG = FileListListAdapter.class.getSimpleName();
+
+    /**
+     * Time to wait for more changes in a search query before searching.
+     */
+    private static final long SEARCH_DELAY_MS = 150;
+
+    /**
+     * Loads, sorts and diffs the files to show, one job after another.
+     */
+    private static final ExecutorService sLoadExecutor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+        @Override
+        public Thread newThread(final Runnable runnable) {
+            return new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                    runnable.run();
+                }
+            }, TAG);
+        }
+    });
 
     private Context mContext;
-    private Vector<OCFile> mImmutableFilesList = null; // List containing the database files, doesn't change with search
-    private Vector<OCFile> mFiles = null; // List that can be changed when using search
+    private FolderSnapshot mSnapshot = FolderSnapshot.EMPTY;    // files in the folder shown, without search
+    private Vector<OCFile> mFiles = null; // Files shown: the snapshot, filtered by the search
+    private String mSearchQuery = null;     // normalized
     private boolean mJustFolders;
     private boolean mOnlyAvailableOffline;
 
     private FileDataStorageManager mStorageManager;
     private Account mAccount;
     private ComponentsGetter mTransferServiceGetter;
+    private ThumbnailsPrefetcher mThumbnailsPrefetcher;
+
+    private final Handler mHandler = new Handler(Looper.getMainLooper());
+    private int mPublishedGeneration = 0;
+    private volatile FolderSnapshot mLatestSnapshot = FolderSnapshot.EMPTY;     // of the last job run
+    private volatile FolderSnapshot.SearchResult mLatestSearchResult = null;    // of the last job run
+    private final Runnable mSearchRunnable = () -> loadFiles(latestSnapshot -> latestSnapshot);
+    private WeakReference<AbsListView> mListView = new WeakReference<>(null);
+    private final WeakHashMap<View, BoundRow> mBoundRows = new WeakHashMap<>();
+    private OnFilesUpdatedListener mOnFilesUpdatedListener;
+    private Runnable mOnFolderShown = null;     // once the files of the folder below are applied
+    private long mOnFolderShownId = -1;
 
     private enum ViewType {LIST_ITEM, GRID_IMAGE, GRID_ITEM}
 
+    /**
+     * Listener for the changes in the files shown, once applied to the list.
+     */
+    public interface OnFilesUpdatedListener {
+        void onFilesUpdated();
+    }
+
+    /**
+     * Produces a new snapshot of files to show, in the background.
+     */
+    private interface SnapshotLoader {
+        /**
+         * @param latestSnapshot    Snapshot produced by the last job, maybe not shown yet.
+         * @return                  New snapshot.
+         */
+        FolderSnapshot load(FolderSnapshot latestSnapshot);
+    }
+
+    /**
+     * What was bound in a row view, to know if it must be bound again.
+     */
+    private static class BoundRow {
+        int mPosition;
+        long mFileId;
+        int mLocalStateIconId;
+    }
+
     public FileListListAdapter(
             boolean justFolders,
             boolean onlyAvailableOffline,
@@ -150,6 +234,9 @@ public class FileListListAdapter extends BaseAdapter implements ListAdapter {
 
         if (mFiles != null && mFiles.size() > position) {
             file = mFiles.get(position);
+            if (mThumbnailsPrefetcher != null) {
+                mThumbnailsPrefetcher.onPositionBound(mFiles, position);
+            }
         }
 
         // Find out which layout should be displayed
@@ -186,6 +273,10 @@ public class FileListListAdapter extends BaseAdapter implements ListAdapter {
             }
         }
 
+        if (parent instanceof AbsListView) {
+            mListView = new WeakReference<>((AbsListView) parent);
+        }
+
         if (file != null) {
             final ImageView localStateView = view.findViewById(R.id.localFileIndicator);
             final ImageView fileIcon = view.findViewById(R.id.thumbnail);
@@ -248,7 +339,17 @@ public class FileListListAdapter extends BaseAdapter implements ListAdapter {
             }
 
             // For all Views
-            setIconPinAcordingToFilesLocalState(localStateView, file);
+            final int localStateIconId = getLocalStateIconId(file);
+            setIconPinAcordingToFilesLocalState(localStateView, localStateIconId);
+
+            BoundRow boundRow = mBoundRows.get(view);
+            if (boundRow == null) {
+                boundRow = new BoundRow();
+                mBoundRows.put(view, boundRow);
+            }
+            boundRow.mPosition = position;
+            boundRow.mFileId = file.getFileId();
+            boundRow.mLocalStateIconId = localStateIconId;
 
             final ImageView checkBoxV = view.findViewById(R.id.custom_checkbox);
             checkBoxV.setVisibility(View.GONE);
@@ -278,9 +379,9 @@ public class FileListListAdapter extends BaseAdapter implements ListAdapter {
                                 file.isSharedWithMe() || file.isSharedWithSharee(),
                                 file.isSharedViaLink()));
             } else {
-                if (file.isImage() && file.getRemoteId() != null) {
+                if (ThumbnailsCacheManager.hasThumbnail(file) && file.getRemoteId() != null) {
                     // Thumbnail in Cache?
-                    Bitmap thumbnail = ThumbnailsCacheManager.getBitmapFromDiskCache(
+                    Bitmap thumbnail = ThumbnailsCacheManager.getBitmapFromMemoryCache(
                             String.valueOf(file.getRemoteId())
                     );
                     if (thumbnail != null && !file.needsUpdateThumbnail()) {
@@ -302,7 +403,7 @@ public class FileListListAdapter extends BaseAdapter implements ListAdapter {
                                             task
                                     );
                             fileIcon.setImageDrawable(asyncDrawable);
-                            task.execute(file);
+                            task.executeOnExecutor(ThumbnailsCacheManager.THUMBNAILS_EXECUTOR, file);
                         }
                     }
 
@@ -321,9 +422,21 @@ public class FileListListAdapter extends BaseAdapter implements ListAdapter {
         return view;
     }
 
-    private void setIconPinAcordingToFilesLocalState(ImageView localStateView, OCFile file) {
+    private void setIconPinAcordingToFilesLocalState(ImageView localStateView, int localStateIconId) {
         // local state
         localStateView.bringToFront();
+        if (localStateIconId != 0) {
+            localStateView.setImageResource(localStateIconId);
+            localStateView.setVisibility(View.VISIBLE);
+        } else {
+            localStateView.setVisibility(View.INVISIBLE);
+        }
+    }
+
+    /**
+     * @return      Icon for the local state of the file, or 0 if it has none to show.
+     */
+    private int getLocalStateIconId(OCFile file) {
         final FileDownloaderBinder downloaderBinder =
                 mTransferServiceGetter.getFileDownloaderBinder();
         final FileUploaderBinder uploaderBinder =
@@ -331,34 +444,40 @@ public class FileListListAdapter extends BaseAdapter implements ListAdapter {
         final OperationsServiceBinder opsBinder =
                 mTransferServiceGetter.getOperationsServiceBinder();
 
-        localStateView.setVisibility(View.INVISIBLE);   // default first
-
         if (opsBinder != null && opsBinder.isSynchronizing(mAccount, file)) {
             //syncing
-            localStateView.setImageResource(R.drawable.sync_pin);
-            localStateView.setVisibility(View.VISIBLE);
+            return R.drawable.sync_pin;
         } else if (downloaderBinder != null && downloaderBinder.isDownloading(mAccount, file)) {
             // downloading
-            localStateView.setImageResource(R.drawable.sync_pin);
-            localStateView.setVisibility(View.VISIBLE);
+            return R.drawable.sync_pin;
         } else if (uploaderBinder != null && uploaderBinder.isUploading(mAccount, file)) {
             // uploading
-            localStateView.setImageResource(R.drawable.sync_pin);
-            localStateView.setVisibility(View.VISIBLE);
+            return R.drawable.sync_pin;
         } else if (file.getEtagInConflict() != null) {
             // conflict
-            localStateView.setImageResource(R.drawable.error_pin);
-            localStateView.setVisibility(View.VISIBLE);
+            return R.drawable.error_pin;
         } else {
+            int localStateIconId = 0;
             if (file.isDown()) {
-                localStateView.setVisibility(View.VISIBLE);
-                localStateView.setImageResource(R.drawable.downloaded_pin);
+                localStateIconId = R.drawable.downloaded_pin;
             }
 
             if (file.isAvailableOffline()) {
-                localStateView.setVisibility(View.VISIBLE);
-                localStateView.setImageResource(R.drawable.offline_available_pin);
+                localStateIconId = R.drawable.offline_available_pin;
             }
+            return localStateIconId;
+        }
+    }
+
+    /**
+     * Releases the work bound to a row out of the screen: thumbnails pending to generate for it are
+     * cancelled, and their decoding buffers go back to the bitmap pool earlier.
+     */
+    @Override
+    public void onMovedToScrapHeap(View view) {
+        ImageView fileIcon = view.findViewById(R.id.thumbnail);
+        if (fileIcon != null) {
+            ThumbnailsCacheManager.cancelPotentialThumbnailWork(null, fileIcon);
         }
     }
 
@@ -380,55 +499,206 @@ public class FileListListAdapter extends BaseAdapter implements ListAdapter {
     /**
      * Change the adapted directory for a new one
      *
+     * The content of the folder is loaded in the background; the files shown are replaced when done.
+     *
      * @param folder                New folder to adapt. Can be NULL, meaning
      *                              "no content to adapt".
      * @param updatedStorageManager Optional updated storage manager; used to replace
      *                              mStorageManager if is different (and not NULL)
      */
     public void swapDirectory(OCFile folder, FileDataStorageManager updatedStorageManager) {
+        swapDirectory(folder, updatedStorageManager, null);
+    }
+
+    /**
+     * Change the adapted directory for a new one, and run a callback once its files are shown.
+     *
+     * The callback is kept until the files of the folder are applied to the list, even if other loads of the
+     * same folder start meanwhile; it's discarded if other folder is swapped in before.
+     *
+     * @param folder                New folder to adapt. Can be NULL, meaning
+     *                              "no content to adapt".
+     * @param updatedStorageManager Optional updated storage manager; used to replace
+     *                              mStorageManager if is different (and not NULL)
+     * @param onShown               Run in the main thread after the files of the folder are applied to the
+     *                              list, to restore a position in it; null if nothing to do.
+     */
+    public void swapDirectory(OCFile folder, FileDataStorageManager updatedStorageManager, Runnable onShown) {
+        long folderId = (folder != null) ? folder.getFileId() : -1;
+        if (onShown != null || folderId != mOnFolderShownId) {
+            mOnFolderShown = onShown;
+            mOnFolderShownId = (onShown != null) ? folderId : -1;
+        }
+
         if (updatedStorageManager != null && updatedStorageManager != mStorageManager) {
             mStorageManager = updatedStorageManager;
             mAccount = AccountUtils.getCurrentOwnCloudAccount(mContext);
+            if (mThumbnailsPrefetcher != null) {
+                mThumbnailsPrefetcher.cancel();
+            }
+            mThumbnailsPrefetcher = (mAccount != null) ?
+                    new ThumbnailsPrefetcher(mContext, mAccount, mStorageManager) : null;
+
+        } else if (mThumbnailsPrefetcher != null) {
+            mThumbnailsPrefetcher.cancel();
         }
 
-        if (mStorageManager != null) {
-            if (mOnlyAvailableOffline && (folder.equals(updatedStorageManager.getFileByPath(OCFile.ROOT_PATH)) ||
-                    !folder.isAvailableOffline())) {
-                mImmutableFilesList = updatedStorageManager.getAvailableOfflineFilesFromCurrentAccount();
+        final FileDataStorageManager storageManager = mStorageManager;
+        final int sortOrder = FileStorageUtils.mSortOrderFileDisp;
+        final boolean sortAscending = FileStorageUtils.mSortAscendingFileDisp;
+        loadFiles(latestSnapshot -> {
+            if (storageManager == null || folder == null) {
+                return FolderSnapshot.EMPTY;
+            }
+            return FolderSnapshot.load(
+                    storageManager, folder, mOnlyAvailableOffline, mJustFolders, sortOrder, sortAscending
+            );
+        });
+    }
+
+    public void setOnFilesUpdatedListener(OnFilesUpdatedListener listener) {
+        mOnFilesUpdatedListener = listener;
+    }
+
+    /**
+     * Replaces the files shown with a new snapshot, loaded in the background and filtered with the current
+     * search. The files of the same folder are diffed against the shown ones, in the background too.
+     *
+     * Only the last job started is applied; the results of previous ones not applied yet are discarded.
+     *
+     * @param loader    Loader of the new snapshot.
+     */
+    private void loadFiles(final SnapshotLoader loader) {
+        final int generation = ++mPublishedGeneration;
+        final String query = mSearchQuery;
+        final long oldFolderId = mSnapshot.getFolderId();
+        // never modified, only replaced
+        final List<OCFile> oldFiles = (mFiles != null) ? mFiles : Collections.<OCFile>emptyList();
+
+        sLoadExecutor.execute(() -> {
+            final FolderSnapshot snapshot = loader.load(mLatestSnapshot);
+            mLatestSnapshot = snapshot;
+            final FolderSnapshot.SearchResult searchResult = snapshot.search(query, mLatestSearchResult);
+            mLatestSearchResult = searchResult;
+            final List<OCFile> newFiles = searchResult.getFiles();
+            final DiffUtil.DiffResult result;
+            if (snapshot.getFolderId() == oldFolderId && !oldFiles.isEmpty() && !newFiles.isEmpty()) {
+                result = DiffUtil.calculateDiff(new FilesDiffCallback(oldFiles, newFiles));
             } else {
-                mImmutableFilesList = mStorageManager.getFolderContent(folder, mOnlyAvailableOffline);
+                result = null;
             }
+            mHandler.post(() -> {
+                if (generation == mPublishedGeneration) {
+                    applySnapshot(snapshot, newFiles, result);
+                }
+            });
+        });
+    }
 
-            mFiles = mImmutableFilesList;
+    /**
+     * @param snapshot  New snapshot.
+     * @param files     Files of the snapshot matching the current search.
+     * @param result    Differences between the files shown and the new ones, or null if unknown.
+     */
+    private void applySnapshot(FolderSnapshot snapshot, List<OCFile> files, DiffUtil.DiffResult result) {
+        final boolean folderChanged = (snapshot.getFolderId() != mSnapshot.getFolderId());
+        mSnapshot = snapshot;
+        mFiles = new Vector<>(files);
+
+        AbsListView list = mListView.get();
+        if (result == null || list == null || list.getAdapter() == null) {
+            notifyDataSetChanged();
+            if (folderChanged && list != null) {
+                list.setSelection(0);
+            }
+            notifyFilesUpdated();
+            return;
+        }
 
-            if (mJustFolders) {
-                mFiles = getFolders(mFiles);
+        final BitSet changedPositions = new BitSet();
+        final boolean[] structureChanged = {false};
+        result.dispatchUpdatesTo(new ListUpdateCallback() {
+            @Override
+            public void onInserted(int position, int count) {
+                structureChanged[0] = true;
             }
-        } else {
-            mFiles = null;
+
+            @Override
+            public void onRemoved(int position, int count) {
+                structureChanged[0] = true;
+            }
+
+            @Override
+            public void onMoved(int fromPosition, int toPosition) {
+                structureChanged[0] = true;
+            }
+
+            @Override
+            public void onChanged(int position, int count, Object payload) {
+                changedPositions.set(position, position + count);
+            }
+        });
+
+        if (structureChanged[0]) {
+            // keep the first visible file in its place; ids are stable, so checked files are kept too
+            int firstPosition = list.getFirstVisiblePosition();
+            View firstChild = list.getChildAt(0);
+            int top = (firstChild != null) ? firstChild.getTop() : 0;
+            int newFirstPosition = (firstPosition < result.getOldListSize()) ?
+                    result.convertOldPositionToNew(firstPosition) : DiffUtil.DiffResult.NO_POSITION;
+
+            notifyDataSetChanged();
+
+            if (newFirstPosition != DiffUtil.DiffResult.NO_POSITION && newFirstPosition != firstPosition) {
+                if (list instanceof ListView) {
+                    ((ListView) list).setSelectionFromTop(newFirstPosition, top);
+                } else {
+                    list.setSelection(newFirstPosition);
+                }
+            }
+
+        } else if (!rebindVisibleRows(list, changedPositions)) {
+            notifyDataSetChanged();
         }
 
-        mFiles = FileStorageUtils.sortFolder(mFiles, FileStorageUtils.mSortOrderFileDisp,
-                FileStorageUtils.mSortAscendingFileDisp);
-        notifyDataSetChanged();
+        notifyFilesUpdated();
     }
 
     /**
-     * Filter for getting only the folders
+     * Binds again the visible rows whose file or local state changed, in place.
      *
-     * @param files Collection of files to filter
-     * @return Folders in the input
+     * @return      'false' if some row could not be bound in place, and the whole list must be bound.
      */
-    public Vector<OCFile> getFolders(Vector<OCFile> files) {
-        Vector<OCFile> ret = new Vector<>();
-        OCFile current;
-        for (int i = 0; i < files.size(); i++) {
-            current = files.get(i);
-            if (current.isFolder()) {
-                ret.add(current);
+    private boolean rebindVisibleRows(AbsListView list, BitSet changedPositions) {
+        for (int i = 0; i < list.getChildCount(); i++) {
+            View child = list.getChildAt(i);
+            BoundRow boundRow = mBoundRows.get(child);
+            if (boundRow == null || boundRow.mPosition >= mFiles.size()) {
+                continue;   // footer
+            }
+            OCFile file = mFiles.get(boundRow.mPosition);
+            if (changedPositions.get(boundRow.mPosition) ||
+                    boundRow.mFileId != file.getFileId() ||
+                    boundRow.mLocalStateIconId != getLocalStateIconId(file)) {
+                if (getView(boundRow.mPosition, child, list) != child) {
+                    // other type of view needed
+                    return false;
+                }
             }
         }
-        return ret;
+        return true;
+    }
+
+    private void notifyFilesUpdated() {
+        if (mOnFilesUpdatedListener != null) {
+            mOnFilesUpdatedListener.onFilesUpdated();
+        }
+        if (mOnFolderShown != null && mSnapshot.getFolderId() == mOnFolderShownId) {
+            Runnable onFolderShown = mOnFolderShown;
+            mOnFolderShown = null;
+            mOnFolderShownId = -1;
+            onFolderShown.run();
+        }
     }
 
     public void setSortOrder(Integer order, boolean ascending) {
@@ -439,9 +709,7 @@ public class FileListListAdapter extends BaseAdapter implements ListAdapter {
         FileStorageUtils.mSortOrderFileDisp = order;
         FileStorageUtils.mSortAscendingFileDisp = ascending;
 
-        mFiles = FileStorageUtils.sortFolder(mFiles, FileStorageUtils.mSortOrderFileDisp,
-                FileStorageUtils.mSortAscendingFileDisp);
-        notifyDataSetChanged();
+        loadFiles(latestSnapshot -> latestSnapshot.sort(order, ascending));
     }
 
     public ArrayList<OCFile> getCheckedItems(AbsListView parentList) {
@@ -459,40 +727,72 @@ public class FileListListAdapter extends BaseAdapter implements ListAdapter {
         return files;
     }
 
+    /**
+     * Shows only the files whose name contains a query.
+     *
+     * The search is done in the background, once the query stops changing for {@link #SEARCH_DELAY_MS}.
+     *
+     * @param query     Text to search in the names of the files.
+     */
     public void filterBySearch(String query) {
-        query = query.toLowerCase();
+        mSearchQuery = FileStorageUtils.normalizeForSearch(query);
+        mHandler.removeCallbacks(mSearchRunnable);
+        mHandler.postDelayed(mSearchRunnable, SEARCH_DELAY_MS);
+    }
 
-        clearFilterBySearch();
+    public void clearFilterBySearch() {
+        mHandler.removeCallbacks(mSearchRunnable);
+        if (mSearchQuery != null) {
+            mSearchQuery = null;
+            loadFiles(latestSnapshot -> latestSnapshot);
+        }
+    }
 
-        List<OCFile> filteredList = new ArrayList<>();
+    /**
+     * Compares files by id, and their contents by the fields shown in the rows.
+     */
+    private static class FilesDiffCallback extends DiffUtil.Callback {
 
-        // Gather files matching the query
-        for (OCFile fileToAdd : mFiles) {
-            final String nameOfTheFileToAdd = fileToAdd.getFileName().toLowerCase();
-            if (nameOfTheFileToAdd.contains(query)) {
-                filteredList.add(fileToAdd);
-            }
+        private final List<OCFile> mOldFiles;
+        private final List<OCFile> mNewFiles;
+
+        FilesDiffCallback(List<OCFile> oldFiles, List<OCFile> newFiles) {
+            mOldFiles = oldFiles;
+            mNewFiles = newFiles;
         }
 
-        // Remove not matching files from the filelist
-        for (int i = mFiles.size() - 1; i >= 0; i--) {
-            if (!filteredList.contains(mFiles.get(i))) {
-                mFiles.remove(i);
-            }
+        @Override
+        public int getOldListSize() {
+            return mOldFiles.size();
         }
 
-        // Add matching files to the filelist
-        for (int i = 0; i < filteredList.size(); i++) {
-            if (!mFiles.contains(filteredList.get(i))) {
-                mFiles.add(i, filteredList.get(i));
-            }
+        @Override
+        public int getNewListSize() {
+            return mNewFiles.size();
         }
 
-        notifyDataSetChanged();
-    }
+        @Override
+        public boolean areItemsTheSame(int oldItemPosition, int newItemPosition) {
+            return mOldFiles.get(oldItemPosition).getFileId() == mNewFiles.get(newItemPosition).getFileId();
+        }
 
-    public void clearFilterBySearch() {
-        mFiles = (Vector<OCFile>) mImmutableFilesList.clone();
-        notifyDataSetChanged();
+        @Override
+        public boolean areContentsTheSame(int oldItemPosition, int newItemPosition) {
+            OCFile oldFile = mOldFiles.get(oldItemPosition);
+            OCFile newFile = mNewFiles.get(newItemPosition);
+            return TextUtils.equals(oldFile.getFileName(), newFile.getFileName()) &&
+                    TextUtils.equals(oldFile.getRemotePath(), newFile.getRemotePath()) &&
+                    TextUtils.equals(oldFile.getMimetype(), newFile.getMimetype()) &&
+                    TextUtils.equals(oldFile.getEtag(), newFile.getEtag()) &&
+                    TextUtils.equals(oldFile.getEtagInConflict(), newFile.getEtagInConflict()) &&
+                    TextUtils.equals(oldFile.getStoragePath(), newFile.getStoragePath()) &&
+                    oldFile.getFileLength() == newFile.getFileLength() &&
+                    oldFile.getModificationTimestamp() == newFile.getModificationTimestamp() &&
+                    oldFile.isAvailableOffline() == newFile.isAvailableOffline() &&
+                    oldFile.isSharedViaLink() == newFile.isSharedViaLink() &&
+                    oldFile.isSharedWithSharee() == newFile.isSharedWithSharee() &&
+                    oldFile.isSharedWithMe() == newFile.isSharedWithMe() &&
+                    oldFile.needsUpdateThumbnail() == newFile.needsUpdateThumbnail();
+        }
     }
-}
\ No newline at end of file
+}
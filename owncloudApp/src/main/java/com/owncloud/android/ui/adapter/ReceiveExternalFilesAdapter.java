@@ -121,10 +121,10 @@ public class ReceiveExternalFilesAdapter extends BaseAdapter implements ListAdap
         fileSizeSeparatorV.setVisibility(View.VISIBLE);
         fileSizeV.setText(DisplayUtils.bytesToHumanReadable(file.getFileLength(), mContext));
 
-        // get Thumbnail if file is image
-        if (file.isImage() && file.getRemoteId() != null) {
+        // get Thumbnail if file is image, or a downloaded video or PDF
+        if (ThumbnailsCacheManager.hasThumbnail(file) && file.getRemoteId() != null) {
             // Thumbnail in Cache?
-            Bitmap thumbnail = ThumbnailsCacheManager.getBitmapFromDiskCache(
+            Bitmap thumbnail = ThumbnailsCacheManager.getBitmapFromMemoryCache(
                     String.valueOf(file.getRemoteId())
             );
             if (thumbnail != null && !file.needsUpdateThumbnail()) {
@@ -144,7 +144,7 @@ public class ReceiveExternalFilesAdapter extends BaseAdapter implements ListAdap
                             task
                     );
                     fileIcon.setImageDrawable(asyncDrawable);
-                    task.execute(file);
+                    task.executeOnExecutor(ThumbnailsCacheManager.THUMBNAILS_EXECUTOR, file);
                 }
             }
         } else {
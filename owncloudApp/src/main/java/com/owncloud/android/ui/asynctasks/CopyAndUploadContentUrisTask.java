@@ -24,6 +24,7 @@ package com.owncloud.android.ui.asynctasks;
 import android.accounts.Account;
 import android.content.ContentResolver;
 import android.content.Context;
+import android.content.res.AssetFileDescriptor;
 import android.net.Uri;
 import android.os.AsyncTask;
 import android.widget.Toast;
@@ -33,11 +34,11 @@ import com.owncloud.android.files.services.TransferRequester;
 import com.owncloud.android.lib.common.operations.RemoteOperationResult.ResultCode;
 import com.owncloud.android.lib.common.utils.Log_OC;
 import com.owncloud.android.operations.UploadFileOperation;
+import com.owncloud.android.utils.FileCopyUtils;
 import com.owncloud.android.utils.FileStorageUtils;
 
 import java.io.File;
 import java.io.FileNotFoundException;
-import java.io.FileOutputStream;
 import java.io.InputStream;
 import java.lang.ref.WeakReference;
 
@@ -127,7 +128,6 @@ public class CopyAndUploadContentUrisTask extends AsyncTask<Object, Void, Result
         ResultCode result = ResultCode.UNKNOWN_ERROR;
 
         InputStream inputStream = null;
-        FileOutputStream outputStream = null;
         String fullTempPath = null;
         Uri currentUri = null;
 
@@ -145,20 +145,16 @@ public class CopyAndUploadContentUrisTask extends AsyncTask<Object, Void, Result
                 currentRemotePath = remotePaths[i];
 
                 fullTempPath = FileStorageUtils.getTemporalPath(account.name) + currentRemotePath;
-                inputStream = leakedContentResolver.openInputStream(currentUri);
-                File cacheFile = new File(fullTempPath);
-                File tempDir = cacheFile.getParentFile();
-                if (!tempDir.exists()) {
-                    tempDir.mkdirs();
-                }
-                cacheFile.createNewFile();
-                outputStream = new FileOutputStream(fullTempPath);
-                byte[] buffer = new byte[4096];
-
-                int count;
-                while ((count = inputStream.read(buffer)) > 0) {
-                    outputStream.write(buffer, 0, count);
+                AssetFileDescriptor assetFileDescriptor =
+                        leakedContentResolver.openAssetFileDescriptor(currentUri, "r");
+                if (assetFileDescriptor == null) {
+                    throw new FileNotFoundException("Provider returned no descriptor for " + currentUri);
                 }
+                inputStream = assetFileDescriptor.createInputStream();
+                // the asset may be a region of a bigger file
+                FileCopyUtils.copy(inputStream, assetFileDescriptor.getLength(), new File(fullTempPath), null, null);
+                inputStream.close();
+                inputStream = null;
 
                 requestUpload(
                         account,
@@ -208,14 +204,6 @@ public class CopyAndUploadContentUrisTask extends AsyncTask<Object, Void, Result
                     Log_OC.w(TAG, "Ignoring exception of inputStream closure");
                 }
             }
-
-            if (outputStream != null) {
-                try {
-                    outputStream.close();
-                } catch (Exception e) {
-                    Log_OC.w(TAG, "Ignoring exception of outStream closure");
-                }
-            }
         }
 
         return result;
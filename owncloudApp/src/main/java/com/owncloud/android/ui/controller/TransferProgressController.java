@@ -132,13 +132,14 @@ public class TransferProgressController implements OnDatatransferProgressListene
 
     /**
      * Implementation of {@link OnDatatransferProgressListener}, called from {@link FileUploader} or
-     * {@link FileDownloader} to report the trasnfer progress of a monitored file.
+     * {@link FileDownloader} in the main thread to report the trasnfer progress of a monitored file.
      *
      * @param progressRate              Bytes transferred from the previous call.
      * @param totalTransferredSoFar     Total of bytes transferred so far.
      * @param totalToTransfer           Total of bytes to transfer.
      * @param filename                  Name of the transferred file.
      */
+    @UiThread
     @Override
     public void onTransferProgress(
             long progressRate,
@@ -147,19 +148,11 @@ public class TransferProgressController implements OnDatatransferProgressListene
             String filename
     ) {
         if (mProgressBar != null) {
-            final int percent = (int) (100.0 * ((double) totalTransferredSoFar) / ((double) totalToTransfer));
+            int percent = (int) (100.0 * ((double) totalTransferredSoFar) / ((double) totalToTransfer));
             if (percent != mLastPercent) {
-                mProgressBar.post(
-                        new Runnable() {
-                            @Override
-                            public void run() {
-                                mProgressBar.setVisibility(View.VISIBLE);
-                                mProgressBar.setIndeterminate(false);
-                                mProgressBar.setProgress(percent);
-                                mProgressBar.invalidate();
-                            }
-                        }
-                );
+                mProgressBar.setVisibility(View.VISIBLE);
+                mProgressBar.setIndeterminate(false);
+                mProgressBar.setProgress(percent);
             }
             mLastPercent = percent;
         }
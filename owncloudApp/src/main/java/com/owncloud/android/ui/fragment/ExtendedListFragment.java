@@ -97,6 +97,11 @@ public class ExtendedListFragment extends Fragment
     protected void setListAdapter(ListAdapter listAdapter) {
         mAdapter = listAdapter;
         mCurrentListView.setAdapter(listAdapter);
+        mCurrentListView.setRecyclerListener(
+                (listAdapter instanceof AbsListView.RecyclerListener) ?
+                        (AbsListView.RecyclerListener) listAdapter :
+                        null
+        );
         mCurrentListView.invalidateViews();
     }
 
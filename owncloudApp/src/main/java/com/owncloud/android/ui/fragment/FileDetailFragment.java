@@ -452,9 +452,9 @@ public class FileDetailFragment extends FileFragment implements OnClickListener
             Bitmap thumbnail;
             iv.setTag(file.getFileId());
 
-            if (file.isImage()) {
+            if (ThumbnailsCacheManager.hasThumbnail(file)) {
                 String tagId = String.valueOf(file.getRemoteId());
-                thumbnail = ThumbnailsCacheManager.getBitmapFromDiskCache(tagId);
+                thumbnail = ThumbnailsCacheManager.getBitmapFromMemoryCache(tagId);
 
                 if (thumbnail != null && !file.needsUpdateThumbnail()) {
                     iv.setImageBitmap(thumbnail);
@@ -475,7 +475,7 @@ public class FileDetailFragment extends FileFragment implements OnClickListener
                                         task
                                 );
                         iv.setImageDrawable(asyncDrawable);
-                        task.execute(file);
+                        task.executeOnExecutor(ThumbnailsCacheManager.THUMBNAILS_EXECUTOR, file);
                     }
                 }
             } else {
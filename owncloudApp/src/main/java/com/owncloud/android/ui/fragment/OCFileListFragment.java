@@ -231,6 +231,7 @@ public class OCFileListFragment extends ExtendedListFragment implements
                 getActivity(),
                 mContainerActivity
         );
+        mFileListAdapter.setOnFilesUpdatedListener(this::updateFooter);
         setListAdapter(mFileListAdapter);
 
         Bundle args = getArguments();
@@ -701,13 +702,15 @@ public class OCFileListFragment extends ExtendedListFragment implements
 
             mFile = parentDir;
 
-            listDirectoryWidthAnimationUp(mFile);
+            // restore index and top position once the files of the parent folder are shown
+            listDirectoryWidthAnimationUp(mFile, () -> {
+                if (isAdded()) {
+                    restoreIndexAndTopPosition();
+                }
+            });
 
             onRefresh(false);
 
-            // restore index and top position
-            restoreIndexAndTopPosition();
-
         }   // else - should never happen now
 
         return moveCount;
@@ -738,12 +741,12 @@ public class OCFileListFragment extends ExtendedListFragment implements
                 && powerManager.isPowerSaveMode();
     }
 
-    private void listDirectoryWidthAnimationUp(final OCFile file) {
+    private void listDirectoryWidthAnimationUp(final OCFile file, final Runnable onShown) {
         if (isInPowerSaveMode()) {
-            listDirectory(file);
+            listDirectory(file, onShown);
         } else {
             if (getListView().getVisibility() == View.GONE) {
-                listDirectory(file);
+                listDirectory(file, onShown);
                 Animation fadeInFront = AnimationUtils.loadAnimation(getContext(), R.anim.dir_fadein_front);
                 getListView().startAnimation(fadeInFront);
                 return;
@@ -755,7 +758,7 @@ public class OCFileListFragment extends ExtendedListFragment implements
             // This is a ugly hack for getting rid of the "ArrayOutOfBound" exception we get when we
             // call listDirectory() from the Animation callback
             eventHandler.postDelayed(() -> {
-                listDirectory(file);
+                listDirectory(file, onShown);
                 Animation fadeInFront = AnimationUtils.loadAnimation(getContext(), R.anim.dir_fadein_front);
                 getListView().startAnimation(fadeInFront);
             }, getResources().getInteger(R.integer.folder_animation_duration));
@@ -977,6 +980,16 @@ public class OCFileListFragment extends ExtendedListFragment implements
      * @param directory File to be listed
      */
     public void listDirectory(OCFile directory) {
+        listDirectory(directory, null);
+    }
+
+    /**
+     * Same as {@link #listDirectory(OCFile)}, running a callback once the files of the directory are shown.
+     *
+     * @param directory File to be listed
+     * @param onShown   Run once the files of the directory are shown; null if nothing to do.
+     */
+    private void listDirectory(OCFile directory, Runnable onShown) {
         FileDataStorageManager storageManager = mContainerActivity.getStorageManager();
         if (storageManager != null) {
 
@@ -1003,7 +1016,7 @@ public class OCFileListFragment extends ExtendedListFragment implements
                 directory = storageManager.getFileByPath(OCFile.ROOT_PATH);
             }
 
-            mFileListAdapter.swapDirectory(directory, storageManager);
+            mFileListAdapter.swapDirectory(directory, storageManager, onShown);
             if (mFile == null || !mFile.equals(directory)) {
                 mCurrentListView.setSelection(0);
             }
@@ -1015,6 +1028,27 @@ public class OCFileListFragment extends ExtendedListFragment implements
 
     private void updateLayout() {
         if (!isShowingJustFolders()) {
+            // decide grid vs list view
+            OwnCloudVersion version = AccountUtils.getServerVersion(
+                    ((FileActivity) mContainerActivity).getAccount());
+            if (version != null && version.supportsRemoteThumbnails() &&
+                    isGridViewPreferred(mFile)) {
+                switchToGridView();
+            } else {
+                switchToListView();
+            }
+
+            updateFooter();
+        }
+        invalidateActionMode();
+        clearLocalSearchView();
+    }
+
+    /**
+     * Sets the footer text with the amount of files and folders in the list.
+     */
+    private void updateFooter() {
+        if (!isShowingJustFolders() && isAdded()) {
             int filesCount = 0, foldersCount = 0;
             int count = mFileListAdapter.getCount();
             OCFile file;
@@ -1029,21 +1063,9 @@ public class OCFileListFragment extends ExtendedListFragment implements
                 }
             }
 
-            // decide grid vs list view
-            OwnCloudVersion version = AccountUtils.getServerVersion(
-                    ((FileActivity) mContainerActivity).getAccount());
-            if (version != null && version.supportsRemoteThumbnails() &&
-                    isGridViewPreferred(mFile)) {
-                switchToGridView();
-            } else {
-                switchToListView();
-            }
-
             // set footer text
             setFooterText(generateFooterText(filesCount, foldersCount));
         }
-        invalidateActionMode();
-        clearLocalSearchView();
     }
 
     private void invalidateActionMode() {
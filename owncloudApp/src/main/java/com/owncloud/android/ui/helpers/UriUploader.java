@@ -24,6 +24,7 @@ import android.os.Parcelable;
 
 import androidx.fragment.app.FragmentManager;
 import com.owncloud.android.R;
+import com.owncloud.android.files.UploadSource;
 import com.owncloud.android.files.services.FileUploader;
 import com.owncloud.android.files.services.TransferRequester;
 import com.owncloud.android.lib.common.utils.Log_OC;
@@ -43,8 +44,12 @@ import java.util.List;
  * URIs with scheme file:// do not require any previous processing, their path is sent to {@link FileUploader}
  * to find the source file.
  *
- * URIs with scheme content:// are handling assuming that file is in private storage owned by a different app,
- * and that persistency permission is not granted. Due to this, contents of the file are temporary copied by
+ * URIs with scheme content:// that can be opened again once the caller Activity is gone (see
+ * {@link UploadSource#canBeReopened(android.content.Context, Uri)}) are passed as they are to {@link FileUploader},
+ * that reads them straight from their provider.
+ *
+ * Other URIs with scheme content:// are handling assuming that file is in private storage owned by a different
+ * app, and that persistency permission is not granted. Due to this, contents of the file are temporary copied by
  * the OC app, and then passed {@link FileUploader}.
  */
 public class UriUploader {
@@ -95,7 +100,9 @@ public class UriUploader {
             List<Uri> contentUris = new ArrayList<>();
             List<String> contentRemotePaths = new ArrayList<>();
 
-            int schemeFileCounter = 0;
+            List<String> localPaths = new ArrayList<>();
+            List<String> remotePaths = new ArrayList<>();
+            List<String> mimeTypes = new ArrayList<>();
 
             for (Parcelable sourceStream : mUrisToUpload) {
                 Uri sourceUri = (Uri) sourceStream;
@@ -107,23 +114,40 @@ public class UriUploader {
                     String remotePath = mUploadPath + displayName;
 
                     if (ContentResolver.SCHEME_CONTENT.equals(sourceUri.getScheme())) {
-                        contentUris.add(sourceUri);
-                        contentRemotePaths.add(remotePath);
+                        if (UploadSource.canBeReopened(mActivity, sourceUri)) {
+                            /// content: uris that can be opened later are read straight by {@link FileUploader}
+                            localPaths.add(sourceUri.toString());
+                            remotePaths.add(remotePath);
+                            mimeTypes.add(mActivity.getContentResolver().getType(sourceUri));
+
+                        } else {
+                            contentUris.add(sourceUri);
+                            contentRemotePaths.add(remotePath);
+                        }
 
                     } else if (ContentResolver.SCHEME_FILE.equals(sourceUri.getScheme())) {
                         /// file: uris should point to a local file, should be safe let FileUploader handle them
-                        requestUpload(sourceUri.getPath(), remotePath);
-                        schemeFileCounter++;
+                        localPaths.add(sourceUri.getPath());
+                        remotePaths.add(remotePath);
+                        mimeTypes.add(null);
                     }
                 }
             }
 
+            if (!localPaths.isEmpty()) {
+                requestUploads(
+                        localPaths.toArray(new String[localPaths.size()]),
+                        remotePaths.toArray(new String[remotePaths.size()]),
+                        mimeTypes.toArray(new String[mimeTypes.size()])
+                );
+            }
+
             if (!contentUris.isEmpty()) {
                 /// content: uris will be copied to temporary files before calling {@link FileUploader}
                 copyThenUpload(contentUris.toArray(new Uri[contentUris.size()]),
                         contentRemotePaths.toArray(new String[contentRemotePaths.size()]));
 
-            } else if (schemeFileCounter == 0) {
+            } else if (localPaths.isEmpty()) {
                 mCode = UriUploaderResultCode.ERROR_NO_FILE_TO_UPLOAD;
 
             }
@@ -146,25 +170,27 @@ public class UriUploader {
     }
 
     /**
-     * Requests the upload of a file in the local file system to {@link FileUploader} service.
+     * Requests the upload of files in the local file system to {@link FileUploader} service, all at once.
      *
-     * The original file will be left in its original location, and will not be duplicated.
-     * As a side effect, the user will see the file as not uploaded when accesses to the OC app.
+     * The original files will be left in their original location, and will not be duplicated.
+     * As a side effect, the user will see the files as not uploaded when accesses to the OC app.
      * This is considered as acceptable, since when a file is shared from another app to OC,
      * the usual workflow will go back to the original app.
      *
-     * @param localPath     Absolute path in the local file system to the file to upload.
-     * @param remotePath    Absolute path in the current OC account to set to the uploaded file.
+     * @param localPaths    Absolute paths in the local file system to the files to upload, or content:// URIs
+     *                      that can be opened by {@link FileUploader}.
+     * @param remotePaths   Absolute paths in the current OC account to set to the uploaded files.
+     * @param mimeTypes     MIME types of the files; null items will be detected from file name.
      */
-    private void requestUpload(String localPath, String remotePath) {
+    private void requestUploads(String[] localPaths, String[] remotePaths, String[] mimeTypes) {
         TransferRequester requester = new TransferRequester();
-        requester.uploadNewFile(
+        requester.uploadNewFiles(
                 mActivity,
                 mAccount,
-                localPath,
-                remotePath,
+                localPaths,
+                remotePaths,
+                mimeTypes,
                 mBehaviour,
-                null,       // MIME type will be detected from file name
                 false,      // do not create parent folder if not existent
                 UploadFileOperation.CREATED_BY_USER
         );
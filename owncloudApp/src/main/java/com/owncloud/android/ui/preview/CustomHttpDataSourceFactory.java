@@ -20,15 +20,19 @@ package com.owncloud.android.ui.preview;
  */
 
 import com.google.android.exoplayer2.upstream.DataSource;
+import com.google.android.exoplayer2.upstream.DataSpec;
 import com.google.android.exoplayer2.upstream.DefaultHttpDataSource;
 import com.google.android.exoplayer2.upstream.HttpDataSource.BaseFactory;
 import com.google.android.exoplayer2.upstream.HttpDataSource.Factory;
 import com.google.android.exoplayer2.upstream.TransferListener;
+import com.owncloud.android.files.services.BandwidthGovernor;
 
 import java.util.Map;
 
 /**
  * A {@link Factory} that produces {@link CustomHttpDataSourceFactory} instances.
+ *
+ * Data read by the produced sources is charged to the download budget of {@link BandwidthGovernor}.
  */
 public final class CustomHttpDataSourceFactory extends BaseFactory {
 
@@ -85,7 +89,7 @@ public final class CustomHttpDataSourceFactory extends BaseFactory {
     @Override
     protected DefaultHttpDataSource createDataSourceInternal() {
         DefaultHttpDataSource defaultHttpDataSource = new DefaultHttpDataSource(userAgent, null,
-                listener, connectTimeoutMillis,
+                new ThrottledTransferListener(listener), connectTimeoutMillis,
                 readTimeoutMillis, allowCrossProtocolRedirects);
 
         // Set headers in http data source
@@ -95,5 +99,39 @@ public final class CustomHttpDataSourceFactory extends BaseFactory {
 
         return defaultHttpDataSource;
     }
-}
 
+    /**
+     * Forwards events to the listener passed to the factory, blocking the loading thread after every read
+     * while the download budget is exhausted.
+     */
+    private static class ThrottledTransferListener implements TransferListener<DataSource> {
+
+        private final TransferListener<? super DataSource> mListener;
+
+        ThrottledTransferListener(TransferListener<? super DataSource> listener) {
+            mListener = listener;
+        }
+
+        @Override
+        public void onTransferStart(DataSource source, DataSpec dataSpec) {
+            if (mListener != null) {
+                mListener.onTransferStart(source, dataSpec);
+            }
+        }
+
+        @Override
+        public void onBytesTransferred(DataSource source, int bytesTransferred) {
+            if (mListener != null) {
+                mListener.onBytesTransferred(source, bytesTransferred);
+            }
+            BandwidthGovernor.getInstance().onBytesDownloaded(bytesTransferred);
+        }
+
+        @Override
+        public void onTransferEnd(DataSource source) {
+            if (mListener != null) {
+                mListener.onTransferEnd(source);
+            }
+        }
+    }
+}
@@ -7,7 +7,6 @@ import android.content.Context;
 import android.net.Uri;
 import android.os.AsyncTask;
 import android.os.Handler;
-import android.util.Base64;
 
 import com.google.android.exoplayer2.extractor.DefaultExtractorsFactory;
 import com.google.android.exoplayer2.source.ExtractorMediaSource;
@@ -19,15 +18,11 @@ import com.google.android.exoplayer2.upstream.DefaultHttpDataSourceFactory;
 import com.google.android.exoplayer2.upstream.HttpDataSource;
 import com.owncloud.android.MainApp;
 import com.owncloud.android.datamodel.OCFile;
+import com.owncloud.android.files.services.BandwidthGovernor;
 import com.owncloud.android.lib.common.accounts.AccountUtils;
-import com.owncloud.android.lib.common.authentication.OwnCloudBasicCredentials;
-import com.owncloud.android.lib.common.authentication.OwnCloudBearerCredentials;
-import com.owncloud.android.lib.common.authentication.OwnCloudCredentials;
-import com.owncloud.android.lib.common.authentication.OwnCloudSamlSsoCredentials;
 
 import java.io.IOException;
 import java.lang.ref.WeakReference;
-import java.util.HashMap;
 import java.util.Map;
 
 /**
@@ -116,27 +111,12 @@ public class PrepareVideoPlayerAsyncTask extends AsyncTask<Object, Void, MediaSo
 
         } else {
 
+            BandwidthGovernor.getInstance().updateLimits(mContext);
+
             try {
 
-                OwnCloudCredentials credentials = AccountUtils.
-                        getCredentialsForAccount(MainApp.getAppContext(), account);
-
-                String login = credentials.getUsername();
-                String password = credentials.getAuthToken();
-
-                Map<String, String> params = new HashMap<String, String>(1);
-
-                if (credentials instanceof OwnCloudBasicCredentials) { // Basic auth
-                    String cred = login + ":" + password;
-                    String auth = "Basic " + Base64.encodeToString(cred.getBytes(), Base64.URL_SAFE);
-                    params.put("Authorization", auth);
-                } else if (credentials instanceof OwnCloudSamlSsoCredentials) { // SAML SSO auth
-                    params.put("Cookie", password);
-                } else if (credentials instanceof OwnCloudBearerCredentials) { // OAuth
-                    String bearerToken = credentials.getAuthToken();
-                    String auth = "Bearer " + bearerToken;
-                    params.put("Authorization", auth);
-                }
+                Map<String, String> params = com.owncloud.android.authentication.AccountUtils.
+                        getAuthorizationHeaders(MainApp.getAppContext(), account);
 
                 return new CustomHttpDataSourceFactory(MainApp.getUserAgent(),
                         bandwidthMeter, params);
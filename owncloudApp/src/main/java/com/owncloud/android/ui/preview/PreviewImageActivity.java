@@ -342,6 +342,8 @@ public class PreviewImageActivity extends FileActivity implements
             // Call to reset image zoom to initial state
             ((PreviewImagePagerAdapter) mViewPager.getAdapter()).resetZoom();
 
+            mPreviewImagePagerAdapter.prefetchThumbnailsAround(position);
+
         } else {
             // too soon! ; selection of page (first image) was faster than binding of FileOperationsService;
             // wait a bit!
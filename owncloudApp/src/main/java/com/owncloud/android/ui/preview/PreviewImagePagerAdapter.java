@@ -26,8 +26,10 @@ import android.view.ViewGroup;
 import androidx.fragment.app.Fragment;
 import androidx.fragment.app.FragmentManager;
 import androidx.fragment.app.FragmentStatePagerAdapter;
+import com.owncloud.android.MainApp;
 import com.owncloud.android.datamodel.FileDataStorageManager;
 import com.owncloud.android.datamodel.OCFile;
+import com.owncloud.android.datamodel.ThumbnailsPrefetcher;
 import com.owncloud.android.files.services.FileDownloader;
 import com.owncloud.android.lib.common.utils.Log_OC;
 import com.owncloud.android.ui.fragment.FileFragment;
@@ -54,6 +56,7 @@ public class PreviewImagePagerAdapter extends FragmentStatePagerAdapter {
     private Set<Integer> mObsoletePositions;
     private Set<Integer> mDownloadErrors;
     private FileDataStorageManager mStorageManager;
+    private ThumbnailsPrefetcher mThumbnailsPrefetcher;
 
     private Map<Integer, FileFragment> mCachedFragments;
 
@@ -91,6 +94,19 @@ public class PreviewImagePagerAdapter extends FragmentStatePagerAdapter {
         mDownloadErrors = new HashSet<>();
         //mFragmentManager = fragmentManager;
         mCachedFragments = new HashMap<>();
+        mThumbnailsPrefetcher = new ThumbnailsPrefetcher(
+                MainApp.getAppContext(), account, storageManager
+        );
+    }
+
+    /**
+     * Warms the thumbnails of the images around a position, so that they are ready for neighbour pages and
+     * for the list of files when the preview is closed.
+     *
+     * @param position      Position of the selected page.
+     */
+    public void prefetchThumbnailsAround(int position) {
+        mThumbnailsPrefetcher.onPageSelected(mImageFiles, position);
     }
 
     /**
@@ -0,0 +1,212 @@
+/**
+ * ownCloud Android client application
+ * <p>
+ * Copyright (C) 2019 ownCloud GmbH.
+ * <p>
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 2,
+ * as published by the Free Software Foundation.
+ * <p>
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * <p>
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.owncloud.android.utils;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.Color;
+
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Pool of mutable bitmaps no longer in use, to be reused for new bitmaps instead of allocating them.
+ *
+ * Bitmaps are kept in buckets by the power of two above their allocation size; a request is served by
+ * any pooled bitmap with enough allocation, reconfigured to the requested dimensions, or passed to
+ * {@link BitmapFactory.Options#inBitmap} when decoding.
+ *
+ * Only bitmaps that nobody references anymore may be put in the pool; never those kept in caches or
+ * bound to views.
+ */
+public class BitmapPool {
+
+    private static final int MAX_POOL_BYTES = 4 * 1024 * 1024;
+
+    /**
+     * Max ratio between the allocation of a pooled bitmap and the size requested to reuse it.
+     */
+    private static final int MAX_WASTE_FACTOR = 4;
+
+    private static final BitmapPool sInstance = new BitmapPool(MAX_POOL_BYTES);
+
+    private final int mMaxBytes;
+    private int mBytes = 0;
+    private final TreeMap<Integer, ArrayDeque<Bitmap>> mBuckets = new TreeMap<>();
+
+    private final AtomicLong mAllocations = new AtomicLong();
+    private final AtomicLong mReuses = new AtomicLong();
+
+    public static BitmapPool getInstance() {
+        return sInstance;
+    }
+
+    private BitmapPool(int maxBytes) {
+        mMaxBytes = maxBytes;
+    }
+
+    /**
+     * Gets a bitmap with the given dimensions, reused from the pool if possible. Its content is cleared.
+     *
+     * @param width     Width in pixels.
+     * @param height    Height in pixels.
+     * @param config    Pixel configuration.
+     * @return          Mutable bitmap.
+     */
+    public Bitmap get(int width, int height, Bitmap.Config config) {
+        Bitmap bitmap = take(width * height * bytesPerPixel(config));
+        if (bitmap != null) {
+            try {
+                bitmap.reconfigure(width, height, config);
+                bitmap.eraseColor(Color.TRANSPARENT);
+                mReuses.incrementAndGet();
+                return bitmap;
+            } catch (IllegalArgumentException e) {
+                // not reusable, let GC take it
+            }
+        }
+        mAllocations.incrementAndGet();
+        return Bitmap.createBitmap(width, height, config);
+    }
+
+    /**
+     * Sets in decoding options a pooled bitmap to decode into, if any fits the size the decoded bitmap
+     * will have. Bounds of the image must have been decoded before into the options, and the sample
+     * size set.
+     *
+     * @param options   Options for the decode.
+     */
+    public void setInBitmap(BitmapFactory.Options options) {
+        int sampleSize = Math.max(1, options.inSampleSize);
+        int width = (options.outWidth + sampleSize - 1) / sampleSize;
+        int height = (options.outHeight + sampleSize - 1) / sampleSize;
+        Bitmap.Config config = (options.inPreferredConfig != null) ?
+                options.inPreferredConfig : Bitmap.Config.ARGB_8888;
+
+        options.inMutable = true;
+        options.inBitmap = take(width * height * bytesPerPixel(config));
+        if (options.inBitmap != null) {
+            mReuses.incrementAndGet();
+        } else {
+            mAllocations.incrementAndGet();
+        }
+    }
+
+    /**
+     * Returns a bitmap to the pool. Ignored if it can't be reused.
+     *
+     * @param bitmap    Bitmap not referenced by anybody else.
+     */
+    public synchronized void put(Bitmap bitmap) {
+        if (bitmap == null || bitmap.isRecycled() || !bitmap.isMutable()) {
+            return;
+        }
+        int size = bitmap.getAllocationByteCount();
+        if (size > mMaxBytes) {
+            return;
+        }
+        while (mBytes + size > mMaxBytes) {
+            evictLargest();
+        }
+        int bucket = bucketOf(size);
+        ArrayDeque<Bitmap> bitmaps = mBuckets.get(bucket);
+        if (bitmaps == null) {
+            bitmaps = new ArrayDeque<>();
+            mBuckets.put(bucket, bitmaps);
+        }
+        bitmaps.push(bitmap);
+        mBytes += size;
+    }
+
+    /**
+     * Empties the pool, for instance when memory is low.
+     */
+    public synchronized void clear() {
+        mBuckets.clear();
+        mBytes = 0;
+    }
+
+    /**
+     * @return  Bitmaps allocated because no pooled bitmap could be reused.
+     */
+    public long getAllocations() {
+        return mAllocations.get();
+    }
+
+    /**
+     * @return  Bitmaps reused from the pool.
+     */
+    public long getReuses() {
+        return mReuses.get();
+    }
+
+    private synchronized Bitmap take(int bytes) {
+        if (bytes <= 0) {
+            return null;
+        }
+        int maxBucket = bucketOf(bytes) * MAX_WASTE_FACTOR;
+        for (Map.Entry<Integer, ArrayDeque<Bitmap>> entry : mBuckets.tailMap(bucketOf(bytes)).entrySet()) {
+            if (entry.getKey() > maxBucket) {
+                break;
+            }
+            Iterator<Bitmap> iterator = entry.getValue().iterator();
+            while (iterator.hasNext()) {
+                Bitmap bitmap = iterator.next();
+                if (bitmap.getAllocationByteCount() >= bytes) {
+                    iterator.remove();
+                    mBytes -= bitmap.getAllocationByteCount();
+                    if (entry.getValue().isEmpty()) {
+                        mBuckets.remove(entry.getKey());
+                    }
+                    return bitmap;
+                }
+            }
+        }
+        return null;
+    }
+
+    private void evictLargest() {
+        Map.Entry<Integer, ArrayDeque<Bitmap>> largest = mBuckets.lastEntry();
+        Bitmap bitmap = largest.getValue().pollLast();
+        mBytes -= bitmap.getAllocationByteCount();
+        if (largest.getValue().isEmpty()) {
+            mBuckets.remove(largest.getKey());
+        }
+    }
+
+    private static int bucketOf(int bytes) {
+        int bucket = Integer.highestOneBit(bytes);
+        return (bucket == bytes) ? bucket : bucket << 1;
+    }
+
+    private static int bytesPerPixel(Bitmap.Config config) {
+        switch (config) {
+            case ALPHA_8:
+                return 1;
+            case RGB_565:
+            case ARGB_4444:
+                return 2;
+            default:
+                return 4;
+        }
+    }
+}
@@ -23,9 +23,16 @@ import android.content.res.Resources;
 import android.graphics.Bitmap;
 import android.graphics.BitmapFactory;
 import android.graphics.BitmapFactory.Options;
+import android.graphics.Canvas;
+import android.graphics.Color;
 import android.graphics.Matrix;
+import android.graphics.Paint;
+import android.graphics.pdf.PdfRenderer;
 import android.media.ExifInterface;
+import android.media.MediaMetadataRetriever;
 import android.net.Uri;
+import android.os.Build;
+import android.os.ParcelFileDescriptor;
 import android.webkit.MimeTypeMap;
 
 import androidx.core.graphics.drawable.RoundedBitmapDrawable;
@@ -34,6 +41,7 @@ import com.owncloud.android.authentication.AccountUtils;
 import com.owncloud.android.lib.common.utils.Log_OC;
 
 import java.io.File;
+import java.io.IOException;
 import java.io.UnsupportedEncodingException;
 import java.math.BigInteger;
 import java.security.MessageDigest;
@@ -47,6 +55,12 @@ public class BitmapUtils {
 
     private static final String TAG = BitmapUtils.class.toString();
 
+    /**
+     * Offset of the frame used as thumbnail of videos long enough, in microseconds; the very first frames
+     * are often black.
+     */
+    private static final long VIDEO_FRAME_OFFSET_US = 1000 * 1000;
+
     /**
      * Decodes a bitmap from a file containing it minimizing the memory use, known that the bitmap
      * will be drawn in a surface of reqWidth x reqHeight
@@ -54,7 +68,7 @@ public class BitmapUtils {
      * @param srcPath       Absolute path to the file containing the image.
      * @param reqWidth      Width of the surface where the Bitmap will be drawn on, in pixels.
      * @param reqHeight     Height of the surface where the Bitmap will be drawn on, in pixels.
-     * @return
+     * @return              Mutable bitmap, reusing one from {@link BitmapPool} if possible.
      */
     public static Bitmap decodeSampledBitmapFromFile(String srcPath, int reqWidth, int reqHeight) {
 
@@ -65,9 +79,6 @@ public class BitmapUtils {
         if (android.os.Build.VERSION.SDK_INT >= android.os.Build.VERSION_CODES.GINGERBREAD_MR1) {
             options.inPreferQualityOverSpeed = false;
         }
-        if (android.os.Build.VERSION.SDK_INT >= android.os.Build.VERSION_CODES.HONEYCOMB) {
-            options.inMutable = false;
-        }
 
         // make a false load of the bitmap to get its dimensions
         options.inJustDecodeBounds = true;
@@ -77,9 +88,81 @@ public class BitmapUtils {
         // calculate factor to subsample the bitmap
         options.inSampleSize = calculateSampleFactor(options, reqWidth, reqHeight);
 
-        // decode bitmap with inSampleSize set
+        // decode bitmap with inSampleSize set, into a pooled bitmap if any fits
         options.inJustDecodeBounds = false;
-        return BitmapFactory.decodeFile(srcPath, options);
+        BitmapPool.getInstance().setInBitmap(options);
+        try {
+            return BitmapFactory.decodeFile(srcPath, options);
+
+        } catch (IllegalArgumentException e) {
+            // pooled bitmap not valid for this image after all
+            BitmapPool.getInstance().put(options.inBitmap);
+            options.inBitmap = null;
+            return BitmapFactory.decodeFile(srcPath, options);
+        }
+    }
+
+    /**
+     * Decodes a bitmap from its encoded bytes minimizing the memory use, known that the bitmap will be
+     * drawn in a surface of reqWidth x reqHeight. Bounds are read first, so that the image is decoded
+     * straight to the smallest sample covering the surface.
+     *
+     * @param data          Encoded image.
+     * @param reqWidth      Width of the surface where the Bitmap will be drawn on, in pixels.
+     * @param reqHeight     Height of the surface where the Bitmap will be drawn on, in pixels.
+     * @return              Mutable bitmap, reusing one from {@link BitmapPool} if possible, or null if
+     *                      the data could not be decoded.
+     */
+    public static Bitmap decodeSampledBitmapFromByteArray(byte[] data, int reqWidth, int reqHeight) {
+        final Options options = new Options();
+        options.inJustDecodeBounds = true;
+        BitmapFactory.decodeByteArray(data, 0, data.length, options);
+        if (options.outWidth <= 0 || options.outHeight <= 0) {
+            return null;
+        }
+
+        options.inSampleSize = calculateSampleFactor(options, reqWidth, reqHeight);
+        options.inJustDecodeBounds = false;
+        BitmapPool.getInstance().setInBitmap(options);
+        try {
+            return BitmapFactory.decodeByteArray(data, 0, data.length, options);
+
+        } catch (IllegalArgumentException e) {
+            BitmapPool.getInstance().put(options.inBitmap);
+            options.inBitmap = null;
+            return BitmapFactory.decodeByteArray(data, 0, data.length, options);
+        }
+    }
+
+    /**
+     * Scales and center-crops a bitmap to the given dimensions, like
+     * {@link android.media.ThumbnailUtils#extractThumbnail(Bitmap, int, int)}, but drawing into a bitmap
+     * from {@link BitmapPool}. The source bitmap is returned to the pool.
+     *
+     * @param source        Bitmap to scale; must not be referenced anywhere else.
+     * @param width         Width of the result, in pixels.
+     * @param height        Height of the result, in pixels.
+     * @return              Scaled bitmap, or the source if it already had the requested dimensions.
+     */
+    public static Bitmap extractThumbnail(Bitmap source, int width, int height) {
+        if (source == null) {
+            return null;
+        }
+        if (source.getWidth() == width && source.getHeight() == height) {
+            return source;
+        }
+        float scale = Math.max((float) width / source.getWidth(), (float) height / source.getHeight());
+        Matrix matrix = new Matrix();
+        matrix.setScale(scale, scale);
+        matrix.postTranslate(
+                (width - source.getWidth() * scale) / 2f,
+                (height - source.getHeight() * scale) / 2f
+        );
+
+        Bitmap thumbnail = BitmapPool.getInstance().get(width, height, Bitmap.Config.ARGB_8888);
+        new Canvas(thumbnail).drawBitmap(source, matrix, new Paint(Paint.FILTER_BITMAP_FLAG));
+        BitmapPool.getInstance().put(source);
+        return thumbnail;
     }
 
     /**
@@ -116,7 +199,98 @@ public class BitmapUtils {
     }
 
     /**
-     * Rotate bitmap according to EXIF orientation. 
+     * Gets a frame of a video to use as its thumbnail: the one at {@link #VIDEO_FRAME_OFFSET_US}, or in
+     * the middle of the video if shorter.
+     *
+     * @param srcPath       Absolute path to the video file.
+     * @param reqSize       Size of the thumbnail, in pixels; the frame is scaled down to cover it where
+     *                      supported.
+     * @return              Frame, or null if the video could not be read.
+     */
+    public static Bitmap decodeVideoFrame(String srcPath, int reqSize) {
+        MediaMetadataRetriever retriever = new MediaMetadataRetriever();
+        try {
+            retriever.setDataSource(srcPath);
+            long offsetUs = VIDEO_FRAME_OFFSET_US;
+            String duration = retriever.extractMetadata(MediaMetadataRetriever.METADATA_KEY_DURATION);
+            if (duration != null) {
+                // duration is in milliseconds
+                offsetUs = Math.min(offsetUs, Long.parseLong(duration) * 1000 / 2);
+            }
+
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O_MR1) {
+                return retriever.getScaledFrameAtTime(
+                        offsetUs, MediaMetadataRetriever.OPTION_CLOSEST_SYNC, reqSize, reqSize
+                );
+            }
+            return retriever.getFrameAtTime(offsetUs, MediaMetadataRetriever.OPTION_CLOSEST_SYNC);
+
+        } catch (RuntimeException e) {
+            Log_OC.w(TAG, "Could not get a frame from video " + srcPath, e);
+            return null;
+
+        } finally {
+            retriever.release();
+        }
+    }
+
+    /**
+     * Renders the first page of a PDF document to use as its thumbnail, over a white background.
+     *
+     * @param srcPath       Absolute path to the PDF file.
+     * @param reqSize       Size of the thumbnail, in pixels; the page is rendered to cover it.
+     * @return              Rendered page, or null if the document could not be read or the device does not
+     *                      support rendering PDF documents.
+     */
+    public static Bitmap renderPdfFirstPage(String srcPath, int reqSize) {
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.LOLLIPOP) {
+            return null;
+        }
+        ParcelFileDescriptor descriptor = null;
+        PdfRenderer renderer = null;
+        try {
+            descriptor = ParcelFileDescriptor.open(new File(srcPath), ParcelFileDescriptor.MODE_READ_ONLY);
+            renderer = new PdfRenderer(descriptor);
+            if (renderer.getPageCount() == 0) {
+                return null;
+            }
+            PdfRenderer.Page page = renderer.openPage(0);
+            try {
+                float scale = (float) reqSize / Math.min(page.getWidth(), page.getHeight());
+                Bitmap bitmap = BitmapPool.getInstance().get(
+                        Math.max(1, Math.round(page.getWidth() * scale)),
+                        Math.max(1, Math.round(page.getHeight() * scale)),
+                        Bitmap.Config.ARGB_8888
+                );
+                bitmap.eraseColor(Color.WHITE);
+                page.render(bitmap, null, null, PdfRenderer.Page.RENDER_MODE_FOR_DISPLAY);
+                return bitmap;
+
+            } finally {
+                page.close();
+            }
+
+        } catch (IOException | RuntimeException e) {
+            Log_OC.w(TAG, "Could not render PDF document " + srcPath, e);
+            return null;
+
+        } finally {
+            if (renderer != null) {
+                renderer.close();
+            }
+            if (descriptor != null) {
+                try {
+                    descriptor.close();
+                } catch (IOException e) {
+                    // nothing to do
+                }
+            }
+        }
+    }
+
+    /**
+     * Rotate bitmap according to EXIF orientation. The received bitmap is returned to {@link BitmapPool}
+     * if rotated.
      * Cf. http://www.daveperrett.com/articles/2012/07/28/exif-orientation-handling-is-a-ghetto/ 
      * @param bitmap Bitmap to be rotated
      * @param storagePath Path to source file of bitmap. Needed for EXIF information.
@@ -156,11 +330,16 @@ public class BitmapUtils {
                     break;
             }
 
+            if (matrix.isIdentity()) {
+                // mutable bitmaps would be copied anyway
+                return bitmap;
+            }
+
             // Rotate the bitmap
             final Bitmap resultBitmap = Bitmap.createBitmap(bitmap, 0, 0,
                     bitmap.getWidth(), bitmap.getHeight(), matrix, true);
             if (resultBitmap != bitmap) {
-                bitmap.recycle();
+                BitmapPool.getInstance().put(bitmap);
             }
             return resultBitmap;
         } catch (Exception exception) {
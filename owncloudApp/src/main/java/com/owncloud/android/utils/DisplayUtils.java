@@ -328,7 +328,7 @@ public class DisplayUtils {
                     new ThumbnailsCacheManager.GetAvatarTask(
                             displayView, account, displayRadius, fetchFromServer
                     );
-            task.execute();
+            task.executeOnExecutor(ThumbnailsCacheManager.THUMBNAILS_EXECUTOR);
         }
     }
 }
@@ -0,0 +1,242 @@
+/**
+ * ownCloud Android client application
+ * <p>
+ * Copyright (C) 2019 ownCloud GmbH.
+ * <p>
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 2,
+ * as published by the Free Software Foundation.
+ * <p>
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * <p>
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.owncloud.android.utils;
+
+import android.content.res.AssetFileDescriptor;
+
+import com.owncloud.android.lib.common.utils.Log_OC;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Static methods to copy and move files in the local file system.
+ *
+ * Contents are moved by the kernel with {@link FileChannel#transferTo(long, long, java.nio.channels.WritableByteChannel)}
+ * whenever the source is a regular file, instead of being pumped through a heap buffer. Sources that
+ * can not be mapped to a file channel (pipes, sockets, remote providers) fall back to a stream copy.
+ */
+public class FileCopyUtils {
+
+    private static final String TAG = FileCopyUtils.class.getSimpleName();
+
+    /**
+     * Max bytes transferred per call to the kernel; bounds how often progress is reported
+     * and how long a cancellation request waits to be noticed.
+     */
+    private static final long TRANSFER_SLICE_SIZE = 8 * 1024 * 1024;
+
+    /**
+     * Buffer size for sources without a file channel.
+     */
+    private static final int STREAM_BUFFER_SIZE = 64 * 1024;
+
+    /**
+     * Copies a local file into a new location, creating its parent folder if needed.
+     *
+     * @param source            File to copy.
+     * @param target            Location of the copy; overwritten if already exists.
+     * @param listener          Listener to report progress to; may be null.
+     * @param cancellation      Flag checked between slices to abort the copy; may be null.
+     * @return                  'true' if the copy was completed, 'false' if it was cancelled; the target
+     *                          is deleted if the copy was not completed.
+     * @throws IOException      If the copy could not be completed.
+     */
+    public static boolean copy(File source, File target, OnCopyProgressListener listener,
+                               AtomicBoolean cancellation) throws IOException {
+        InputStream in = new FileInputStream(source);
+        try {
+            return copy(in, source.length(), target, listener, cancellation);
+        } finally {
+            close(in);
+        }
+    }
+
+    /**
+     * Copies the contents of a stream into a local file, creating its parent folder if needed.
+     *
+     * Streams backed by a regular file, such as those returned by
+     * {@link android.content.ContentResolver#openInputStream(android.net.Uri)} for most document
+     * providers, are copied through their file channel. Streams of an {@link AssetFileDescriptor} may
+     * cover only a region of their file, so they are copied through their channel only if the length of
+     * the region is given.
+     *
+     * The stream is not closed.
+     *
+     * @param in                Stream to copy.
+     * @param totalToCopy       Bytes to copy from the current position of the stream, as the length of an
+     *                          {@link AssetFileDescriptor}; -1 to copy until the end of the stream.
+     * @param target            Location of the copy; overwritten if already exists.
+     * @param listener          Listener to report progress to; may be null.
+     * @param cancellation      Flag checked between slices to abort the copy; may be null.
+     * @return                  'true' if the copy was completed, 'false' if it was cancelled; the target
+     *                          is deleted if the copy was not completed.
+     * @throws IOException      If the copy could not be completed.
+     */
+    public static boolean copy(InputStream in, long totalToCopy, File target, OnCopyProgressListener listener,
+                               AtomicBoolean cancellation) throws IOException {
+        File targetFolder = target.getParentFile();
+        if (targetFolder != null && !targetFolder.exists() && !targetFolder.mkdirs()) {
+            throw new IOException("Unexpected error: parent directory could not be created");
+        }
+
+        boolean copied = false;
+        FileOutputStream out = new FileOutputStream(target);
+        try {
+            FileChannel inChannel = null;
+            long length = -1;
+            if (in instanceof FileInputStream) {
+                inChannel = ((FileInputStream) in).getChannel();
+                if (inChannel.size() > 0) {
+                    long available = inChannel.size() - inChannel.position();
+                    if (totalToCopy >= 0) {
+                        length = Math.min(totalToCopy, available);
+                    } else if (!(in instanceof AssetFileDescriptor.AutoCloseInputStream)) {
+                        length = available;
+                    }   // else, the region of the asset may end before the end of the file
+                }   // else, pipes and sockets report no size; transferTo would copy nothing
+                if (length < 0) {
+                    inChannel = null;
+                }
+            }
+            if (inChannel != null) {
+                copied = copyChannel(inChannel, length, out.getChannel(), listener, cancellation);
+            } else {
+                copied = copyStream(in, totalToCopy, out, listener, cancellation);
+            }
+            return copied;
+
+        } finally {
+            close(out);
+            if (!copied && !target.delete()) {
+                Log_OC.w(TAG, "Incomplete copy could not be deleted from " + target.getAbsolutePath());
+            }
+        }
+    }
+
+    /**
+     * Moves a local file to a new location, creating its parent folder if needed.
+     *
+     * A plain rename is tried first, which is immediate when source and target are in the same
+     * volume. Otherwise, the file is copied and the source deleted.
+     *
+     * @param source            File to move.
+     * @param target            New location for the file.
+     * @param listener          Listener to report progress of a copy to; may be null.
+     * @param cancellation      Flag checked to abort a copy; may be null.
+     * @return                  'true' if the file was moved, 'false' if it was cancelled.
+     * @throws IOException      If the file could not be moved.
+     */
+    public static boolean move(File source, File target, OnCopyProgressListener listener,
+                               AtomicBoolean cancellation) throws IOException {
+        if (source.equals(target)) {
+            return true;
+        }
+        File targetFolder = target.getParentFile();
+        if (targetFolder != null && !targetFolder.exists() && !targetFolder.mkdirs()) {
+            throw new IOException("Unexpected error: parent directory could not be created");
+        }
+        if (source.renameTo(target)) {
+            return true;
+        }
+
+        Log_OC.d(TAG, "Rename of " + source.getAbsolutePath() + " failed, copying instead");
+        // incomplete copies are deleted
+        boolean copied = copy(source, target, listener, cancellation);
+        if (copied && !source.delete()) {
+            Log_OC.w(TAG, "Moved file could not be deleted from " + source.getAbsolutePath());
+        }
+        return copied;
+    }
+
+    private static boolean copyChannel(FileChannel in, long total, FileChannel out,
+                                       OnCopyProgressListener listener, AtomicBoolean cancellation)
+            throws IOException {
+        long start = in.position();
+        long copied = 0;
+        while (copied < total) {
+            if (isCancelled(cancellation)) {
+                return false;
+            }
+            long count = in.transferTo(start + copied, Math.min(TRANSFER_SLICE_SIZE, total - copied), out);
+            if (count <= 0) {
+                // source was truncated while copying
+                break;
+            }
+            copied += count;
+            if (listener != null) {
+                listener.onCopyProgress(copied, total);
+            }
+        }
+        return true;
+    }
+
+    private static boolean copyStream(InputStream in, long total, FileOutputStream out,
+                                      OnCopyProgressListener listener, AtomicBoolean cancellation)
+            throws IOException {
+        byte[] buffer = new byte[STREAM_BUFFER_SIZE];
+        long copied = 0;
+        while (total < 0 || copied < total) {
+            int toRead = (total < 0) ? buffer.length : (int) Math.min(buffer.length, total - copied);
+            int count = in.read(buffer, 0, toRead);
+            if (count < 0) {
+                break;
+            }
+            if (isCancelled(cancellation)) {
+                return false;
+            }
+            out.write(buffer, 0, count);
+            copied += count;
+            if (listener != null) {
+                listener.onCopyProgress(copied, total);
+            }
+        }
+        out.flush();
+        return true;
+    }
+
+    private static boolean isCancelled(AtomicBoolean cancellation) {
+        return cancellation != null && cancellation.get();
+    }
+
+    private static void close(Closeable closeable) {
+        try {
+            closeable.close();
+        } catch (IOException e) {
+            Log_OC.d(TAG, "Weird exception while closing stream (ignoring)", e);
+        }
+    }
+
+    /**
+     * Interface to receive progress of a copy.
+     */
+    public interface OnCopyProgressListener {
+        /**
+         * @param copiedSoFar       Bytes already copied.
+         * @param totalToCopy       Total bytes to copy, or -1 if unknown.
+         */
+        void onCopyProgress(long copiedSoFar, long totalToCopy);
+    }
+}
@@ -37,13 +37,19 @@ import com.owncloud.android.R;
 import com.owncloud.android.datamodel.OCFile;
 import com.owncloud.android.lib.common.utils.Log_OC;
 import com.owncloud.android.lib.resources.files.RemoteFile;
-import third_parties.daveKoeller.AlphanumComparator;
 
 import java.io.File;
+import java.text.Collator;
+import java.text.Normalizer;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.Comparator;
+import java.util.IdentityHashMap;
+import java.util.Locale;
+import java.util.Map;
 import java.util.Vector;
+import java.util.regex.Pattern;
 
 /**
  * Static methods to help in access to local file system.
@@ -61,6 +67,22 @@ public class FileStorageUtils {
     public static Integer mSortOrderUpload = SORT_DATE;
     public static Boolean mSortAscendingUpload = true;
 
+    private static final Pattern DIACRITICAL_MARKS = Pattern.compile("\\p{M}+");
+
+    /**
+     * Normalizes a file name, or a query on file names, so that searches ignore case and accents.
+     *
+     * @param name      File name or query.
+     * @return          Name in lower case, without diacritical marks.
+     */
+    public static String normalizeForSearch(String name) {
+        if (name == null) {
+            return null;
+        }
+        String decomposed = Normalizer.normalize(name, Normalizer.Form.NFD);
+        return DIACRITICAL_MARKS.matcher(decomposed).replaceAll("").toLowerCase(Locale.ROOT);
+    }
+
     /**
      * Get local storage path for all data of the app in public storages.
      */
@@ -223,9 +245,20 @@ public class FileStorageUtils {
      * Sorts all filenames, regarding last user decision
      */
     public static Vector<OCFile> sortFolder(Vector<OCFile> files, int sortOrder, boolean isAscending) {
+        return sortFolder(files, sortOrder, isAscending, null);
+    }
+
+    /**
+     * Sorts all filenames, regarding last user decision
+     *
+     * @param nameSortKeys  Keys to sort by name, from {@link #buildNameSortKeys(Collection)}; built here
+     *                      if null and needed.
+     */
+    public static Vector<OCFile> sortFolder(Vector<OCFile> files, int sortOrder, boolean isAscending,
+                                            Map<OCFile, NaturalSortKey> nameSortKeys) {
         switch (sortOrder) {
             case SORT_NAME:
-                files = FileStorageUtils.sortByName(files, isAscending);
+                files = FileStorageUtils.sortByName(files, isAscending, nameSortKeys);
                 break;
             case SORT_DATE:
                 files = FileStorageUtils.sortByDate(files, isAscending);
@@ -310,29 +343,56 @@ public class FileStorageUtils {
      * @param files files to sort
      */
     public static Vector<OCFile> sortByName(Vector<OCFile> files, boolean isAscending) {
-        final Integer val;
+        return sortByName(files, isAscending, null);
+    }
+
+    /**
+     * Sorts list by Name
+     *
+     * @param files         files to sort
+     * @param nameSortKeys  Keys of the files, from {@link #buildNameSortKeys(Collection)}; built here if null.
+     */
+    public static Vector<OCFile> sortByName(Vector<OCFile> files, boolean isAscending,
+                                            Map<OCFile, NaturalSortKey> nameSortKeys) {
+        final int val;
         if (isAscending) {
             val = 1;
         } else {
             val = -1;
         }
+        final Map<OCFile, NaturalSortKey> keys = (nameSortKeys != null) ? nameSortKeys : buildNameSortKeys(files);
 
         Collections.sort(files, new Comparator<OCFile>() {
             public int compare(OCFile o1, OCFile o2) {
                 if (o1.isFolder() && o2.isFolder()) {
-                    return val * new AlphanumComparator().compare(o1, o2);
+                    return val * keys.get(o1).compareTo(keys.get(o2));
                 } else if (o1.isFolder()) {
                     return -1;
                 } else if (o2.isFolder()) {
                     return 1;
                 }
-                return val * new AlphanumComparator().compare(o1, o2);
+                return val * keys.get(o1).compareTo(keys.get(o2));
             }
         });
 
         return files;
     }
 
+    /**
+     * Builds the keys to sort files by name, in the order of {@link third_parties.daveKoeller.AlphanumComparator}.
+     *
+     * @param files     Files to sort.
+     * @return          Key of every file; files are mapped by identity.
+     */
+    public static Map<OCFile, NaturalSortKey> buildNameSortKeys(Collection<OCFile> files) {
+        Collator collator = NaturalSortKey.newCollator();
+        Map<OCFile, NaturalSortKey> keys = new IdentityHashMap<>(files.size());
+        for (OCFile file : files) {
+            keys.put(file, new NaturalSortKey(file.getRemotePath().toLowerCase(), collator));
+        }
+        return keys;
+    }
+
     /**
      * Mimetype String of a file
      *
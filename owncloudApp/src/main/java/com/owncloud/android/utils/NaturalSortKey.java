@@ -0,0 +1,103 @@
+/**
+ * ownCloud Android client application
+ * <p>
+ * Copyright (C) 2019 ownCloud GmbH.
+ * <p>
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 2,
+ * as published by the Free Software Foundation.
+ * <p>
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * <p>
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.owncloud.android.utils;
+
+import java.text.CollationKey;
+import java.text.Collator;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Precomputed key to sort a string in natural order, the same order as
+ * {@link third_parties.daveKoeller.AlphanumComparator}: the string is split in chunks of digits and
+ * non-digits; chunks of digits are compared numerically, and the rest with a collator.
+ *
+ * Building the key does the chunking and collation once, so that comparing two keys is cheap; meant to sort
+ * many strings, building the key of each one once.
+ */
+public class NaturalSortKey implements Comparable<NaturalSortKey> {
+
+    private final String[] mChunks;
+    private final boolean[] mNumeric;
+    private final CollationKey[] mCollationKeys;
+    private final int mLength;
+
+    /**
+     * @param value         String to sort.
+     * @param collator      Collator for the non numeric chunks; not used after the constructor, so the same
+     *                      one can be used for all the keys built in a thread.
+     */
+    public NaturalSortKey(String value, Collator collator) {
+        List<String> chunks = new ArrayList<>();
+        int length = value.length();
+        int start = 0;
+        while (start < length) {
+            boolean numeric = isDigit(value.charAt(start));
+            int end = start + 1;
+            while (end < length && isDigit(value.charAt(end)) == numeric) {
+                end++;
+            }
+            chunks.add(value.substring(start, end));
+            start = end;
+        }
+
+        mChunks = chunks.toArray(new String[0]);
+        mNumeric = new boolean[mChunks.length];
+        mCollationKeys = new CollationKey[mChunks.length];
+        for (int i = 0; i < mChunks.length; i++) {
+            mNumeric[i] = isDigit(mChunks[i].charAt(0));
+            mCollationKeys[i] = collator.getCollationKey(mChunks[i]);
+        }
+        mLength = length;
+    }
+
+    /**
+     * @return      New collator with the strength used by {@link third_parties.daveKoeller.AlphanumComparator}.
+     */
+    public static Collator newCollator() {
+        Collator collator = Collator.getInstance();
+        collator.setStrength(Collator.PRIMARY);
+        return collator;
+    }
+
+    @Override
+    public int compareTo(NaturalSortKey another) {
+        int chunks = Math.min(mChunks.length, another.mChunks.length);
+        for (int i = 0; i < chunks; i++) {
+            int result;
+            if (mNumeric[i] && another.mNumeric[i]) {
+                // longer number is bigger; if equal length, the first different digit counts
+                result = mChunks[i].length() - another.mChunks[i].length();
+                if (result == 0) {
+                    result = mChunks[i].compareTo(another.mChunks[i]);
+                }
+            } else {
+                result = mCollationKeys[i].compareTo(another.mCollationKeys[i]);
+            }
+            if (result != 0) {
+                return result;
+            }
+        }
+        return mLength - another.mLength;
+    }
+
+    private static boolean isDigit(char ch) {
+        return ch >= '0' && ch <= '9';
+    }
+}
@@ -43,6 +43,13 @@ import java.util.Comparator;
  * Collections.sort(your list, new AlphanumComparator());
  */
 public class AlphanumComparator implements Comparator<OCFile> {
+    private final Collator collator;
+
+    public AlphanumComparator() {
+        collator = Collator.getInstance();
+        collator.setStrength(Collator.PRIMARY);
+    }
+
     private final boolean isDigit(char ch) {
         return ch >= 48 && ch <= 57;
     }
@@ -109,8 +116,6 @@ public class AlphanumComparator implements Comparator<OCFile> {
                     }
                 }
             } else {
-                Collator collator = Collator.getInstance();
-                collator.setStrength(Collator.PRIMARY);
                 result = collator.compare(thisChunk, thatChunk);
             }
 
@@ -0,0 +1,144 @@
+/**
+ * ownCloud Android client application
+ * <p>
+ * Copyright (C) 2019 ownCloud GmbH.
+ * <p>
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 2,
+ * as published by the Free Software Foundation.
+ * <p>
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * <p>
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.owncloud.android.utils;
+
+import com.owncloud.android.datamodel.OCFile;
+import org.junit.Assume;
+import org.junit.Test;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import third_parties.daveKoeller.AlphanumComparator;
+
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Map;
+import java.util.Random;
+import java.util.Vector;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Microbenchmark of the sorts of the list of files: by name, date and size, over plain lists of
+ * {@link OCFile}s of a folder, in random order.
+ *
+ * The sort by name is measured building the keys, as when a folder is loaded, and with keys already built,
+ * as when a loaded folder is sorted again; the former sort with {@link AlphanumComparator} is measured as
+ * reference. Every measure includes the copy of the list to sort.
+ *
+ * Skipped in the usual test runs; run with "./gradlew owncloudApp:testDebugUnitTest -Pbenchmark
+ * --tests '*FileSortBenchmark'".
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FileSortBenchmark {
+
+    private static final String[] NAME_PATTERNS = {
+            "IMG_2019%04d.jpg", "Report %d final.pdf", "Scan %d.PDF", "notes-%d.txt", "Invoice_%05d.odt",
+            "Vacaciones en la montaña %d.mp4", "Übersicht %d.xlsx", "track%d.mp3"
+    };
+
+    private static final int FOLDERS_FRACTION = 10;
+
+    @Param({"1000", "20000"})
+    public int mFilesCount;
+
+    private Vector<OCFile> mFiles;
+    private Map<OCFile, NaturalSortKey> mNameSortKeys;
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(42);
+        mFiles = new Vector<>(mFilesCount);
+        for (int i = 0; i < mFilesCount; i++) {
+            String name = String.format(
+                    NAME_PATTERNS[random.nextInt(NAME_PATTERNS.length)],
+                    random.nextInt(mFilesCount * 10)
+            );
+            OCFile file = new OCFile("/Documents/" + i + "/" + name);
+            if (random.nextInt(FOLDERS_FRACTION) == 0) {
+                file.setMimetype("DIR");
+            } else {
+                file.setFileLength(random.nextInt(Integer.MAX_VALUE));
+            }
+            file.setModificationTimestamp(1500000000000L + random.nextInt(Integer.MAX_VALUE));
+            mFiles.add(file);
+        }
+        Collections.shuffle(mFiles, random);
+        mNameSortKeys = FileStorageUtils.buildNameSortKeys(mFiles);
+    }
+
+    @Benchmark
+    public Vector<OCFile> sortByName() {
+        return FileStorageUtils.sortByName(new Vector<>(mFiles), true);
+    }
+
+    @Benchmark
+    public Vector<OCFile> sortByNameWithBuiltKeys() {
+        return FileStorageUtils.sortByName(new Vector<>(mFiles), true, mNameSortKeys);
+    }
+
+    @Benchmark
+    public Vector<OCFile> sortByNameWithComparator() {
+        Vector<OCFile> files = new Vector<>(mFiles);
+        Collections.sort(files, new Comparator<OCFile>() {
+            public int compare(OCFile o1, OCFile o2) {
+                if (o1.isFolder() && o2.isFolder()) {
+                    return new AlphanumComparator().compare(o1, o2);
+                } else if (o1.isFolder()) {
+                    return -1;
+                } else if (o2.isFolder()) {
+                    return 1;
+                }
+                return new AlphanumComparator().compare(o1, o2);
+            }
+        });
+        return files;
+    }
+
+    @Benchmark
+    public Vector<OCFile> sortByDate() {
+        return FileStorageUtils.sortByDate(new Vector<>(mFiles), true);
+    }
+
+    @Benchmark
+    public Vector<OCFile> sortBySize() {
+        return FileStorageUtils.sortBySize(new Vector<>(mFiles), true);
+    }
+
+    @Test
+    public void runBenchmarks() throws RunnerException {
+        Assume.assumeTrue("Run with -Pbenchmark", Boolean.getBoolean("benchmark"));
+        new Runner(new OptionsBuilder().include(FileSortBenchmark.class.getSimpleName()).build()).run();
+    }
+}
@@ -0,0 +1,156 @@
+/**
+ * ownCloud Android client application
+ * <p>
+ * Copyright (C) 2019 ownCloud GmbH.
+ * <p>
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 2,
+ * as published by the Free Software Foundation.
+ * <p>
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * <p>
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.owncloud.android.utils;
+
+import com.owncloud.android.datamodel.OCFile;
+import org.junit.Test;
+import third_parties.daveKoeller.AlphanumComparator;
+
+import java.text.Collator;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Vector;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+/**
+ * Local unit test checking that {@link NaturalSortKey} sorts in the same order as {@link AlphanumComparator},
+ * which it replaces to sort files by name.
+ */
+public class NaturalSortKeyTest {
+
+    private static final List<String> NAMES = Arrays.asList(
+            // numeric chunks
+            "/file2", "/file10", "/file1", "/file100", "/2", "/10", "/1file", "/10file",
+            // numbers of equal length
+            "/file12", "/file21", "/file20", "/img_0099", "/img_0100",
+            // leading zeros
+            "/file01", "/file001",
+            // prefixes
+            "/file", "/file.txt", "/fil", "/abc", "/abcd", "/abc1", "/abc 1",
+            // accents
+            "/resume", "/résumé", "/rèsume", "/éa", "/ea", "/eb", "/f",
+            // case
+            "/File2", "/FILE10", "/Abc", "/aBC", "/B", "/a",
+            // folders in the path
+            "/folder2/file", "/folder10/file", "/folder2/", "/folder10/"
+    );
+
+    private final AlphanumComparator mComparator = new AlphanumComparator();
+    private final Collator mCollator = NaturalSortKey.newCollator();
+
+    @Test
+    public void numericChunksAreComparedAsNumbers() {
+        assertSameOrder("/file2", "/file10");
+        assertSameOrder("/file10", "/file100");
+        assertSameOrder("/2", "/10");
+        assertSameOrder("/1file", "/10file");
+        assertThat(signum(compareKeys("/file2", "/file10")), is(-1));
+    }
+
+    @Test
+    public void numbersOfEqualLengthAreComparedByDigits() {
+        assertSameOrder("/file12", "/file21");
+        assertSameOrder("/file20", "/file21");
+        assertSameOrder("/img_0099", "/img_0100");
+        assertSameOrder("/file01", "/file1");
+        assertSameOrder("/file001", "/file01");
+        assertThat(signum(compareKeys("/file12", "/file21")), is(-1));
+    }
+
+    @Test
+    public void prefixesGoFirst() {
+        assertSameOrder("/file", "/file1");
+        assertSameOrder("/file", "/file.txt");
+        assertSameOrder("/fil", "/file");
+        assertSameOrder("/abc", "/abcd");
+        assertSameOrder("/abc1", "/abc 1");
+        assertThat(signum(compareKeys("/abc", "/abcd")), is(-1));
+    }
+
+    @Test
+    public void accentsAreIgnoredAsInTheComparator() {
+        assertSameOrder("/resume", "/résumé");
+        assertSameOrder("/résumé", "/rèsume");
+        assertSameOrder("/éa", "/eb");
+        assertSameOrder("/éa", "/ea");
+        assertSameOrder("/éa", "/f");
+    }
+
+    @Test
+    public void caseIsIgnoredAsInTheComparator() {
+        assertSameOrder("/File2", "/file10");
+        assertSameOrder("/FILE10", "/file2");
+        assertSameOrder("/Abc", "/aBC");
+        assertSameOrder("/B", "/a");
+        assertThat(compareKeys("/Abc", "/aBC"), is(0));
+    }
+
+    @Test
+    public void everyPairIsInTheSameOrder() {
+        for (String first : NAMES) {
+            for (String second : NAMES) {
+                assertSameOrder(first, second);
+            }
+        }
+    }
+
+    @Test
+    public void sortedListsAreEqual() {
+        List<String> reversed = new ArrayList<>(NAMES);
+        Collections.reverse(reversed);
+
+        Vector<OCFile> byComparator = new Vector<>();
+        Vector<OCFile> byKeys = new Vector<>();
+        for (String name : reversed) {
+            byComparator.add(new OCFile(name));
+            byKeys.add(new OCFile(name));
+        }
+        Collections.sort(byComparator, mComparator);
+        FileStorageUtils.sortByName(byKeys, true, null);
+
+        for (int i = 0; i < byComparator.size(); i++) {
+            assertThat(
+                    byKeys.get(i).getRemotePath() + " at " + i,
+                    compareKeys(byKeys.get(i).getRemotePath(), byComparator.get(i).getRemotePath()),
+                    is(0)
+            );
+        }
+    }
+
+    private void assertSameOrder(String first, String second) {
+        int expected = signum(mComparator.compare(new OCFile(first), new OCFile(second)));
+        assertThat(first + " vs " + second, signum(compareKeys(first, second)), is(expected));
+    }
+
+    private int compareKeys(String first, String second) {
+        return key(first).compareTo(key(second));
+    }
+
+    private NaturalSortKey key(String remotePath) {
+        return new NaturalSortKey(remotePath.toLowerCase(), mCollator);
+    }
+
+    private static int signum(int value) {
+        return Integer.signum(value);
+    }
+}